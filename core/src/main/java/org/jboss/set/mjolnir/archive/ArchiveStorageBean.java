@@ -0,0 +1,118 @@
+package org.jboss.set.mjolnir.archive;
+
+import org.jboss.set.mjolnir.archive.domain.ArchiveMaintenanceRun;
+import org.jboss.set.mjolnir.archive.domain.RepositoryFork;
+import org.jboss.set.mjolnir.archive.domain.RepositoryForkStatus;
+
+import javax.inject.Inject;
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Summarizes storage used by archived forks, per removed user and per source repository, and space reclaimed by the
+ * archive maintenance.
+ * <p>
+ * Only forks whose archives currently exist are counted. When a repository was archived several times, only the
+ * latest record is counted, because it replaced the branches of the previous ones.
+ */
+public class ArchiveStorageBean {
+
+    @Inject
+    private EntityManager em;
+
+    /**
+     * @return storage usage per fork owner, largest first
+     */
+    public List<StorageUsage> getUsageByUser() {
+        return summarize(RepositoryFork.SUMMARIZE_STORAGE_BY_OWNER);
+    }
+
+    /**
+     * @return storage usage per source repository, largest first
+     */
+    public List<StorageUsage> getUsageByRepository() {
+        return summarize(RepositoryFork.SUMMARIZE_STORAGE_BY_SOURCE_REPOSITORY);
+    }
+
+    /**
+     * @return summary of the latest archive maintenance run, or null if the maintenance has never run
+     */
+    public ArchiveMaintenanceRun getLastMaintenanceRun() {
+        List<ArchiveMaintenanceRun> runs = em.createNamedQuery(ArchiveMaintenanceRun.FIND_LATEST,
+                ArchiveMaintenanceRun.class)
+                .setMaxResults(1)
+                .getResultList();
+        return runs.isEmpty() ? null : runs.get(0);
+    }
+
+    /**
+     * Aggregates archived forks in the database, only a single row per group is loaded.
+     */
+    private List<StorageUsage> summarize(String queryName) {
+        List<Object[]> rows = em.createNamedQuery(queryName, Object[].class)
+                .setParameter("status", RepositoryForkStatus.ARCHIVED)
+                .getResultList();
+
+        List<StorageUsage> result = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            result.add(new StorageUsage((String) row[0], toLong(row[1]), toLong(row[2]), toLong(row[3]),
+                    toLong(row[4])));
+        }
+        result.sort(Comparator.comparingLong(StorageUsage::getUniqueBytes).reversed()
+                .thenComparing(StorageUsage::getName));
+        return result;
+    }
+
+    private static long toLong(Object value) {
+        return value == null ? 0 : ((Number) value).longValue();
+    }
+
+    /**
+     * Storage used by a group of archived forks.
+     */
+    public static class StorageUsage {
+
+        private final String name;
+        private final int forkCount;
+        private final int unaccountedForkCount;
+        private final long objectCount;
+        private final long uniqueBytes;
+
+        StorageUsage(String name, long forkCount, long unaccountedForkCount, long objectCount, long uniqueBytes) {
+            this.name = name;
+            this.forkCount = (int) forkCount;
+            this.unaccountedForkCount = (int) unaccountedForkCount;
+            this.objectCount = objectCount;
+            this.uniqueBytes = uniqueBytes;
+        }
+
+        /**
+         * @return owner login or source repository name, depending on how the forks are grouped
+         */
+        public String getName() {
+            return name;
+        }
+
+        public int getForkCount() {
+            return forkCount;
+        }
+
+        /**
+         * @return number of forks archived before storage accounting was introduced, which aren't included in
+         * the totals
+         */
+        public int getUnaccountedForkCount() {
+            return unaccountedForkCount;
+        }
+
+        public long getObjectCount() {
+            return objectCount;
+        }
+
+        public long getUniqueBytes() {
+            return uniqueBytes;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package org.jboss.set.mjolnir.archive;
+
+/**
+ * Storage used by an archived fork, counting only objects that are not reachable from the upstream repository.
+ */
+public class ArchiveStorageStats {
+
+    private final long objectCount;
+    private final long uniqueBytes;
+
+    public ArchiveStorageStats(long objectCount, long uniqueBytes) {
+        this.objectCount = objectCount;
+        this.uniqueBytes = uniqueBytes;
+    }
+
+    /**
+     * @return number of objects added by the fork
+     */
+    public long getObjectCount() {
+        return objectCount;
+    }
+
+    /**
+     * @return total uncompressed size of objects added by the fork
+     */
+    public long getUniqueBytes() {
+        return uniqueBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "ArchiveStorageStats{" +
+                "objectCount=" + objectCount +
+                ", uniqueBytes=" + uniqueBytes +
+                '}';
+    }
+}
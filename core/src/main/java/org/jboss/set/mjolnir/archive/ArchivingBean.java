@@ -2,8 +2,12 @@ package org.jboss.set.mjolnir.archive;
 
 import org.apache.commons.lang3.StringUtils;
 import org.eclipse.egit.github.core.Repository;
+import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.transport.UsernamePasswordCredentialsProvider;
+import org.eclipse.jgit.util.FileUtils;
 import org.jboss.logging.Logger;
 import org.jboss.set.mjolnir.archive.configuration.Configuration;
 
@@ -11,13 +15,19 @@ import javax.inject.Inject;
 import java.io.File;
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.stream.Collectors;
 
 public class ArchivingBean {
+
   
     private Logger logger = Logger.getLogger(getClass());
 
     private UsernamePasswordCredentialsProvider credentialsProvider;
     private Configuration configuration;
+    private final RepositoryLocks repositoryLocks = RepositoryLocks.archiveRepositoryLocks();
 
     @Inject
     public ArchivingBean(Configuration configuration) {
@@ -27,10 +37,14 @@ public class ArchivingBean {
 
     /**
      * Create remote repository for given repository object
+     * <p>
+     * Safe to call concurrently, forks of the same source repository are archived one at a time.
      *
      * @param repository object representing repository for archiving
+     * @return storage used by the archived fork, or null if it couldn't be computed
      */
-    public void createRepositoryMirror(Repository repository) throws GitAPIException, URISyntaxException, IOException {
+    public ArchiveStorageStats createRepositoryMirror(Repository repository)
+            throws GitAPIException, URISyntaxException, IOException {
         logger.infof("Archiving repository %s", repository.getCloneUrl());
 
         if (repository.getSource() == null || repository.getSource().getOwner() == null) {
@@ -54,13 +68,117 @@ public class ArchivingBean {
         File organizationDirectory = new File(archiveRoot, sourceOrganizationName);
         File repositoryDirectory = new File(organizationDirectory, repository.getName());
 
-        GitArchiveRepository gitArchive;
+        FetchStrategy fetchStrategy = configuration.getFetchStrategy();
+        Lock lock = repositoryLocks.getLock(repositoryDirectory);
+        lock.lock();
+        try (GitArchiveRepository gitArchive = openOrCreateArchive(archiveRoot, repositoryDirectory, parentUrl)) {
+            gitArchive.setTransportTimeout(configuration.getGitTimeout());
+            syncUpstreamIfOutdated(gitArchive, parentUrl);
+            gitArchive.addRemote(repository.getOwner().getLogin(), repository.getCloneUrl());
+            gitArchive.fetch(repository.getOwner().getLogin(), credentialsProvider, fetchStrategy);
+            return computeStorageStats(gitArchive, repository);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Fetches the upstream into the archive, if it hasn't been synced for longer than the configured interval.
+     * The fork is then fetched on top of current upstream history, instead of re-transferring upstream commits that
+     * were made since the archive was created. Failure of the sync is not fatal.
+     */
+    private void syncUpstreamIfOutdated(GitArchiveRepository gitArchive, String parentUrl) {
+        int interval = configuration.getUpstreamSyncInterval();
+        if (interval < 0) {
+            return;
+        }
+        long lastSync = gitArchive.getLastUpstreamSync();
+        if (System.currentTimeMillis() - lastSync < TimeUnit.MINUTES.toMillis(interval)) {
+            return;
+        }
+        try {
+            logger.infof("Syncing upstream repository %s", parentUrl);
+            gitArchive.syncUpstream(credentialsProvider);
+        } catch (GitAPIException e) {
+            logger.warnf(e, "Couldn't sync upstream repository %s", parentUrl);
+        }
+    }
+
+    /**
+     * Computes storage used by a freshly fetched fork. Failure of the computation is not fatal.
+     */
+    private ArchiveStorageStats computeStorageStats(GitArchiveRepository gitArchive, Repository repository) {
+        try {
+            ArchiveStorageStats stats = gitArchive.computeStorageStats(repository.getOwner().getLogin());
+            logger.infof("Repository %s adds %d objects, %d bytes", repository.getCloneUrl(),
+                    stats.getObjectCount(), stats.getUniqueBytes());
+            return stats;
+        } catch (IOException e) {
+            logger.warnf(e, "Couldn't compute storage used by repository %s", repository.getCloneUrl());
+            return null;
+        }
+    }
+
+    private GitArchiveRepository openOrCreateArchive(File archiveRoot, File repositoryDirectory, String parentUrl)
+            throws GitAPIException, URISyntaxException, IOException {
+        boolean mirror = configuration.getFetchStrategy() == FetchStrategy.FULL;
+        int timeout = configuration.getGitTimeout();
         if (repositoryDirectory.exists()) {
-            gitArchive = GitArchiveRepository.open(repositoryDirectory);
-        } else {
-            gitArchive = GitArchiveRepository.clone(repositoryDirectory, parentUrl, credentialsProvider);
+            return GitArchiveRepository.open(repositoryDirectory);
+        } else if (!configuration.isSharedObjectStores()) {
+            return GitArchiveRepository.clone(repositoryDirectory, parentUrl, credentialsProvider, mirror, timeout);
+        }
+
+        // look for an object store sharing history with the parent repository, the remote is listed before taking
+        // the lock, so that archiving of other repositories doesn't wait for the network
+        List<ObjectId> advertisedIds = Git.lsRemoteRepository()
+                .setRemote(parentUrl)
+                .setCredentialsProvider(credentialsProvider)
+                .setTimeout(timeout)
+                .call()
+                .stream()
+                .map(Ref::getObjectId)
+                .collect(Collectors.toList());
+        SharedObjectStores objectStores = new SharedObjectStores(archiveRoot);
+        Lock storesLock = repositoryLocks.getLock(objectStores.getStoresRoot());
+
+        // the stores lock is only held while stores are looked up, created or linked, not while downloading - the
+        // archive maintenance doesn't collect a store while any of its linked repositories is locked by the caller
+        File objectStore;
+        storesLock.lock();
+        try {
+            objectStore = objectStores.findStore(advertisedIds);
+            if (objectStore != null) {
+                GitArchiveRepository.initWithAlternates(repositoryDirectory, parentUrl, mirror, objectStore);
+            }
+        } finally {
+            storesLock.unlock();
+        }
+
+        if (objectStore != null) {
+            // the repository is linked before fetching, so that only objects missing in the store are downloaded
+            logger.infof("Cloning %s using shared object store %s", parentUrl, objectStore);
+            try {
+                return GitArchiveRepository.fetchOrigin(repositoryDirectory, credentialsProvider, timeout);
+            } catch (GitAPIException | IOException | RuntimeException e) {
+                // don't leave an incomplete archive behind, it would be reused by the next attempt
+                try {
+                    FileUtils.delete(repositoryDirectory, FileUtils.RECURSIVE | FileUtils.RETRY);
+                } catch (IOException deleteFailure) {
+                    e.addSuppressed(deleteFailure);
+                }
+                throw e;
+            }
+        }
+
+        // no history in common with existing stores, clone and move the objects into a new store
+        GitArchiveRepository.clone(repositoryDirectory, parentUrl, credentialsProvider, mirror, timeout).close();
+        storesLock.lock();
+        try {
+            objectStores.moveToStore(repositoryDirectory);
+        } finally {
+            storesLock.unlock();
         }
-        gitArchive.addRemote(repository.getOwner().getLogin(), repository.getCloneUrl());
-        gitArchive.fetch(repository.getOwner().getLogin(), credentialsProvider);
+        return GitArchiveRepository.open(repositoryDirectory);
     }
 }
@@ -0,0 +1,23 @@
+package org.jboss.set.mjolnir.archive;
+
+/**
+ * Determines what is fetched from user forks into archive repositories.
+ */
+public enum FetchStrategy {
+
+    /**
+     * Fetches all branches and all tags of a fork.
+     */
+    FULL,
+
+    /**
+     * Fetches only branches of a fork, no tags.
+     */
+    BRANCHES,
+
+    /**
+     * Fetches branches of a fork, and tags pointing to fetched commits that are not present in the archive
+     * repository yet. Tags already fetched from the upstream repository are not negotiated again.
+     */
+    BRANCHES_AND_NEW_TAGS
+}
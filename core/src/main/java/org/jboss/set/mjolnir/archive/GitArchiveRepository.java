@@ -1,32 +1,75 @@
 package org.jboss.set.mjolnir.archive;
 
+import org.eclipse.jgit.api.FetchCommand;
 import org.eclipse.jgit.api.Git;
-import org.eclipse.jgit.api.ListBranchCommand;
 import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.internal.storage.file.PackIndex;
+import org.eclipse.jgit.lib.BatchRefUpdate;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.revwalk.ObjectWalk;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevFlag;
+import org.eclipse.jgit.revwalk.RevObject;
+import org.eclipse.jgit.revwalk.RevSort;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.transport.BundleWriter;
 import org.eclipse.jgit.transport.CredentialsProvider;
+import org.eclipse.jgit.transport.FetchConnection;
+import org.eclipse.jgit.transport.ReceiveCommand;
+import org.eclipse.jgit.transport.RefSpec;
+import org.eclipse.jgit.transport.RemoteConfig;
 import org.eclipse.jgit.transport.TagOpt;
+import org.eclipse.jgit.transport.Transport;
+import org.eclipse.jgit.transport.TransportBundleStream;
 import org.eclipse.jgit.transport.URIish;
+import org.eclipse.jgit.util.FileUtils;
 import org.jboss.logging.Logger;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 /**
  * Defines basic operations for fetching remote repositories.
  */
-public class GitArchiveRepository {
+public class GitArchiveRepository implements AutoCloseable {
+
+    private static final String CONFIG_SECTION = "mjolnir";
+    private static final String CONFIG_KEY_UPSTREAM_SYNC = "upstreamsync";
 
     private final Logger logger = Logger.getLogger(getClass());
 
     private final Git git;
+    private int transportTimeout;
 
     GitArchiveRepository(Git git) {
         this.git = git;
     }
 
+    /**
+     * Sets timeout (in seconds) of network operations of subsequent fetches. An operation fails when no data is
+     * transferred for this long. Zero, the default, means no timeout.
+     */
+    public void setTransportTimeout(int seconds) {
+        this.transportTimeout = seconds;
+    }
+
     /**
      * Opens a local repository clone.
      *
@@ -47,13 +90,178 @@ public class GitArchiveRepository {
      */
     public static GitArchiveRepository clone(File targetDirectory, String originUrl, CredentialsProvider credentialsProvider)
             throws GitAPIException {
+        return clone(targetDirectory, originUrl, credentialsProvider, true);
+    }
+
+    /**
+     * Creates a local repository clone.
+     *
+     * @param targetDirectory a repository dir where the repository should be cloned to
+     * @param originUrl a URL of the repository that will be cloned
+     * @param credentialsProvider credentials
+     * @param mirror if true, all refs are cloned, otherwise only branches and tags
+     * @return a GitArchiveRepository instance
+     */
+    public static GitArchiveRepository clone(File targetDirectory, String originUrl,
+                                             CredentialsProvider credentialsProvider, boolean mirror)
+            throws GitAPIException {
+        return clone(targetDirectory, originUrl, credentialsProvider, mirror, 0);
+    }
+
+    /**
+     * Creates a local repository clone.
+     *
+     * @param targetDirectory a repository dir where the repository should be cloned to
+     * @param originUrl a URL of the repository that will be cloned
+     * @param credentialsProvider credentials
+     * @param mirror if true, all refs are cloned, otherwise only branches and tags
+     * @param transportTimeout timeout (in seconds) of network operations, also used by subsequent fetches
+     * @return a GitArchiveRepository instance
+     */
+    public static GitArchiveRepository clone(File targetDirectory, String originUrl,
+                                             CredentialsProvider credentialsProvider, boolean mirror,
+                                             int transportTimeout)
+            throws GitAPIException {
         Git git = Git.cloneRepository()
                 .setCredentialsProvider(credentialsProvider)
                 .setURI(originUrl)
-                .setMirror(true)
+                .setMirror(mirror)
+                .setBare(true)
                 .setDirectory(targetDirectory)
+                .setTimeout(transportTimeout)
                 .call();
-        return new GitArchiveRepository(git);
+        GitArchiveRepository repository = new GitArchiveRepository(git);
+        repository.setTransportTimeout(transportTimeout);
+        repository.recordUpstreamSync();
+        return repository;
+    }
+
+    /**
+     * Creates a local repository clone, which borrows objects from a shared object store via Git alternates. Only
+     * objects missing in the shared store are downloaded.
+     *
+     * @param targetDirectory a repository dir where the repository should be cloned to
+     * @param originUrl a URL of the repository that will be cloned
+     * @param credentialsProvider credentials
+     * @param mirror if true, all refs are cloned, otherwise only branches and tags
+     * @param objectStore a bare repository serving as the shared object store
+     * @return a GitArchiveRepository instance
+     */
+    public static GitArchiveRepository cloneWithAlternates(File targetDirectory, String originUrl,
+                                                           CredentialsProvider credentialsProvider, boolean mirror,
+                                                           File objectStore)
+            throws GitAPIException, IOException, URISyntaxException {
+        return cloneWithAlternates(targetDirectory, originUrl, credentialsProvider, mirror, objectStore, 0);
+    }
+
+    /**
+     * Creates a local repository clone, which borrows objects from a shared object store via Git alternates. Only
+     * objects missing in the shared store are downloaded.
+     *
+     * @param targetDirectory a repository dir where the repository should be cloned to
+     * @param originUrl a URL of the repository that will be cloned
+     * @param credentialsProvider credentials
+     * @param mirror if true, all refs are cloned, otherwise only branches and tags
+     * @param objectStore a bare repository serving as the shared object store
+     * @param transportTimeout timeout (in seconds) of network operations, also used by subsequent fetches
+     * @return a GitArchiveRepository instance
+     */
+    public static GitArchiveRepository cloneWithAlternates(File targetDirectory, String originUrl,
+                                                           CredentialsProvider credentialsProvider, boolean mirror,
+                                                           File objectStore, int transportTimeout)
+            throws GitAPIException, IOException, URISyntaxException {
+        initWithAlternates(targetDirectory, originUrl, mirror, objectStore);
+        return fetchOrigin(targetDirectory, credentialsProvider, transportTimeout);
+    }
+
+    /**
+     * Creates an empty local repository linked to a shared object store via Git alternates, with the origin remote
+     * configured. Nothing is downloaded, the clone is completed by {@link #fetchOrigin(File, CredentialsProvider, int)}.
+     *
+     * @param targetDirectory a repository dir where the repository should be created
+     * @param originUrl a URL of the origin repository
+     * @param mirror if true, all refs of the origin are fetched, otherwise only branches and tags
+     * @param objectStore a bare repository serving as the shared object store
+     */
+    public static void initWithAlternates(File targetDirectory, String originUrl, boolean mirror, File objectStore)
+            throws GitAPIException, IOException, URISyntaxException {
+        try (Git init = Git.init().setBare(true).setDirectory(targetDirectory).call()) {
+            SharedObjectStores.link(init.getRepository(), objectStore);
+
+            StoredConfig config = init.getRepository().getConfig();
+            RemoteConfig origin = new RemoteConfig(config, Constants.DEFAULT_REMOTE_NAME);
+            origin.addURI(new URIish(originUrl));
+            if (mirror) {
+                origin.addFetchRefSpec(new RefSpec("+refs/*:refs/*"));
+                origin.setMirror(true);
+            } else {
+                origin.addFetchRefSpec(new RefSpec("+" + Constants.R_HEADS + "*:" + Constants.R_HEADS + "*"));
+            }
+            origin.update(config);
+            config.save();
+        }
+    }
+
+    /**
+     * Fetches the origin remote into a repository created by
+     * {@link #initWithAlternates(File, String, boolean, File)}. Only objects missing in the shared store are
+     * downloaded.
+     *
+     * @param repositoryDirectory the repository dir
+     * @param credentialsProvider credentials
+     * @param transportTimeout timeout (in seconds) of network operations, also used by subsequent fetches
+     * @return a GitArchiveRepository instance
+     */
+    public static GitArchiveRepository fetchOrigin(File repositoryDirectory, CredentialsProvider credentialsProvider,
+                                                   int transportTimeout)
+            throws GitAPIException, IOException {
+        // open the repository after it was linked, so that the alternates are picked up
+        Git git = Git.open(repositoryDirectory);
+        try {
+            git.fetch()
+                    .setCredentialsProvider(credentialsProvider)
+                    .setRemote(Constants.DEFAULT_REMOTE_NAME)
+                    .setTagOpt(TagOpt.FETCH_TAGS)
+                    .setTimeout(transportTimeout)
+                    .call();
+        } catch (GitAPIException | RuntimeException e) {
+            git.close();
+            throw e;
+        }
+        GitArchiveRepository repository = new GitArchiveRepository(git);
+        repository.setTransportTimeout(transportTimeout);
+        repository.recordUpstreamSync();
+        return repository;
+    }
+
+    /**
+     * Fetches branches and tags of the origin (upstream) repository, and records the time of the sync.
+     * <p>
+     * Fetching a fork sends all local refs as "haves", so with an up-to-date upstream only the fork's own commits
+     * are transferred.
+     * <p>
+     * Only upstream branches and tags are updated, regardless of the refspec of the origin remote, which is
+     * {@code +refs/*:refs/*} in mirror clones. Refs deleted in the upstream are kept, as well as branches fetched
+     * from forks.
+     */
+    public void syncUpstream(CredentialsProvider credentialsProvider) throws GitAPIException {
+        git.fetch()
+                .setCredentialsProvider(credentialsProvider)
+                .setRemote(Constants.DEFAULT_REMOTE_NAME)
+                .setRefSpecs(new RefSpec("+" + Constants.R_HEADS + "*:" + Constants.R_HEADS + "*"),
+                        new RefSpec("+" + Constants.R_TAGS + "*:" + Constants.R_TAGS + "*"))
+                .setRemoveDeletedRefs(false)
+                .setTimeout(transportTimeout)
+                .call();
+        recordUpstreamSync();
+    }
+
+    /**
+     * @return time of the last {@link #syncUpstream(CredentialsProvider)} in milliseconds, or zero if the upstream
+     * was never synced
+     */
+    public long getLastUpstreamSync() {
+        return git.getRepository().getConfig().getLong(CONFIG_SECTION, null, CONFIG_KEY_UPSTREAM_SYNC, 0);
     }
 
     /**
@@ -70,23 +278,313 @@ public class GitArchiveRepository {
      * Fetches changes from a remote.
      */
     public void fetch(String remoteName, CredentialsProvider credentialsProvider) throws GitAPIException {
-        git.fetch()
+        fetch(remoteName, credentialsProvider, FetchStrategy.FULL);
+    }
+
+    /**
+     * Fetches changes from a remote.
+     *
+     * @param strategy determines which refs are fetched
+     */
+    public void fetch(String remoteName, CredentialsProvider credentialsProvider, FetchStrategy strategy)
+            throws GitAPIException {
+        FetchCommand fetchCommand = git.fetch()
                 .setCredentialsProvider(credentialsProvider)
                 .setRemote(remoteName)
-                .setTagOpt(TagOpt.FETCH_TAGS)
-                .call();
+                .setTimeout(transportTimeout);
+        switch (strategy) {
+            case FULL:
+                fetchCommand.setTagOpt(TagOpt.FETCH_TAGS);
+                break;
+            case BRANCHES:
+                fetchCommand.setRefSpecs(branchesRefSpec(remoteName))
+                        .setTagOpt(TagOpt.NO_TAGS);
+                break;
+            case BRANCHES_AND_NEW_TAGS:
+                fetchCommand.setRefSpecs(branchesRefSpec(remoteName))
+                        .setTagOpt(TagOpt.AUTO_FOLLOW);
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported fetch strategy: " + strategy);
+        }
+        fetchCommand.call();
     }
 
-    public void removeRemoteBranches(String remoteName) throws GitAPIException {
-        List<Ref> refs = git.branchList()
-                .setListMode(ListBranchCommand.ListMode.REMOTE)
-                .call();
+    /**
+     * Removes all branches fetched from given remote.
+     */
+    public void removeRemoteBranches(String remoteName) throws IOException, GitAPIException {
+        removeRemoteBranches(remoteName, false);
+    }
+
+    /**
+     * Removes all branches fetched from given remote. The branches are deleted in a single atomic ref update, so
+     * the ref database (e.g. the packed-refs file) is only rewritten once, regardless of the number of branches.
+     *
+     * @param remoteName   name of the remote
+     * @param pruneRemote  whether to also remove the remote from repository configuration
+     */
+    public void removeRemoteBranches(String remoteName, boolean pruneRemote) throws IOException, GitAPIException {
+        Repository repository = git.getRepository();
+
+        List<Ref> refs = getRemoteBranches(remoteName);
+        BatchRefUpdate batchUpdate = repository.getRefDatabase().newBatchUpdate();
+        batchUpdate.setAtomic(true);
+        batchUpdate.setAllowNonFastForwards(true);
+        batchUpdate.setRefLogMessage("remove archived branches of " + remoteName, false);
         for (Ref ref : refs) {
-            if (ref.getName().startsWith("refs/remotes/" + remoteName + "/")) {
-                logger.infof("Removing branch %s in repo %s", ref.getName(),
-                        git.getRepository().getDirectory().getAbsolutePath());
-                git.branchDelete().setBranchNames(ref.getName()).setForce(true).call();
+            if (!ref.isSymbolic()) {
+                batchUpdate.addCommand(new ReceiveCommand(ref.getObjectId(), ObjectId.zeroId(), ref.getName(),
+                        ReceiveCommand.Type.DELETE));
+            }
+        }
+
+        if (!batchUpdate.getCommands().isEmpty()) {
+            logger.infof("Removing %d branches of remote %s in repo %s", batchUpdate.getCommands().size(),
+                    remoteName, repository.getDirectory().getAbsolutePath());
+            try (RevWalk revWalk = new RevWalk(repository)) {
+                batchUpdate.execute(revWalk, NullProgressMonitor.INSTANCE);
+            }
+            for (ReceiveCommand command : batchUpdate.getCommands()) {
+                if (command.getResult() != ReceiveCommand.Result.OK) {
+                    throw new IOException(String.format("Failed to remove branch %s in repo %s: %s %s",
+                            command.getRefName(), repository.getDirectory().getAbsolutePath(), command.getResult(),
+                            command.getMessage()));
+                }
+            }
+        }
+
+        if (pruneRemote && repository.getConfig().getSubsections("remote").contains(remoteName)) {
+            logger.infof("Removing remote %s in repo %s", remoteName, repository.getDirectory().getAbsolutePath());
+            git.remoteRemove().setRemoteName(remoteName).call();
+        }
+    }
+
+    /**
+     * Writes branches fetched from given remote as a git bundle. Commits of the upstream branches the remote branches
+     * are based on are declared as bundle prerequisites, so the bundle only contains objects specific to the remote,
+     * and can be unbundled into any clone of the upstream repository.
+     *
+     * @param remoteName name of the remote
+     * @param out stream to write the bundle to, it's not closed by this method
+     * @return number of refs written into the bundle
+     */
+    public int exportBundle(String remoteName, OutputStream out) throws IOException {
+        Repository repository = git.getRepository();
+        BundleWriter bundleWriter = new BundleWriter(repository);
+
+        int refCount = 0;
+        try (RevWalk revWalk = new RevWalk(repository)) {
+            List<RevCommit> tips = new ArrayList<>();
+            for (Ref ref : getRemoteBranches(remoteName)) {
+                if (!ref.isSymbolic()) {
+                    bundleWriter.include(ref.getName(), ref.getObjectId());
+                    refCount++;
+                    RevObject object = revWalk.peel(revWalk.parseAny(ref.getObjectId()));
+                    if (object instanceof RevCommit) {
+                        tips.add((RevCommit) object);
+                        revWalk.markStart((RevCommit) object);
+                    }
+                }
+            }
+            for (Ref ref : getUpstreamBranches()) {
+                RevObject object = revWalk.peel(revWalk.parseAny(ref.getObjectId()));
+                if (object instanceof RevCommit) {
+                    revWalk.markUninteresting((RevCommit) object);
+                }
+            }
+
+            // only the upstream commits the remote branches are based on are needed as prerequisites
+            revWalk.sort(RevSort.BOUNDARY, true);
+            for (RevCommit commit : revWalk) {
+                if (commit.has(RevFlag.BOUNDARY)) {
+                    bundleWriter.assume(commit);
+                }
+            }
+            for (RevCommit tip : tips) {
+                if (tip.has(RevFlag.UNINTERESTING)) {
+                    bundleWriter.assume(tip);
+                }
             }
         }
+
+        bundleWriter.writeBundle(NullProgressMonitor.INSTANCE, out);
+        return refCount;
+    }
+
+    /**
+     * Verifies a bundle written by {@link #exportBundle(String, OutputStream)}, so that branches of given remote can
+     * be safely removed afterwards. The bundle is unbundled into a temporary repository borrowing objects of this
+     * repository, which only has the upstream branches. The bundle has to contain all branches of the remote, its
+     * prerequisites have to be reachable from the upstream branches, and it has to contain all objects of the
+     * branches that are not reachable from the upstream branches.
+     *
+     * @param remoteName name of the remote
+     * @param bundle stream to read the bundle from, it's not closed by this method
+     * @throws IOException if the bundle is not valid
+     */
+    public void verifyBundle(String remoteName, InputStream bundle) throws IOException {
+        Repository repository = git.getRepository();
+        List<Ref> upstreamBranches = getUpstreamBranches();
+        File verifyDirectory = Files.createTempDirectory("mjolnir-bundle").toFile();
+        try {
+            try (Git init = Git.init().setBare(true).setDirectory(verifyDirectory).call()) {
+                SharedObjectStores.link(init.getRepository(), repository.getDirectory());
+            } catch (GitAPIException e) {
+                throw new IOException("Couldn't create repository " + verifyDirectory, e);
+            }
+
+            // reopen the repository, so that the alternates are picked up
+            try (Git verifyGit = Git.open(verifyDirectory)) {
+                Repository verifyRepository = verifyGit.getRepository();
+                BatchRefUpdate batchUpdate = verifyRepository.getRefDatabase().newBatchUpdate();
+                for (Ref ref : upstreamBranches) {
+                    batchUpdate.addCommand(new ReceiveCommand(ObjectId.zeroId(), ref.getObjectId(), ref.getName(),
+                            ReceiveCommand.Type.CREATE));
+                }
+                try (RevWalk revWalk = new RevWalk(verifyRepository)) {
+                    batchUpdate.execute(revWalk, NullProgressMonitor.INSTANCE);
+                }
+
+                // prerequisites are checked against the upstream branches while fetching
+                Map<String, Ref> bundleRefs;
+                try (Transport transport = new TransportBundleStream(verifyRepository, new URIish().setPath(remoteName),
+                        bundle);
+                     FetchConnection connection = transport.openFetch()) {
+                    bundleRefs = connection.getRefsMap();
+                    connection.fetch(NullProgressMonitor.INSTANCE, connection.getRefs(), Collections.emptySet());
+                }
+
+                for (Ref ref : getRemoteBranches(remoteName)) {
+                    if (ref.isSymbolic()) {
+                        continue;
+                    }
+                    Ref bundleRef = bundleRefs.get(ref.getName());
+                    if (bundleRef == null || !ref.getObjectId().equals(bundleRef.getObjectId())) {
+                        throw new IOException(String.format("Bundle of remote %s doesn't contain branch %s at %s",
+                                remoteName, ref.getName(), ref.getObjectId().name()));
+                    }
+                }
+
+                Set<ObjectId> bundledObjects = readPackedObjects(verifyRepository);
+                try (ObjectWalk walk = new ObjectWalk(verifyRepository)) {
+                    walk.setRetainBody(false);
+                    for (Ref ref : bundleRefs.values()) {
+                        walk.markStart(walk.parseAny(ref.getObjectId()));
+                    }
+                    for (Ref ref : upstreamBranches) {
+                        walk.markUninteresting(walk.parseAny(ref.getObjectId()));
+                    }
+                    RevObject object;
+                    while ((object = walk.next()) != null) {
+                        checkBundled(bundledObjects, object, remoteName);
+                    }
+                    while ((object = walk.nextObject()) != null) {
+                        checkBundled(bundledObjects, object, remoteName);
+                    }
+                }
+            }
+        } finally {
+            FileUtils.delete(verifyDirectory, FileUtils.RECURSIVE | FileUtils.RETRY);
+        }
+    }
+
+    /**
+     * Counts objects reachable from branches of given remote, that are not reachable from the upstream branches of
+     * this repository. Sizes are uncompressed object sizes, so they are an upper bound of the disk space the
+     * remote actually takes up in packs.
+     *
+     * @param remoteName name of the remote
+     */
+    public ArchiveStorageStats computeStorageStats(String remoteName) throws IOException {
+        Repository repository = git.getRepository();
+
+        try (ObjectWalk walk = new ObjectWalk(repository)) {
+            walk.setRetainBody(false);
+            for (Ref ref : getRemoteBranches(remoteName)) {
+                if (ref.getObjectId() != null) {
+                    walk.markStart(walk.parseAny(ref.getObjectId()));
+                }
+            }
+            for (Ref ref : getUpstreamBranches()) {
+                walk.markUninteresting(walk.parseAny(ref.getObjectId()));
+            }
+
+            ObjectReader reader = walk.getObjectReader();
+            long objectCount = 0;
+            long bytes = 0;
+            RevObject object;
+            while ((object = walk.next()) != null) {
+                objectCount++;
+                bytes += reader.getObjectSize(object, object.getType());
+            }
+            while ((object = walk.nextObject()) != null) {
+                objectCount++;
+                bytes += reader.getObjectSize(object, object.getType());
+            }
+            return new ArchiveStorageStats(objectCount, bytes);
+        }
+    }
+
+    /**
+     * Lists branches of the upstream repository. Branches of forks are fetched into {@code refs/remotes/}, so unlike
+     * tags, which may also be fetched from forks, branches under {@code refs/heads/} only ever come from the upstream.
+     */
+    private List<Ref> getUpstreamBranches() throws IOException {
+        return git.getRepository().getRefDatabase().getRefsByPrefix(Constants.R_HEADS).stream()
+                .filter(ref -> !ref.isSymbolic() && ref.getObjectId() != null)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Lists branches fetched from given remote. Only refs under the remote's prefix are read from the ref database,
+     * so the cost doesn't depend on the number of other remotes in the repository.
+     */
+    public List<Ref> getRemoteBranches(String remoteName) throws IOException {
+        return git.getRepository().getRefDatabase().getRefsByPrefix(Constants.R_REMOTES + remoteName + "/");
+    }
+
+    private void recordUpstreamSync() {
+        StoredConfig config = git.getRepository().getConfig();
+        config.setLong(CONFIG_SECTION, null, CONFIG_KEY_UPSTREAM_SYNC, System.currentTimeMillis());
+        try {
+            config.save();
+        } catch (IOException e) {
+            logger.warnf(e, "Couldn't record upstream sync time in %s", git.getRepository().getDirectory());
+        }
+    }
+
+    @Override
+    public void close() {
+        git.close();
+    }
+
+    /**
+     * @return objects in the packs of given repository, not including its alternates
+     */
+    private static Set<ObjectId> readPackedObjects(Repository repository) throws IOException {
+        Set<ObjectId> objects = new HashSet<>();
+        File[] indexFiles = new File(repository.getDirectory(), "objects/pack")
+                .listFiles((dir, name) -> name.endsWith(".idx"));
+        if (indexFiles != null) {
+            for (File indexFile : indexFiles) {
+                for (PackIndex.MutableEntry entry : PackIndex.open(indexFile)) {
+                    objects.add(entry.toObjectId());
+                }
+            }
+        }
+        return objects;
+    }
+
+    private static void checkBundled(Set<ObjectId> bundledObjects, RevObject object, String remoteName)
+            throws IOException {
+        if (!bundledObjects.contains(object)) {
+            throw new IOException(String.format("Bundle of remote %s is missing object %s", remoteName,
+                    object.name()));
+        }
+    }
+
+    private static RefSpec branchesRefSpec(String remoteName) {
+        return new RefSpec("+" + Constants.R_HEADS + "*:" + Constants.R_REMOTES + remoteName + "/*");
     }
 }
@@ -0,0 +1,45 @@
+package org.jboss.set.mjolnir.archive;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Locks guarding archive repository directories, so that a single on-disk repository is never modified by more than
+ * one thread at a time.
+ * <p>
+ * There is a fixed number of locks, each guarding all directories whose paths hash to it, so the memory used doesn't
+ * grow with the number of repositories ever archived. Unrelated directories may occasionally share a lock. The locks
+ * are reentrant, so a thread holding a lock of a repository can always take the lock of the shared object stores,
+ * even if both directories map to the same lock. The object stores lock must be taken last.
+ */
+public class RepositoryLocks {
+
+    static final int STRIPES = 64;
+
+    private static final RepositoryLocks ARCHIVE_REPOSITORY_LOCKS = new RepositoryLocks();
+
+    private final Lock[] locks = new Lock[STRIPES];
+
+    public RepositoryLocks() {
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * @param repositoryDirectory repository directory, doesn't have to exist yet
+     * @return lock guarding given directory, the same instance is returned for all paths pointing to the directory
+     */
+    public Lock getLock(File repositoryDirectory) throws IOException {
+        return locks[Math.floorMod(repositoryDirectory.getCanonicalPath().hashCode(), locks.length)];
+    }
+
+    /**
+     * @return locks shared by all components modifying repositories in the archive root
+     */
+    public static RepositoryLocks archiveRepositoryLocks() {
+        return ARCHIVE_REPOSITORY_LOCKS;
+    }
+}
@@ -0,0 +1,262 @@
+package org.jboss.set.mjolnir.archive;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.RepositoryCache;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.transport.RefSpec;
+import org.eclipse.jgit.util.FS;
+import org.eclipse.jgit.util.FileUtils;
+import org.jboss.logging.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Object stores shared by archive repositories with common history.
+ * <p>
+ * Stores are bare repositories under the {@value #STORES_DIRECTORY} directory of the archive root, named by the root
+ * commit of the history they contain. Archive repositories borrow objects from a store via Git alternates, so that
+ * objects shared by several archive repositories (e.g. of a renamed repository, or of the same repository forked
+ * into several organizations) are stored and downloaded only once.
+ */
+public class SharedObjectStores {
+
+    public static final String STORES_DIRECTORY = ".objects";
+
+    private static final String PACK_DIRECTORY = "pack";
+    private static final Pattern LOOSE_OBJECTS_DIRECTORY = Pattern.compile("[0-9a-f]{2}");
+
+    private final Logger logger = Logger.getLogger(getClass());
+
+    private final File archiveRoot;
+    private final File storesRoot;
+
+    public SharedObjectStores(File archiveRoot) {
+        this.archiveRoot = archiveRoot;
+        this.storesRoot = new File(archiveRoot, STORES_DIRECTORY);
+    }
+
+    public File getStoresRoot() {
+        return storesRoot;
+    }
+
+    /**
+     * Finds a store containing any of given objects, typically the refs advertised by a remote repository.
+     *
+     * @return store directory, or null if no store shares history with given objects
+     */
+    public File findStore(Collection<ObjectId> objectIds) throws IOException {
+        for (File store : getStores()) {
+            try (Repository repository = openStore(store)) {
+                for (ObjectId objectId : objectIds) {
+                    if (repository.getObjectDatabase().has(objectId)) {
+                        return store;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Moves objects of an archive repository into a shared store. The store is created if it doesn't exist yet,
+     * the archive repository is then linked to the store and its own objects, all of which are now present in the
+     * store, are deleted.
+     *
+     * @param repositoryDirectory archive repository, which must not be linked to a store yet
+     * @return the store directory
+     */
+    public File moveToStore(File repositoryDirectory) throws IOException, GitAPIException {
+        File store;
+        try (Repository repository = openStore(repositoryDirectory)) {
+            ObjectId rootCommit = findRootCommit(repository);
+            if (rootCommit == null) {
+                logger.infof("Repository %s has no commits, not moving it to a shared store", repositoryDirectory);
+                return null;
+            }
+            store = new File(storesRoot, rootCommit.name());
+        }
+
+        if (!store.exists()) {
+            logger.infof("Creating shared object store %s", store);
+            Git.init().setBare(true).setDirectory(store).call().close();
+        }
+
+        consolidate(repositoryDirectory, store);
+        logger.infof("Moved objects of %s to shared object store %s", repositoryDirectory, store);
+        return store;
+    }
+
+    /**
+     * Moves objects of an archive repository into given store, and links the repository to the store. Objects
+     * that are not reachable from the repository refs are discarded.
+     * <p>
+     * Refs of the repository are mirrored in the store under the {@code refs/archives/<org>/<repository>/}
+     * namespace, so that the objects stay reachable in the store. Refs deleted in the repository since the last
+     * consolidation are deleted from the store too, so that their objects can be pruned from the store.
+     */
+    public void consolidate(File repositoryDirectory, File store) throws IOException, GitAPIException {
+        collectRefs(repositoryDirectory, store);
+
+        try (Repository repository = openStore(repositoryDirectory)) {
+            link(repository, store);
+            removeObjects(repository);
+        }
+    }
+
+    /**
+     * Mirrors refs of all archive repositories linked to given store into the store. This has to be done right
+     * before the store is garbage collected. Linked repositories fetch new objects on top of objects borrowed from
+     * the store, and such objects may only be reachable from refs of a sibling repository, which have been deleted
+     * since. Without the refs, the store would prune objects the linked repositories still need.
+     */
+    public void collectLinkedRefs(File store) throws IOException, GitAPIException {
+        for (File repositoryDirectory : getLinkedRepositories(store)) {
+            collectRefs(repositoryDirectory, store);
+        }
+    }
+
+    /**
+     * @return repositories in the {@code <archive root>/<organization>/<repository>} layout linked to given store
+     */
+    public List<File> getLinkedRepositories(File store) throws IOException {
+        List<File> repositories = new ArrayList<>();
+        File[] organizations = archiveRoot.listFiles(file -> file.isDirectory() && !file.getName().startsWith("."));
+        if (organizations == null) {
+            return repositories;
+        }
+        for (File organization : organizations) {
+            File[] directories = organization.listFiles(File::isDirectory);
+            if (directories == null) {
+                continue;
+            }
+            for (File directory : directories) {
+                File gitDir = RepositoryCache.FileKey.resolve(directory, FS.DETECTED);
+                if (gitDir != null && store.getAbsoluteFile().equals(getLinkedStore(gitDir))) {
+                    repositories.add(gitDir);
+                }
+            }
+        }
+        return repositories;
+    }
+
+    /**
+     * Fetches refs of an archive repository into its namespace in given store, deleting refs that no longer exist
+     * in the repository.
+     */
+    private void collectRefs(File repositoryDirectory, File store) throws GitAPIException, IOException {
+        String namespace = "refs/archives/" + archiveRoot.toPath().toAbsolutePath()
+                .relativize(repositoryDirectory.toPath().toAbsolutePath()).toString().replace(File.separatorChar, '/');
+        try (Git storeGit = Git.open(store)) {
+            storeGit.fetch()
+                    .setRemote(repositoryDirectory.getAbsolutePath())
+                    .setRefSpecs(new RefSpec("+refs/*:" + namespace + "/*"))
+                    .setRemoveDeletedRefs(true)
+                    .call();
+        }
+    }
+
+    /**
+     * @return the store given repository is linked to, or null if the repository is not linked to any store
+     */
+    public File getLinkedStore(File repositoryDirectory) throws IOException {
+        File alternates = new File(repositoryDirectory, Constants.OBJECTS + "/" + Constants.INFO_ALTERNATES);
+        if (!alternates.isFile()) {
+            return null;
+        }
+        for (String line : Files.readAllLines(alternates.toPath(), StandardCharsets.UTF_8)) {
+            File store = new File(line.trim()).getParentFile();
+            if (store != null && storesRoot.getAbsoluteFile().equals(store.getParentFile())) {
+                return store;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return directories of all stores
+     */
+    public List<File> getStores() {
+        File[] stores = storesRoot.listFiles(File::isDirectory);
+        return stores == null ? Collections.emptyList() : Arrays.asList(stores);
+    }
+
+    /**
+     * Points the object database of given repository to the objects of given store. Repository instances opened
+     * earlier don't see the change.
+     */
+    static void link(Repository repository, File store) throws IOException {
+        File objectsDirectory = new File(repository.getDirectory(), Constants.OBJECTS);
+        File alternates = new File(objectsDirectory, Constants.INFO_ALTERNATES);
+        FileUtils.mkdirs(alternates.getParentFile(), true);
+        Files.write(alternates.toPath(), (new File(store, Constants.OBJECTS).getAbsolutePath() + "\n")
+                .getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Repository openStore(File directory) throws IOException {
+        return new FileRepositoryBuilder()
+                .setGitDir(directory)
+                .setMustExist(true)
+                .build();
+    }
+
+    /**
+     * Finds the root commit of HEAD, or of the first branch if HEAD is not resolvable.
+     */
+    private static ObjectId findRootCommit(Repository repository) throws IOException {
+        ObjectId tip = repository.resolve(Constants.HEAD);
+        if (tip == null) {
+            List<Ref> branches = repository.getRefDatabase().getRefsByPrefix(Constants.R_HEADS);
+            tip = branches.stream()
+                    .min(Comparator.comparing(Ref::getName))
+                    .map(Ref::getObjectId)
+                    .orElse(null);
+        }
+        if (tip == null) {
+            return null;
+        }
+        try (RevWalk walk = new RevWalk(repository)) {
+            walk.markStart(walk.parseCommit(tip));
+            RevCommit root = null;
+            for (RevCommit commit : walk) {
+                if (commit.getParentCount() == 0) {
+                    root = commit;
+                }
+            }
+            return root;
+        }
+    }
+
+    /**
+     * Deletes packs and loose objects of a repository.
+     */
+    private static void removeObjects(Repository repository) throws IOException {
+        File objectsDirectory = new File(repository.getDirectory(), Constants.OBJECTS);
+        File[] looseObjectDirectories = objectsDirectory.listFiles(
+                file -> LOOSE_OBJECTS_DIRECTORY.matcher(file.getName()).matches());
+        File[] packFiles = new File(objectsDirectory, PACK_DIRECTORY).listFiles();
+        for (File[] files : new File[][]{looseObjectDirectories, packFiles}) {
+            if (files != null) {
+                for (File file : files) {
+                    FileUtils.delete(file, FileUtils.RECURSIVE | FileUtils.RETRY);
+                }
+            }
+        }
+    }
+}
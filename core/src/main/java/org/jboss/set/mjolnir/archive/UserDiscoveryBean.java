@@ -4,14 +4,18 @@ import org.apache.commons.lang3.StringUtils;
 import org.eclipse.egit.github.core.User;
 import org.eclipse.egit.github.core.client.GitHubClient;
 import org.jboss.logging.Logger;
+import org.jboss.set.mjolnir.archive.configuration.Configuration;
 import org.jboss.set.mjolnir.archive.domain.GitHubOrganization;
 import org.jboss.set.mjolnir.archive.domain.GitHubTeam;
 import org.jboss.set.mjolnir.archive.domain.RegisteredUser;
 import org.jboss.set.mjolnir.archive.domain.RemovalLog;
+import org.jboss.set.mjolnir.archive.domain.UserLdapStatus;
 import org.jboss.set.mjolnir.archive.domain.UserRemoval;
 import org.jboss.set.mjolnir.archive.domain.repositories.RegisteredUserRepositoryBean;
+import org.jboss.set.mjolnir.archive.domain.repositories.UserLdapStatusRepositoryBean;
 import org.jboss.set.mjolnir.archive.github.ExtendedUserService;
 import org.jboss.set.mjolnir.archive.github.GitHubMembershipBean;
+import org.jboss.set.mjolnir.archive.github.MembershipSnapshotCache;
 import org.jboss.set.mjolnir.archive.ldap.LdapClientBean;
 
 import javax.annotation.PostConstruct;
@@ -25,11 +29,12 @@ import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
-import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -56,6 +61,15 @@ public class UserDiscoveryBean {
     @Inject
     private RegisteredUserRepositoryBean userRepositoryBean;
 
+    @Inject
+    private UserLdapStatusRepositoryBean ldapStatusRepositoryBean;
+
+    @Inject
+    private Configuration configuration;
+
+    @Inject
+    private MembershipSnapshotCache membershipSnapshotCache;
+
     @Inject
     private GitHubClient gitHubClient;
 
@@ -66,9 +80,24 @@ public class UserDiscoveryBean {
         userService = new ExtendedUserService(gitHubClient);
     }
 
+    /**
+     * Checks LDAP accounts of all registered members of monitored GitHub organizations and teams, and creates
+     * removal records for those without an active account.
+     */
     public void createRemovalsForUsersWithoutLdapAccount() {
+        createRemovalsForUsersWithoutLdapAccount(false);
+    }
+
+    /**
+     * Creates removal records for registered members without an active LDAP account.
+     *
+     * @param incremental if true, only members whose LDAP status could have changed are checked: new members,
+     *                    members without an active LDAP account at the time of the last check, and a slice of the
+     *                    remaining members that were checked the longest time ago
+     */
+    public void createRemovalsForUsersWithoutLdapAccount(boolean incremental) {
         try {
-            doCreateRemovalsForUsersWithoutLdapAccount();
+            doCreateRemovalsForUsersWithoutLdapAccount(incremental);
         } catch (IOException | NamingException e) {
             logger.error("Failed to create user removals", e);
             RemovalLog log = new RemovalLog();
@@ -83,16 +112,115 @@ public class UserDiscoveryBean {
 
     }
 
-    void doCreateRemovalsForUsersWithoutLdapAccount() throws IOException, NamingException {
-        logger.infof("Starting job to create user removals");
+    void doCreateRemovalsForUsersWithoutLdapAccount(boolean incremental) throws IOException, NamingException {
+        logger.infof("Starting job to create user removals (%s scan)", incremental ? "incremental" : "full");
+
+        // make sure current memberships are used
+        membershipSnapshotCache.invalidate();
+
+        // registered members of all teams and organizations, gh username => ldap username
+        Map<String, String> registeredMembers = findLdapUsernamesOfRegisteredUsers(findAllGitHubUsers());
+        Map<String, UserLdapStatus> ldapStatuses = ldapStatusRepositoryBean.getStatusesByGitHubUsername();
+
+        Map<String, String> usersToCheck = incremental
+                ? selectUsersForIncrementalScan(registeredMembers, ldapStatuses)
+                : registeredMembers;
+        logger.infof("Checking LDAP accounts of %d out of %d registered members.",
+                usersToCheck.size(), registeredMembers.size());
+
+        // search for users that do not have active LDAP account, cached results could be outdated
+        Map<String, Boolean> usersLdapMap;
+        try {
+            usersLdapMap = ldapClientBean.checkUsersExists(usersToCheck.values(), false);
+        } finally {
+            ldapClientBean.releaseUidSnapshot();
+        }
+        List<String> usersWithoutLdapAccount = usersToCheck.values().stream()
+                .filter(ldapUsername -> !Boolean.TRUE.equals(usersLdapMap.get(ldapUsername)))
+                .collect(Collectors.toList());
+        logger.infof("Detected %d users that do not have active LDAP account.", usersWithoutLdapAccount.size());
 
-        // get users without ldap account
-        Collection<String> usersWithoutLdapAccount = findAllUsersWithoutLdapAccount();
+        updateLdapStatuses(registeredMembers, usersToCheck, usersLdapMap, ldapStatuses);
 
         // create removal records
         createUserRemovals(usersWithoutLdapAccount);
     }
 
+    /**
+     * Selects members whose LDAP accounts should be checked by an incremental scan.
+     *
+     * @param registeredMembers all registered members, gh username => ldap username
+     * @param ldapStatuses      last known LDAP statuses, lowercased gh username => status
+     * @return selected members, gh username => ldap username
+     */
+    Map<String, String> selectUsersForIncrementalScan(Map<String, String> registeredMembers,
+                                                      Map<String, UserLdapStatus> ldapStatuses) {
+        Map<String, String> selected = new HashMap<>();
+        List<Map.Entry<String, String>> knownActiveMembers = new ArrayList<>();
+
+        for (Map.Entry<String, String> entry : registeredMembers.entrySet()) {
+            UserLdapStatus status = ldapStatuses.get(entry.getKey().toLowerCase(Locale.ROOT));
+            if (status == null || status.getLastChecked() == null || !status.isLdapAccountActive()
+                    || !entry.getValue().equals(status.getLdapUsername())) {
+                // new member, member without active account or member whose LDAP username changed
+                selected.put(entry.getKey(), entry.getValue());
+            } else {
+                knownActiveMembers.add(entry);
+            }
+        }
+        int newMembers = selected.size();
+
+        // add a slice of remaining members, those checked the longest time ago first
+        int slices = Math.max(1, configuration.getLdapIncrementalScanSlices());
+        int sliceSize = (knownActiveMembers.size() + slices - 1) / slices;
+        knownActiveMembers.stream()
+                .sorted(Comparator.comparing(entry -> ldapStatuses.get(entry.getKey().toLowerCase(Locale.ROOT)).getLastChecked()))
+                .limit(sliceSize)
+                .forEach(entry -> selected.put(entry.getKey(), entry.getValue()));
+
+        logger.infof("Incremental scan selected %d new or inactive members and %d out of %d known members.",
+                newMembers, selected.size() - newMembers, knownActiveMembers.size());
+        return selected;
+    }
+
+    /**
+     * Records the results of LDAP check, and the fact that the members have been seen in monitored organizations
+     * or teams. Statuses of users that are no longer registered members (they left, were removed or their
+     * registration was deleted) are deleted.
+     */
+    private void updateLdapStatuses(Map<String, String> registeredMembers, Map<String, String> checkedMembers,
+                                    Map<String, Boolean> usersLdapMap, Map<String, UserLdapStatus> ldapStatuses) {
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+
+        EntityTransaction transaction = em.getTransaction();
+        transaction.begin();
+
+        for (Map.Entry<String, String> entry : registeredMembers.entrySet()) {
+            String githubName = entry.getKey().toLowerCase(Locale.ROOT);
+            UserLdapStatus status = ldapStatuses.get(githubName);
+            if (status == null) {
+                status = new UserLdapStatus();
+                status.setGithubName(githubName);
+                ldapStatuses.put(githubName, status);
+            }
+            status.setLastSeen(now);
+            if (checkedMembers.containsKey(entry.getKey())) {
+                status.setLdapUsername(entry.getValue());
+                status.setLdapAccountActive(Boolean.TRUE.equals(usersLdapMap.get(entry.getValue())));
+                status.setLastChecked(now);
+            }
+            em.persist(status);
+        }
+
+        int deleted = em.createNamedQuery(UserLdapStatus.DELETE_NOT_SEEN_SINCE)
+                .setParameter("lastSeen", now)
+                .executeUpdate();
+        transaction.commit();
+        if (deleted > 0) {
+            logger.infof("Deleted LDAP statuses of %d users that are no longer registered members.", deleted);
+        }
+    }
+
     /**
      * Finds all registered users who are members of monitored GitHub organizations or teams, and do not have an
      * active LDAP account.
@@ -168,20 +296,7 @@ public class UserDiscoveryBean {
                 ldapUsernamesWaitingForRemoval);
 
         // retrieve kerberos names of collected users (those that we know and are not whitelisted)
-        HashMap<String, String> githubToLdapUsernames = new HashMap<>();
-        githubUsernames.forEach(githubUsername -> {
-            Optional<RegisteredUser> registeredUser = userRepositoryBean.findByGitHubUsername(githubUsername);
-            registeredUser.ifPresent(user -> {
-                if (user.isWhitelisted()) {
-                    logger.infof("Skipping whitelisted user %s.", user.getGithubName());
-                } else if (StringUtils.isBlank(user.getKerberosName())) {
-                    logger.warnf("Skipping user %s because of unknown LDAP name.", user.getGithubName());
-                } else {
-                    githubToLdapUsernames.put(githubUsername, user.getKerberosName());
-                }
-            });
-        });
-        logger.infof("Out of all members, %d are registered users.", githubToLdapUsernames.size());
+        Map<String, String> githubToLdapUsernames = findLdapUsernamesOfRegisteredUsers(githubUsernames);
 
         // search for users that do not have active LDAP account
         Map<String, Boolean> usersLdapMap = ldapClientBean.checkUsersExists(githubToLdapUsernames.values());
@@ -193,6 +308,33 @@ public class UserDiscoveryBean {
         return result;
     }
 
+    /**
+     * Retrieves LDAP usernames of given GitHub users. Users that are not registered, are whitelisted or their LDAP
+     * username is not known are skipped.
+     *
+     * @param githubUsernames GitHub usernames
+     * @return map GitHub username => LDAP username
+     */
+    private Map<String, String> findLdapUsernamesOfRegisteredUsers(Collection<String> githubUsernames) {
+        Map<String, RegisteredUser> registeredUsers = userRepositoryBean.findByGitHubUsernames(githubUsernames);
+        HashMap<String, String> githubToLdapUsernames = new HashMap<>();
+        githubUsernames.forEach(githubUsername -> {
+            RegisteredUser user = registeredUsers.get(githubUsername.toLowerCase(Locale.ROOT));
+            if (user == null) {
+                return;
+            }
+            if (user.isWhitelisted()) {
+                logger.infof("Skipping whitelisted user %s.", user.getGithubName());
+            } else if (StringUtils.isBlank(user.getKerberosName())) {
+                logger.warnf("Skipping user %s because of unknown LDAP name.", user.getGithubName());
+            } else {
+                githubToLdapUsernames.put(githubUsername, user.getKerberosName());
+            }
+        });
+        logger.infof("Out of all members, %d are registered users.", githubToLdapUsernames.size());
+        return githubToLdapUsernames;
+    }
+
     /**
      * Returns registered users whose GH usernames do not exist or do not match their GH ID.
      *
@@ -271,11 +413,9 @@ public class UserDiscoveryBean {
         HashMap<String, List<GitHubTeam>> usersMap = new HashMap<>();
         for (GitHubOrganization organization : organizations) {
             for (GitHubTeam team: organization.getTeams()) {
-                List<User> teamMembers = gitHubMembershipBean.getTeamsMembers(team);
-                logger.infof("Discovered %d members of team %s",
-                        teamMembers.size(), team.getOrganization().getName() + " / " + team.getName());
-                for (User user: teamMembers) {
-                    List<GitHubTeam> usersTeams = usersMap.computeIfAbsent(user.getLogin(), u -> new ArrayList<>());
+                List<String> teamMembers = getTeamMembers(team);
+                for (String login: teamMembers) {
+                    List<GitHubTeam> usersTeams = usersMap.computeIfAbsent(login, u -> new ArrayList<>());
                     usersTeams.add(team);
                 }
             }
@@ -296,11 +436,9 @@ public class UserDiscoveryBean {
         HashMap<String, List<GitHubOrganization>> usersMap = new HashMap<>();
         for (GitHubOrganization organization : organizations) {
             if (organization.isUnsubscribeUsersFromOrg()) {
-                Collection<User> organizationMembers = gitHubMembershipBean.getOrganizationMembers(organization);
-                logger.infof("Discovered %d members of organization %s",
-                        organizationMembers.size(), organization.getName());
-                for (User user: organizationMembers) {
-                    List<GitHubOrganization> usersOrgs = usersMap.computeIfAbsent(user.getLogin(), u -> new ArrayList<>());
+                List<String> organizationMembers = getOrganizationMembers(organization);
+                for (String login: organizationMembers) {
+                    List<GitHubOrganization> usersOrgs = usersMap.computeIfAbsent(login, u -> new ArrayList<>());
                     usersOrgs.add(organization);
                 }
             }
@@ -309,6 +447,37 @@ public class UserDiscoveryBean {
         return usersMap;
     }
 
+    /**
+     * Retrieves logins of team members, reusing the membership snapshot if possible.
+     */
+    private List<String> getTeamMembers(GitHubTeam team) throws IOException {
+        List<String> members = membershipSnapshotCache.getTeamMembers(team.getId());
+        if (members == null) {
+            members = gitHubMembershipBean.getTeamsMembers(team).stream()
+                    .map(User::getLogin)
+                    .collect(Collectors.toList());
+            logger.infof("Discovered %d members of team %s",
+                    members.size(), team.getOrganization().getName() + " / " + team.getName());
+            membershipSnapshotCache.putTeamMembers(team.getId(), members);
+        }
+        return members;
+    }
+
+    /**
+     * Retrieves logins of organization members, reusing the membership snapshot if possible.
+     */
+    private List<String> getOrganizationMembers(GitHubOrganization organization) throws IOException {
+        List<String> members = membershipSnapshotCache.getOrganizationMembers(organization.getId());
+        if (members == null) {
+            members = gitHubMembershipBean.getOrganizationMembers(organization).stream()
+                    .map(User::getLogin)
+                    .collect(Collectors.toList());
+            logger.infof("Discovered %d members of organization %s", members.size(), organization.getName());
+            membershipSnapshotCache.putOrganizationMembers(organization.getId(), members);
+        }
+        return members;
+    }
+
     /**
      * Finds all monitored GitHub teams members who are not registered in the Mjolnir database.
      *
@@ -316,10 +485,10 @@ public class UserDiscoveryBean {
      */
     public Map<String, List<GitHubTeam>> findUnregisteredTeamsMembers() throws IOException {
         HashMap<String, List<GitHubTeam>> allMembers = getAllTeamsMembers();
-        List<RegisteredUser> registeredUsers = em.createNamedQuery(RegisteredUser.FIND_ALL, RegisteredUser.class).getResultList();
+        Map<String, RegisteredUser> registeredUsers = userRepositoryBean.getUsersByGitHubUsername();
 
         Map<String, List<GitHubTeam>> unregisteredMembersMap = allMembers.entrySet().stream()
-                .filter(entry -> !containsRegisteredUser(entry.getKey(), registeredUsers))
+                .filter(entry -> !registeredUsers.containsKey(entry.getKey().toLowerCase(Locale.ROOT)))
                 .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
 
         return unregisteredMembersMap;
@@ -332,10 +501,10 @@ public class UserDiscoveryBean {
      */
     public Map<String, List<GitHubOrganization>> findUnregisteredOrganizationsMembers() throws IOException {
         HashMap<String, List<GitHubOrganization>> allMembers = getAllOrganizationsMembers();
-        List<RegisteredUser> registeredUsers = em.createNamedQuery(RegisteredUser.FIND_ALL, RegisteredUser.class).getResultList();
+        Map<String, RegisteredUser> registeredUsers = userRepositoryBean.getUsersByGitHubUsername();
 
         Map<String, List<GitHubOrganization>> unregisteredMembersMap = allMembers.entrySet().stream()
-                .filter(entry -> !containsRegisteredUser(entry.getKey(), registeredUsers))
+                .filter(entry -> !registeredUsers.containsKey(entry.getKey().toLowerCase(Locale.ROOT)))
                 .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
 
         return unregisteredMembersMap;
@@ -367,16 +536,6 @@ public class UserDiscoveryBean {
         return memberTeams;
     }
 
-    private static boolean containsRegisteredUser(String member, List<RegisteredUser> registeredUsers) {
-        for (RegisteredUser registeredUser : registeredUsers) {
-            if (registeredUser.getGithubName() != null
-                    && member.toLowerCase().equals(registeredUser.getGithubName().toLowerCase())) {
-                return true;
-            }
-        }
-        return false;
-    }
-
     /**
      * Creates and persists UserRemoval objects for given list of usernames.
      */
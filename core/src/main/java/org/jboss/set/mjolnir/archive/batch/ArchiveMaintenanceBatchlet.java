@@ -0,0 +1,364 @@
+package org.jboss.set.mjolnir.archive.batch;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.RepositoryCache;
+import org.eclipse.jgit.util.FS;
+import org.jboss.logging.Logger;
+import org.jboss.set.mjolnir.archive.RepositoryLocks;
+import org.jboss.set.mjolnir.archive.SharedObjectStores;
+import org.jboss.set.mjolnir.archive.configuration.Configuration;
+import org.jboss.set.mjolnir.archive.domain.ArchiveMaintenanceRun;
+
+import javax.batch.api.AbstractBatchlet;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityTransaction;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.stream.Stream;
+
+/**
+ * This batchlet compacts archive repositories, which accumulate a new pack with every fetch, and unreachable
+ * objects after their branches are removed.
+ * <p>
+ * Configurable by following parameters:
+ * <p>
+ * - application.maintenance_pack_threshold - repositories with at least this number of packs are processed.
+ * - application.maintenance_time_budget - time budget of a single run in minutes, repositories with most packs
+ *   are processed first.
+ */
+@Named
+public class ArchiveMaintenanceBatchlet extends AbstractBatchlet {
+
+    private static final String OBJECTS_DIRECTORY = "objects";
+    private static final String PACK_DIRECTORY = "pack";
+    private static final String PACK_EXTENSION = ".pack";
+
+    private final Logger logger = Logger.getLogger(getClass());
+
+    private final RepositoryLocks repositoryLocks = RepositoryLocks.archiveRepositoryLocks();
+
+    @Inject
+    Configuration configuration;
+
+    @Inject
+    EntityManager em;
+
+    /**
+     * Processes following workflow:
+     *
+     * 1. Find all archive repositories under the archive root, and order them by number of packs.<br/>
+     * 2a. Repositories linked to a shared object store are consolidated - their objects are moved to the store.<br/>
+     * 2b. Other repositories are garbage collected, writing a single pack with a bitmap index.<br/>
+     * 3. Shared object stores that received objects, or that are over the pack threshold themselves, are garbage
+     *    collected, after refs of all repositories linked to them are collected into them.<br/>
+     * 4. A report of reclaimed space is logged, and its summary is saved in the database to be included in the
+     *    weekly report email.<br/>
+     */
+    @Override
+    public String process() {
+        Timestamp started = new Timestamp(System.currentTimeMillis());
+        MaintenanceReport report = new MaintenanceReport();
+        boolean successful = runMaintenance(report);
+        report.log(logger);
+        saveReport(report, started, successful);
+
+        if (successful) {
+            return Constants.DONE;
+        } else {
+            return Constants.DONE_WITH_ERRORS;
+        }
+    }
+
+    /**
+     * @return true if all the repositories were processed without errors
+     */
+    boolean runMaintenance(MaintenanceReport report) {
+        File archiveRoot;
+        if (configuration.getRepositoryArchiveRoot() != null) {
+            archiveRoot = new File(configuration.getRepositoryArchiveRoot());
+        } else {
+            archiveRoot = new File(System.getProperty("user.home"));
+        }
+        logger.infof("Archive maintenance started in %s", archiveRoot);
+
+        long deadline = configuration.getMaintenanceTimeBudget() > 0
+                ? System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(configuration.getMaintenanceTimeBudget())
+                : Long.MAX_VALUE;
+        int threshold = Math.max(1, configuration.getMaintenancePackThreshold());
+
+        SharedObjectStores objectStores = new SharedObjectStores(archiveRoot);
+        boolean successful = true;
+
+        // repositories
+
+        Set<File> storesToCollect = new LinkedHashSet<>();
+        List<File> repositories = findRepositories(archiveRoot, threshold);
+        for (int i = 0; i < repositories.size(); i++) {
+            if (currentTimeMillis() > deadline) {
+                report.skip(repositories.size() - i);
+                break;
+            }
+
+            File repositoryDirectory = repositories.get(i);
+            try {
+                Lock lock = repositoryLocks.getLock(repositoryDirectory);
+                lock.lock();
+                try {
+                    File gitDir = resolveGitDir(repositoryDirectory);
+                    File store = objectStores.getLinkedStore(gitDir);
+                    long sizeBefore = objectsSize(gitDir);
+                    int packsBefore = countPacks(gitDir);
+                    if (store != null) {
+                        consolidate(objectStores, gitDir, store);
+                        storesToCollect.add(store);
+                    } else {
+                        collectGarbage(gitDir);
+                    }
+                    report.add(repositoryDirectory, store != null ? "consolidated" : "gc",
+                            packsBefore, countPacks(gitDir), sizeBefore, objectsSize(gitDir));
+                } finally {
+                    lock.unlock();
+                }
+            } catch (Exception e) {
+                logger.errorf(e, "Maintenance of repository %s failed", repositoryDirectory);
+                successful = false;
+            }
+        }
+
+        // shared object stores
+
+        for (File store : objectStores.getStores()) {
+            if (storesToCollect.contains(store) || countPacks(store) >= threshold) {
+                if (currentTimeMillis() > deadline) {
+                    report.skip(1);
+                    continue;
+                }
+
+                try {
+                    collectStore(objectStores, store, report);
+                } catch (Exception e) {
+                    logger.errorf(e, "Maintenance of shared object store %s failed", store);
+                    successful = false;
+                }
+            }
+        }
+
+        return successful;
+    }
+
+    /**
+     * Saves summary of a maintenance run. Failure to save it is not fatal, the report has been logged already.
+     */
+    void saveReport(MaintenanceReport report, Timestamp started, boolean successful) {
+        ArchiveMaintenanceRun run = new ArchiveMaintenanceRun();
+        run.setStarted(started);
+        run.setFinished(new Timestamp(System.currentTimeMillis()));
+        run.setProcessed(report.getProcessed());
+        run.setSkipped(report.getSkipped() + report.getBusyStores().size());
+        run.setReclaimedBytes(report.getReclaimedBytes());
+        run.setSuccessful(successful);
+
+        EntityTransaction transaction = em.getTransaction();
+        try {
+            transaction.begin();
+            em.persist(run);
+            transaction.commit();
+        } catch (RuntimeException e) {
+            logger.errorf(e, "Couldn't save archive maintenance report");
+            if (transaction.isActive()) {
+                transaction.rollback();
+            }
+        }
+    }
+
+    /**
+     * Finds repositories in the {@code <archive root>/<organization>/<repository>} layout, which have at least given
+     * number of packs. Repositories with most packs come first.
+     */
+    List<File> findRepositories(File archiveRoot, int threshold) {
+        List<File> repositories = new ArrayList<>();
+        File[] organizations = archiveRoot.listFiles(file -> file.isDirectory() && !file.getName().startsWith("."));
+        if (organizations == null) {
+            return repositories;
+        }
+        for (File organization : organizations) {
+            File[] directories = organization.listFiles(File::isDirectory);
+            if (directories == null) {
+                continue;
+            }
+            for (File directory : directories) {
+                File gitDir = resolveGitDir(directory);
+                if (gitDir != null && countPacks(gitDir) >= threshold) {
+                    repositories.add(directory);
+                }
+            }
+        }
+        repositories.sort(Comparator.comparing((File directory) -> countPacks(resolveGitDir(directory))).reversed());
+        return repositories;
+    }
+
+    long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    private void collectGarbage(File gitDir) throws IOException, GitAPIException {
+        logger.infof("Collecting garbage in %s", gitDir);
+        try (Git git = Git.open(gitDir)) {
+            // bitmap index speeds up fetch negotiation and reachability checks
+            git.getRepository().getConfig().setBoolean("pack", null, "buildbitmaps", true);
+            git.gc().call();
+        }
+    }
+
+    private void consolidate(SharedObjectStores objectStores, File gitDir, File store)
+            throws IOException, GitAPIException {
+        logger.infof("Moving objects of %s to shared object store %s", gitDir, store);
+        Lock storesLock = repositoryLocks.getLock(objectStores.getStoresRoot());
+        storesLock.lock();
+        try {
+            objectStores.consolidate(gitDir, store);
+        } finally {
+            storesLock.unlock();
+        }
+    }
+
+    /**
+     * Garbage collects a shared object store, after refs of all repositories linked to it are collected into it.
+     * <p>
+     * The linked repositories must not change while their refs are collected and the store is collected, otherwise
+     * objects fetched into them on top of the store could be pruned. The store is therefore skipped if any of them
+     * is locked, e.g. because a fork is being archived into it. Links are only created under the object stores lock,
+     * so the set of linked repositories doesn't change while the lock is held. The repository locks are only tried,
+     * so taking them after the object stores lock can't deadlock.
+     */
+    private void collectStore(SharedObjectStores objectStores, File store, MaintenanceReport report)
+            throws IOException, GitAPIException {
+        Lock storesLock = repositoryLocks.getLock(objectStores.getStoresRoot());
+        storesLock.lock();
+        List<Lock> repositoryLocksHeld = new ArrayList<>();
+        try {
+            List<File> linkedRepositories = objectStores.getLinkedRepositories(store);
+            for (File repositoryDirectory : linkedRepositories) {
+                Lock lock = repositoryLocks.getLock(repositoryDirectory);
+                if (!lock.tryLock()) {
+                    logger.infof("Repository %s linked to shared object store %s is in use, skipping the store",
+                            repositoryDirectory, store);
+                    report.skipBusy(store);
+                    return;
+                }
+                repositoryLocksHeld.add(lock);
+            }
+
+            // keep objects borrowed by all linked repositories, not only by the consolidated ones
+            objectStores.collectLinkedRefs(store);
+            long sizeBefore = objectsSize(store);
+            int packsBefore = countPacks(store);
+            collectGarbage(store);
+            report.add(store, "gc", packsBefore, countPacks(store), sizeBefore, objectsSize(store));
+        } finally {
+            repositoryLocksHeld.forEach(Lock::unlock);
+            storesLock.unlock();
+        }
+    }
+
+    private static File resolveGitDir(File directory) {
+        return RepositoryCache.FileKey.resolve(directory, FS.DETECTED);
+    }
+
+    static int countPacks(File gitDir) {
+        File[] packs = new File(gitDir, OBJECTS_DIRECTORY + "/" + PACK_DIRECTORY)
+                .listFiles((dir, name) -> name.endsWith(PACK_EXTENSION));
+        return packs == null ? 0 : packs.length;
+    }
+
+    /**
+     * @return total size of files in the object database of given repository
+     */
+    static long objectsSize(File gitDir) throws IOException {
+        Path objects = new File(gitDir, OBJECTS_DIRECTORY).toPath();
+        if (!Files.isDirectory(objects)) {
+            return 0;
+        }
+        try (Stream<Path> files = Files.walk(objects)) {
+            return files.filter(Files::isRegularFile)
+                    .mapToLong(path -> path.toFile().length())
+                    .sum();
+        }
+    }
+
+    /**
+     * Summary of a maintenance run.
+     */
+    static class MaintenanceReport {
+
+        private final List<String> lines = new ArrayList<>();
+        private final List<File> busyStores = new ArrayList<>();
+        private long reclaimedBytes;
+        private int skipped;
+
+        void add(File directory, String action, int packsBefore, int packsAfter, long sizeBefore, long sizeAfter) {
+            reclaimedBytes += sizeBefore - sizeAfter;
+            lines.add(String.format("%s: %s, packs %d -> %d, size %d -> %d bytes, reclaimed %d bytes",
+                    directory, action, packsBefore, packsAfter, sizeBefore, sizeAfter, sizeBefore - sizeAfter));
+        }
+
+        void skip(int count) {
+            skipped += count;
+        }
+
+        void skipBusy(File store) {
+            busyStores.add(store);
+        }
+
+        int getProcessed() {
+            return lines.size();
+        }
+
+        long getReclaimedBytes() {
+            return reclaimedBytes;
+        }
+
+        /**
+         * @return number of repositories and stores left for the next run, because the time budget was exceeded
+         */
+        int getSkipped() {
+            return skipped;
+        }
+
+        /**
+         * @return stores left for the next run, because some of their linked repositories were in use
+         */
+        List<File> getBusyStores() {
+            return busyStores;
+        }
+
+        void log(Logger logger) {
+            StringBuilder sb = new StringBuilder("Archive maintenance report:");
+            lines.forEach(line -> sb.append("\n  ").append(line));
+            sb.append(String.format("\nProcessed %d repositories, reclaimed %d bytes in total.",
+                    lines.size(), reclaimedBytes));
+            if (skipped > 0) {
+                sb.append(String.format("\n%d repositories were left for the next run, the time budget was exceeded.",
+                        skipped));
+            }
+            if (!busyStores.isEmpty()) {
+                sb.append(String.format("\n%d shared object stores were left for the next run, their repositories "
+                        + "were in use: %s", busyStores.size(), busyStores));
+            }
+            logger.info(sb.toString());
+        }
+    }
+}
@@ -5,6 +5,7 @@ import org.eclipse.egit.github.core.Repository;
 import org.eclipse.egit.github.core.User;
 import org.eclipse.egit.github.core.client.GitHubClient;
 import org.jboss.logging.Logger;
+import org.jboss.set.mjolnir.archive.ArchiveStorageStats;
 import org.jboss.set.mjolnir.archive.ArchivingBean;
 import org.jboss.set.mjolnir.archive.configuration.Configuration;
 import org.jboss.set.mjolnir.archive.domain.GitHubOrganization;
@@ -17,7 +18,8 @@ import org.jboss.set.mjolnir.archive.domain.UserRemoval;
 import org.jboss.set.mjolnir.archive.domain.repositories.RemovalLogRepositoryBean;
 import org.jboss.set.mjolnir.archive.github.ExtendedUserService;
 import org.jboss.set.mjolnir.archive.github.GitHubMembershipBean;
-import org.jboss.set.mjolnir.archive.github.GitHubRepositoriesBean;
+import org.jboss.set.mjolnir.archive.github.RepositoryForksIndexCache;
+import org.jboss.set.mjolnir.archive.util.ParallelTasks;
 
 import javax.annotation.PostConstruct;
 import javax.batch.api.AbstractBatchlet;
@@ -28,15 +30,25 @@ import javax.persistence.EntityTransaction;
 import javax.persistence.TypedQuery;
 import java.io.IOException;
 import java.sql.Timestamp;
+import java.time.Clock;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * Batchlet that handles the user removal process.
  *
  * Gets fresh removal records from db (those records are created by a MDB listening for employee offboarding messages),
  * archives their private repositories, and removes their access to our GitHub Teams.
+ *
+ * Each removal is processed in its own transaction. Processing of a removal is limited by
+ * {@link Configuration#getRemovalTimeBudget()}, which is checked between the individual steps of the removal. Each step
+ * is bounded by the {@link Configuration#getConnectTimeout() connect} and {@link Configuration#getReadTimeout() read}
+ * timeouts of the GitHub client, and by the {@link Configuration#getGitTimeout() timeout} of Git fetches.
  */
 @Named
 public class MembershipRemovalBatchlet extends AbstractBatchlet {
@@ -47,14 +59,17 @@ public class MembershipRemovalBatchlet extends AbstractBatchlet {
     private EntityManager em;
 
     @Inject
-    private Configuration configuration;
+    Configuration configuration;
 
     @Inject
-    private GitHubRepositoriesBean discoveryBean;
+    private RepositoryForksIndexCache forksIndexCache;
 
     @Inject
     private ArchivingBean archivingBean;
 
+    @Inject
+    ParallelTasks parallelTasks;
+
     @Inject
     private GitHubMembershipBean membershipBean;
 
@@ -66,6 +81,8 @@ public class MembershipRemovalBatchlet extends AbstractBatchlet {
 
     private ExtendedUserService userService;
 
+    Clock clock = Clock.systemUTC();
+
     @PostConstruct
     void init() {
         userService = new ExtendedUserService(gitHubClient);
@@ -78,34 +95,21 @@ public class MembershipRemovalBatchlet extends AbstractBatchlet {
         List<UserRemoval> removals = loadRemovalsToProcess();
         logger.infof("Found %d user removal requests.", removals.size());
 
-        EntityTransaction transaction = em.getTransaction();
-        transaction.begin();
+        forksIndexCache.invalidate();
+        try {
+            return processRemovals(removals);
+        } finally {
+            forksIndexCache.invalidate();
+        }
+    }
 
+    private String processRemovals(List<UserRemoval> removals) {
         boolean successful = true;
         for (UserRemoval removal : removals) {
-            try {
-                logger.infof("Processing removal #%d", removal.getId());
-                RemovalStatus removalStatus = processRemoval(removal);
-
-                logger.infof("Status of removal #%d is %s", removal.getId(), removalStatus.name());
-                removal.setStatus(removalStatus);
-                em.persist(removal);
-
-                successful &= RemovalStatus.COMPLETED.equals(removalStatus);
-            } catch (Exception e) {
-                successful = false;
-                
-                // log error to db
-                logRepositoryBean.logError(removal, "Failed to process removal: " + removal.toString(), e);
-
-                removal.setStatus(RemovalStatus.FAILED);
-                em.persist(removal);
-            }
-            em.flush();
+            RemovalStatus removalStatus = processRemovalInTransaction(removal.getId());
+            successful &= RemovalStatus.COMPLETED.equals(removalStatus);
         }
 
-        transaction.commit();
-
         if (successful) {
             logger.infof("Removal batchlet completed successfully.");
             return Constants.DONE;
@@ -115,6 +119,52 @@ public class MembershipRemovalBatchlet extends AbstractBatchlet {
         }
     }
 
+    /**
+     * Processes single removal in its own transaction, and stores its resulting status.
+     *
+     * @param removalId ID of the removal to process
+     * @return resulting status
+     */
+    RemovalStatus processRemovalInTransaction(Long removalId) {
+        EntityTransaction transaction = em.getTransaction();
+        transaction.begin();
+        try {
+            UserRemoval removal = em.find(UserRemoval.class, removalId);
+            RemovalStatus removalStatus = processRemovalSafely(removal);
+            em.persist(removal);
+
+            transaction.commit();
+            return removalStatus;
+        } finally {
+            if (transaction.isActive()) {
+                transaction.rollback();
+            }
+        }
+    }
+
+    /**
+     * Processes single removal and sets its resulting status. Failures are logged to the database and result in
+     * the FAILED status. Doesn't open a transaction by itself.
+     *
+     * @param removal removal to process
+     * @return resulting status
+     */
+    RemovalStatus processRemovalSafely(UserRemoval removal) {
+        RemovalStatus removalStatus;
+        try {
+            logger.infof("Processing removal #%d", removal.getId());
+            removalStatus = processRemoval(removal);
+        } catch (Exception e) {
+            // log error to db
+            logRepositoryBean.logError(removal, "Failed to process removal: " + removal.toString(), e);
+            removalStatus = RemovalStatus.FAILED;
+        }
+
+        logger.infof("Status of removal #%d is %s", removal.getId(), removalStatus.name());
+        removal.setStatus(removalStatus);
+        return removalStatus;
+    }
+
     List<UserRemoval> loadRemovalsToProcess() {
         // perform in transaction to avoid removals being loaded by two parallel executions
         EntityTransaction transaction = em.getTransaction();
@@ -191,6 +241,9 @@ public class MembershipRemovalBatchlet extends AbstractBatchlet {
      * @return processed successfully?
      */
     RemovalStatus processRemoval(UserRemoval removal) {
+        long deadline = configuration.getRemovalTimeBudget() > 0
+                ? clock.millis() + TimeUnit.MINUTES.toMillis(configuration.getRemovalTimeBudget())
+                : Long.MAX_VALUE;
 
         // validate that either ldap username or github username is specified
         if (StringUtils.isBlank(removal.getGithubUsername()) && StringUtils.isBlank(removal.getLdapUsername())) {
@@ -228,7 +281,7 @@ public class MembershipRemovalBatchlet extends AbstractBatchlet {
         for (GitHubOrganization organization : organizations) {
             // archive user repositories
             try {
-                archiveUserRepositories(removal, organization, gitHubUsername);
+                archiveUserRepositories(removal, organization, gitHubUsername, deadline);
             } catch (Exception e) {
                 logRepositoryBean.logError(removal, "Couldn't archive repositories of user " + gitHubUsername, e);
                 return RemovalStatus.FAILED;
@@ -241,6 +294,9 @@ public class MembershipRemovalBatchlet extends AbstractBatchlet {
 
                 // remove team memberships
                 for (GitHubTeam team : organization.getTeams()) {
+                    if (isTimeBudgetExceeded(removal, deadline)) {
+                        return RemovalStatus.FAILED;
+                    }
                     try {
                         membershipBean.removeUserFromTeam(removal, team, gitHubUsername);
                     } catch (IOException e) {
@@ -252,6 +308,9 @@ public class MembershipRemovalBatchlet extends AbstractBatchlet {
 
                 // if this is enabled for given organization, remove organization membership
                 if (organization.isUnsubscribeUsersFromOrg()) {
+                    if (isTimeBudgetExceeded(removal, deadline)) {
+                        return RemovalStatus.FAILED;
+                    }
                     try {
                         membershipBean.removeUserFromOrganization(removal, organization, gitHubUsername);
                     } catch (IOException e) {
@@ -265,11 +324,26 @@ public class MembershipRemovalBatchlet extends AbstractBatchlet {
             }
         }
 
+        if (isTimeBudgetExceeded(removal, deadline)) {
+            return RemovalStatus.FAILED;
+        }
         return RemovalStatus.COMPLETED;
     }
 
-    private void archiveUserRepositories(UserRemoval removal, GitHubOrganization organization, String gitHubUsername)
-            throws Exception {
+    /**
+     * Checks whether the time budget of a removal has been exceeded, and logs it if so.
+     */
+    private boolean isTimeBudgetExceeded(UserRemoval removal, long deadline) {
+        if (clock.millis() <= deadline) {
+            return false;
+        }
+        logRepositoryBean.logError(removal, String.format("Removal #%d exceeded its time budget of %d minutes",
+                removal.getId(), configuration.getRemovalTimeBudget()));
+        return true;
+    }
+
+    private void archiveUserRepositories(UserRemoval removal, GitHubOrganization organization, String gitHubUsername,
+                                         long deadline) throws Exception {
 
         // find user's repositories
 
@@ -277,7 +351,7 @@ public class MembershipRemovalBatchlet extends AbstractBatchlet {
         try {
             logger.infof("Looking for repositories belonging to user '%s' that are forks of organization '%s' repositories.",
                     gitHubUsername, organization.getName());
-            repositoriesToArchive = discoveryBean.getRepositoriesToArchive(organization.getName(), gitHubUsername);
+            repositoriesToArchive = forksIndexCache.getForksIndex(organization.getName()).getUserForks(gitHubUsername);
             logger.infof("Found following repositories to archive: %s",
                     repositoriesToArchive.stream().map(Repository::generateId).collect(Collectors.toList()));
         } catch (IOException e) {
@@ -291,31 +365,101 @@ public class MembershipRemovalBatchlet extends AbstractBatchlet {
 
         // archive repositories
 
-        for (Repository repository : repositoriesToArchive) {
+        archiveRepositories(removal, new ArrayList<>(repositoriesToArchive), deadline);
+    }
 
-            // persist repository record
-            RepositoryFork repositoryFork = createRepositoryFork(repository);
-            repositoryFork.setUserRemoval(removal);
-            em.persist(repositoryFork);
+    /**
+     * Archives given repositories, using up to the configured number of archiving threads. With a single thread, the
+     * archiving stops at the first failure. Otherwise, all the repositories are archived even if some of them fail,
+     * and the first failure is rethrown afterwards. Entity manager is only accessed from the calling thread.
+     *
+     * @param deadline repositories are not archived after this time (in milliseconds), and fail instead
+     */
+    void archiveRepositories(UserRemoval removal, List<Repository> repositories, long deadline) throws Exception {
+        int threads = Math.min(parallelTasks.getThreads(ParallelTasks.Pool.ARCHIVING), repositories.size());
+        if (threads <= 1) {
+            for (Repository repository : repositories) {
+                RepositoryFork repositoryFork = persistRepositoryFork(removal, repository);
+                updateRepositoryForkStatus(removal, repository, repositoryFork,
+                        archiveRepository(repository, repositoryFork, deadline));
+            }
+            return;
+        }
 
-            // archive
-            logger.infof("Archiving repository '%s'", repository.generateId());
-            try {
-                archivingBean.createRepositoryMirror(repository);
+        logger.infof("Archiving %d repositories in %d threads.", repositories.size(), threads);
 
-                repositoryFork.setStatus(RepositoryForkStatus.ARCHIVED);
-                em.persist(repositoryFork);
-            } catch (Exception e) {
-                logRepositoryBean.logError(removal, "Couldn't archive repository: " + repository.getCloneUrl(), e);
+        List<RepositoryFork> repositoryForks = new ArrayList<>(repositories.size());
+        for (Repository repository : repositories) {
+            repositoryForks.add(persistRepositoryFork(removal, repository));
+        }
+        List<Integer> indexes = IntStream.range(0, repositories.size()).boxed().collect(Collectors.toList());
+        List<Exception> failures = parallelTasks.map(ParallelTasks.Pool.ARCHIVING, indexes, RuntimeException.class,
+                i -> archiveRepository(repositories.get(i), repositoryForks.get(i), deadline));
 
-                repositoryFork.setStatus(RepositoryForkStatus.ARCHIVAL_FAILED);
-                em.persist(repositoryFork);
+        Exception firstFailure = null;
+        for (int i = 0; i < repositories.size(); i++) {
+            try {
+                updateRepositoryForkStatus(removal, repositories.get(i), repositoryForks.get(i), failures.get(i));
+            } catch (Exception e) {
+                if (firstFailure == null) {
+                    firstFailure = e;
+                }
+            }
+        }
+        if (firstFailure != null) {
+            throw firstFailure;
+        }
+    }
 
-                removal.setStatus(RemovalStatus.FAILED);
-                em.persist(removal);
+    private RepositoryFork persistRepositoryFork(UserRemoval removal, Repository repository) {
+        RepositoryFork repositoryFork = createRepositoryFork(repository);
+        repositoryFork.setUserRemoval(removal);
+        em.persist(repositoryFork);
+        return repositoryFork;
+    }
 
-                throw e;
+    /**
+     * Archives a repository, and sets storage used by the archive to given fork record. The record is only updated
+     * in memory, so that this can be called from worker threads.
+     *
+     * @return failure, or null if the repository was archived successfully
+     */
+    private Exception archiveRepository(Repository repository, RepositoryFork repositoryFork, long deadline) {
+        if (clock.millis() > deadline) {
+            return new TimeoutException("Time budget of the removal exceeded, repository wasn't archived");
+        }
+        logger.infof("Archiving repository '%s'", repository.generateId());
+        try {
+            ArchiveStorageStats stats = archivingBean.createRepositoryMirror(repository);
+            if (stats != null) {
+                repositoryFork.setObjectCount(stats.getObjectCount());
+                repositoryFork.setUniqueBytes(stats.getUniqueBytes());
             }
+            return null;
+        } catch (Exception e) {
+            return e;
+        }
+    }
+
+    /**
+     * Stores the result of archiving. If the archiving failed, the removal is marked as failed and the failure is
+     * rethrown.
+     */
+    private void updateRepositoryForkStatus(UserRemoval removal, Repository repository, RepositoryFork repositoryFork,
+                                            Exception failure) throws Exception {
+        if (failure == null) {
+            repositoryFork.setStatus(RepositoryForkStatus.ARCHIVED);
+            em.persist(repositoryFork);
+        } else {
+            logRepositoryBean.logError(removal, "Couldn't archive repository: " + repository.getCloneUrl(), failure);
+
+            repositoryFork.setStatus(RepositoryForkStatus.ARCHIVAL_FAILED);
+            em.persist(repositoryFork);
+
+            removal.setStatus(RemovalStatus.FAILED);
+            em.persist(removal);
+
+            throw failure;
         }
     }
 
@@ -327,5 +471,4 @@ public class MembershipRemovalBatchlet extends AbstractBatchlet {
         fork.setSourceRepositoryUrl(repository.getSource().getCloneUrl());
         return fork;
     }
-
 }
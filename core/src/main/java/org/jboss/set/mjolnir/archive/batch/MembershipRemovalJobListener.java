@@ -0,0 +1,28 @@
+package org.jboss.set.mjolnir.archive.batch;
+
+import org.jboss.set.mjolnir.archive.github.RepositoryForksIndexCache;
+
+import javax.batch.api.listener.AbstractJobListener;
+import javax.inject.Inject;
+import javax.inject.Named;
+
+/**
+ * Makes sure every execution of the membership removal job retrieves current repository forks, and that the forks
+ * indexes don't occupy memory after the job finished.
+ */
+@Named
+public class MembershipRemovalJobListener extends AbstractJobListener {
+
+    @Inject
+    private RepositoryForksIndexCache forksIndexCache;
+
+    @Override
+    public void beforeJob() {
+        forksIndexCache.invalidate();
+    }
+
+    @Override
+    public void afterJob() {
+        forksIndexCache.invalidate();
+    }
+}
@@ -0,0 +1,58 @@
+package org.jboss.set.mjolnir.archive.batch;
+
+import javax.batch.api.partition.PartitionPlan;
+import javax.batch.api.partition.PartitionPlanImpl;
+import java.util.Properties;
+
+/**
+ * Helpers for partitioned steps. Every partition gets its index and the total number of partitions as partition
+ * plan properties, and selects its share of work either by the {@code belongsTo()} method, or by a query condition
+ * like {@code MOD(id, :partitionCount) = :partitionIndex}.
+ */
+final class Partitions {
+
+    static final String PARTITION_INDEX = "partitionIndex";
+    static final String PARTITION_COUNT = "partitionCount";
+
+    private Partitions() {
+    }
+
+    /**
+     * Creates a plan of given number of partitions, each processed by its own thread.
+     * <p>
+     * When a job is restarted, the partition plan of the original execution is reused, so that every partition
+     * resumes from its own checkpoint.
+     */
+    static PartitionPlan createPlan(int partitions) {
+        partitions = Math.max(1, partitions);
+
+        Properties[] partitionProperties = new Properties[partitions];
+        for (int i = 0; i < partitions; i++) {
+            partitionProperties[i] = new Properties();
+            partitionProperties[i].setProperty(PARTITION_INDEX, String.valueOf(i));
+            partitionProperties[i].setProperty(PARTITION_COUNT, String.valueOf(partitions));
+        }
+
+        PartitionPlanImpl plan = new PartitionPlanImpl();
+        plan.setPartitions(partitions);
+        plan.setThreads(partitions);
+        plan.setPartitionProperties(partitionProperties);
+        plan.setPartitionsOverride(false);
+        return plan;
+    }
+
+    /**
+     * Items with the same key always fall into the same partition.
+     */
+    static boolean belongsTo(String key, int partitionIndex, int partitionCount) {
+        return Math.floorMod(key.hashCode(), partitionCount) == partitionIndex;
+    }
+
+    static int parseIndex(String partitionIndex) {
+        return partitionIndex != null ? Integer.parseInt(partitionIndex) : 0;
+    }
+
+    static int parseCount(String partitionCount) {
+        return partitionCount != null ? Integer.parseInt(partitionCount) : 1;
+    }
+}
@@ -2,9 +2,12 @@ package org.jboss.set.mjolnir.archive.batch;
 
 import org.jboss.logging.Logger;
 import org.jboss.set.mjolnir.archive.GitArchiveRepository;
+import org.jboss.set.mjolnir.archive.RepositoryLocks;
 import org.jboss.set.mjolnir.archive.configuration.Configuration;
 import org.jboss.set.mjolnir.archive.domain.RepositoryFork;
 import org.jboss.set.mjolnir.archive.domain.RepositoryForkStatus;
+import org.jboss.set.mjolnir.archive.export.ArchiveExportStore;
+import org.jboss.set.mjolnir.archive.export.LocalDirectoryExportStore;
 
 import javax.batch.api.AbstractBatchlet;
 import javax.inject.Inject;
@@ -12,13 +15,18 @@ import javax.inject.Named;
 import javax.persistence.EntityManager;
 import javax.persistence.LockModeType;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Paths;
 import java.sql.Timestamp;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.locks.Lock;
 import java.util.stream.Collectors;
 
 /**
@@ -28,6 +36,8 @@ import java.util.stream.Collectors;
  * <p>
  * - application.remove_archives - if false, this batchlet is effectively disabled.
  * - application.remove_archives_after - number of days that the branches must be archived, before they can be removed.
+ * - application.archive_export_directory - if set, the branches are exported as a git bundle into this directory
+ *   before they are removed.
  */
 @Named
 public class RemoveOldArchivesBatchlet extends AbstractBatchlet {
@@ -40,6 +50,8 @@ public class RemoveOldArchivesBatchlet extends AbstractBatchlet {
     @Inject
     Configuration configuration;
 
+    private final RepositoryLocks repositoryLocks = RepositoryLocks.archiveRepositoryLocks();
+
     /**
      * Processes following workflow:
      *
@@ -54,8 +66,21 @@ public class RemoveOldArchivesBatchlet extends AbstractBatchlet {
      */
     @Override
     public String process() {
+        return processPartition(0, 1);
+    }
+
+    /**
+     * Processes the workflow described in {@link #process()} for repository forks belonging to given partition.
+     * <p>
+     * Forks are assigned to partitions by their source repository name, so that every archive repository is
+     * only modified by a single partition.
+     *
+     * @param partitionIndex index of the partition to process
+     * @param partitionCount total number of partitions
+     */
+    public String processPartition(int partitionIndex, int partitionCount) {
 
-        logger.infof("RemoveOldArchivesBatchlet started");
+        logger.infof("RemoveOldArchivesBatchlet started, partition %d/%d", partitionIndex, partitionCount);
 
         if (!configuration.getRemoveArchives()) {
             logger.infof("Removing of old repository branches is disabled");
@@ -68,7 +93,9 @@ public class RemoveOldArchivesBatchlet extends AbstractBatchlet {
         final Date removeBeforeDate = Date.from(Instant.now()
                 .minus(configuration.getRemoveArchivesAfter(), ChronoUnit.DAYS));
 
-        Map<String, List<RepositoryFork>> repositoriesByName = loadRepositoryForks();
+        final ArchiveExportStore exportStore = createExportStore();
+
+        Map<String, List<RepositoryFork>> repositoriesByName = loadRepositoryForks(partitionIndex, partitionCount);
         for (Map.Entry<String, List<RepositoryFork>> entry : repositoriesByName.entrySet()) {
             logger.infof("Processing repository forks for %s", entry.getKey());
 
@@ -122,8 +149,17 @@ public class RemoveOldArchivesBatchlet extends AbstractBatchlet {
                         logger.infof("Deleting archives for %d %s",
                                 repositoryFork.getId(), repositoryFork.getRepositoryName());
                         File gitDir = new File(configuration.getRepositoryArchiveRoot() + "/" + repositoryFork.getSourceRepositoryName());
-                        GitArchiveRepository repository = GitArchiveRepository.open(gitDir);
-                        repository.removeRemoteBranches(repositoryFork.getOwnerLogin());
+                        Lock lock = repositoryLocks.getLock(gitDir);
+                        lock.lock();
+                        try (GitArchiveRepository repository = GitArchiveRepository.open(gitDir)) {
+                            if (exportStore != null) {
+                                exportArchive(exportStore, repository, repositoryFork);
+                            }
+                            repository.removeRemoteBranches(repositoryFork.getOwnerLogin(),
+                                    configuration.isRemoveArchivesPruneRemotes());
+                        } finally {
+                            lock.unlock();
+                        }
                         updateRecordStatus(repositoryFork, RepositoryForkStatus.DELETED);
                         logger.infof("Marking repository fork record as DELETED: #%d %s",
                                 repositoryFork.getId(), repositoryFork.getRepositoryName());
@@ -148,7 +184,7 @@ public class RemoveOldArchivesBatchlet extends AbstractBatchlet {
             }
         }
 
-        logger.infof("RemoveOldArchivesBatchlet completed");
+        logger.infof("RemoveOldArchivesBatchlet completed, partition %d/%d", partitionIndex, partitionCount);
 
         if (successful) {
             return Constants.DONE;
@@ -169,6 +205,59 @@ public class RemoveOldArchivesBatchlet extends AbstractBatchlet {
         return removals.stream().collect(Collectors.groupingBy(RepositoryFork::getRepositoryName));
     }
 
+    /**
+     * Loads unprocessed RepositoryFork records belonging to given partition. A group of records belongs to the
+     * partition of the source repository of its newest record, which is the repository the branches are removed from.
+     *
+     * @return map where keys are repository names and values are lists of RepositoryFork records
+     */
+    public Map<String, List<RepositoryFork>> loadRepositoryForks(int partitionIndex, int partitionCount) {
+        Map<String, List<RepositoryFork>> repositoriesByName = loadRepositoryForks();
+        if (partitionCount > 1) {
+            repositoriesByName.values().removeIf(forks -> {
+                RepositoryFork newestFork = Collections.max(forks, Comparator.comparing(RepositoryFork::getCreated));
+                return !Partitions.belongsTo(newestFork.getSourceRepositoryName(), partitionIndex, partitionCount);
+            });
+        }
+        return repositoriesByName;
+    }
+
+    /**
+     * @return export store, or null if exporting of archives is not configured
+     */
+    ArchiveExportStore createExportStore() {
+        String exportDirectory = configuration.getArchiveExportDirectory();
+        if (exportDirectory == null || exportDirectory.isEmpty()) {
+            return null;
+        }
+        return new LocalDirectoryExportStore(Paths.get(exportDirectory));
+    }
+
+    /**
+     * Exports archived branches of given repository fork as a git bundle, and records the export location. The
+     * bundle is streamed straight into the store, and then read back and verified, so that the branches are only
+     * removed if the bundle can be restored. Forks without any archived branches are not exported.
+     */
+    void exportArchive(ArchiveExportStore exportStore, GitArchiveRepository repository,
+                       RepositoryFork repositoryFork) throws IOException {
+        String ownerLogin = repositoryFork.getOwnerLogin();
+        if (repository.getRemoteBranches(ownerLogin).isEmpty()) {
+            logger.infof("No archived branches to export for %d %s",
+                    repositoryFork.getId(), repositoryFork.getRepositoryName());
+            return;
+        }
+
+        String key = repositoryFork.getSourceRepositoryName() + "/" + ownerLogin + "-" + repositoryFork.getId()
+                + ".bundle";
+        String location = exportStore.store(key, out -> repository.exportBundle(ownerLogin, out));
+        try (InputStream in = exportStore.read(key)) {
+            repository.verifyBundle(ownerLogin, in);
+        }
+        repositoryFork.setExportLocation(location);
+        logger.infof("Exported archive of %d %s to %s",
+                repositoryFork.getId(), repositoryFork.getRepositoryName(), location);
+    }
+
     /**
      * Sets a deleted timestamp and a status to a RepositoryFork record, and saves to database.
      *
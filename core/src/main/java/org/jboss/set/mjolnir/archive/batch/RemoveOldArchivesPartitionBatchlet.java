@@ -0,0 +1,30 @@
+package org.jboss.set.mjolnir.archive.batch;
+
+import javax.batch.api.AbstractBatchlet;
+import javax.batch.api.BatchProperty;
+import javax.inject.Inject;
+import javax.inject.Named;
+
+/**
+ * Runs the {@link RemoveOldArchivesBatchlet} workflow for a single partition of a partitioned step.
+ */
+@Named
+public class RemoveOldArchivesPartitionBatchlet extends AbstractBatchlet {
+
+    @Inject
+    private RemoveOldArchivesBatchlet removeOldArchivesBatchlet;
+
+    @Inject
+    @BatchProperty
+    private String partitionIndex;
+
+    @Inject
+    @BatchProperty
+    private String partitionCount;
+
+    @Override
+    public String process() {
+        return removeOldArchivesBatchlet.processPartition(Partitions.parseIndex(partitionIndex),
+                Partitions.parseCount(partitionCount));
+    }
+}
@@ -0,0 +1,24 @@
+package org.jboss.set.mjolnir.archive.batch;
+
+import org.jboss.set.mjolnir.archive.configuration.Configuration;
+
+import javax.batch.api.partition.PartitionMapper;
+import javax.batch.api.partition.PartitionPlan;
+import javax.inject.Inject;
+import javax.inject.Named;
+
+/**
+ * Splits removal of old archives into {@link Configuration#getRemoveArchivesThreads()} partitions, each processed by
+ * its own thread.
+ */
+@Named
+public class RemoveOldArchivesPartitionMapper implements PartitionMapper {
+
+    @Inject
+    private Configuration configuration;
+
+    @Override
+    public PartitionPlan mapPartitions() {
+        return Partitions.createPlan(configuration.getRemoveArchivesThreads());
+    }
+}
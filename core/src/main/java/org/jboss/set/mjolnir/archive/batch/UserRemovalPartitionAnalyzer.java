@@ -0,0 +1,27 @@
+package org.jboss.set.mjolnir.archive.batch;
+
+import javax.batch.api.partition.AbstractPartitionAnalyzer;
+import javax.batch.runtime.BatchStatus;
+import javax.batch.runtime.context.StepContext;
+import javax.inject.Inject;
+import javax.inject.Named;
+
+/**
+ * Sets the step exit status to DONE_WITH_ERRORS if any of the partitions failed to complete some removals, DONE
+ * otherwise.
+ */
+@Named
+public class UserRemovalPartitionAnalyzer extends AbstractPartitionAnalyzer {
+
+    @Inject
+    private StepContext stepContext;
+
+    @Override
+    public void analyzeStatus(BatchStatus batchStatus, String exitStatus) {
+        if (Constants.DONE_WITH_ERRORS.equals(exitStatus)) {
+            stepContext.setExitStatus(exitStatus);
+        } else if (stepContext.getExitStatus() == null) {
+            stepContext.setExitStatus(Constants.DONE);
+        }
+    }
+}
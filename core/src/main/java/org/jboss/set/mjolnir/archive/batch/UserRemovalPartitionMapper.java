@@ -0,0 +1,24 @@
+package org.jboss.set.mjolnir.archive.batch;
+
+import org.jboss.set.mjolnir.archive.configuration.Configuration;
+
+import javax.batch.api.partition.PartitionMapper;
+import javax.batch.api.partition.PartitionPlan;
+import javax.inject.Inject;
+import javax.inject.Named;
+
+/**
+ * Splits processing of user removals into {@link Configuration#getRemovalThreads()} partitions, each processed by
+ * its own thread. Every partition reads removals whose ID modulo partition count equals the partition index.
+ */
+@Named
+public class UserRemovalPartitionMapper implements PartitionMapper {
+
+    @Inject
+    private Configuration configuration;
+
+    @Override
+    public PartitionPlan mapPartitions() {
+        return Partitions.createPlan(configuration.getRemovalThreads());
+    }
+}
@@ -0,0 +1,32 @@
+package org.jboss.set.mjolnir.archive.batch;
+
+import org.jboss.logging.Logger;
+import org.jboss.set.mjolnir.archive.domain.UserRemoval;
+
+import javax.batch.api.AbstractBatchlet;
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.util.List;
+
+/**
+ * First step of the membership removal job. Marks fresh removal records as STARTED, so that they are picked up by
+ * the {@link UserRemovalReader} in the following chunk step.
+ * <p>
+ * The step runs again when a failed job is restarted, so that removals created since the failed execution are
+ * picked up by the restarted job as well.
+ */
+@Named
+public class UserRemovalPreparationBatchlet extends AbstractBatchlet {
+
+    private final Logger logger = Logger.getLogger(getClass());
+
+    @Inject
+    private MembershipRemovalBatchlet membershipRemovalBatchlet;
+
+    @Override
+    public String process() {
+        List<UserRemoval> removals = membershipRemovalBatchlet.loadRemovalsToProcess();
+        logger.infof("Found %d user removal requests.", removals.size());
+        return Constants.DONE;
+    }
+}
@@ -0,0 +1,39 @@
+package org.jboss.set.mjolnir.archive.batch;
+
+import org.jboss.set.mjolnir.archive.domain.UserRemoval;
+
+import javax.batch.api.chunk.ItemProcessor;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityTransaction;
+
+/**
+ * Processes a single removal - archives user's repositories and removes his memberships.
+ * <p>
+ * Records created during processing are stored in a transaction that is committed by the {@link UserRemovalWriter}.
+ * The job uses chunks of a single item, so that each removal is committed right after its changes were done on
+ * GitHub. Changes done on GitHub can't be rolled back, so a removal whose records fail to be committed stays in the
+ * STARTED state, and is processed again when the job is restarted.
+ */
+@Named
+public class UserRemovalProcessor implements ItemProcessor {
+
+    @Inject
+    private EntityManager em;
+
+    @Inject
+    private MembershipRemovalBatchlet membershipRemovalBatchlet;
+
+    @Override
+    public Object processItem(Object item) {
+        EntityTransaction transaction = em.getTransaction();
+        if (!transaction.isActive()) {
+            transaction.begin();
+        }
+
+        UserRemoval removal = em.find(UserRemoval.class, item);
+        membershipRemovalBatchlet.processRemovalSafely(removal);
+        return removal;
+    }
+}
@@ -0,0 +1,84 @@
+package org.jboss.set.mjolnir.archive.batch;
+
+import org.jboss.logging.Logger;
+import org.jboss.set.mjolnir.archive.domain.RemovalStatus;
+import org.jboss.set.mjolnir.archive.domain.UserRemoval;
+
+import javax.batch.api.BatchProperty;
+import javax.batch.api.chunk.AbstractItemReader;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.persistence.EntityManager;
+import java.io.Serializable;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Reads IDs of removals in the STARTED state, i.e. removals that were picked up by the
+ * {@link UserRemovalPreparationBatchlet} but haven't been processed yet.
+ * <p>
+ * The checkpoint is the ID of the last read removal. Since processed removals leave the STARTED state, a restarted
+ * job only sees removals that haven't been finished, the checkpoint just saves it from reading them again.
+ */
+@Named
+public class UserRemovalReader extends AbstractItemReader {
+
+    private final Logger logger = Logger.getLogger(getClass());
+
+    @Inject
+    private EntityManager em;
+
+    @Inject
+    @BatchProperty
+    private String partitionIndex;
+
+    @Inject
+    @BatchProperty
+    private String partitionCount;
+
+    private Iterator<Long> removalIds;
+    private Long lastRemovalId;
+
+    @SuppressWarnings("unused")
+    public UserRemovalReader() {
+    }
+
+    UserRemovalReader(EntityManager em, String partitionIndex, String partitionCount) {
+        this.em = em;
+        this.partitionIndex = partitionIndex;
+        this.partitionCount = partitionCount;
+    }
+
+    @Override
+    public void open(Serializable checkpoint) {
+        lastRemovalId = (Long) checkpoint;
+
+        int index = Partitions.parseIndex(partitionIndex);
+        int count = Partitions.parseCount(partitionCount);
+
+        List<Long> ids = em.createNamedQuery(UserRemoval.FIND_PARTITION_REMOVAL_IDS, Long.class)
+                .setParameter("status", RemovalStatus.STARTED)
+                .setParameter("partitionCount", count)
+                .setParameter("partitionIndex", index)
+                .setParameter("lastId", lastRemovalId != null ? lastRemovalId : 0L)
+                .getResultList();
+        logger.infof("Partition %d/%d has %d removals to process, last checkpoint: %s", index, count, ids.size(),
+                lastRemovalId);
+
+        removalIds = ids.iterator();
+    }
+
+    @Override
+    public Object readItem() {
+        if (!removalIds.hasNext()) {
+            return null;
+        }
+        lastRemovalId = removalIds.next();
+        return lastRemovalId;
+    }
+
+    @Override
+    public Serializable checkpointInfo() {
+        return lastRemovalId;
+    }
+}
@@ -0,0 +1,55 @@
+package org.jboss.set.mjolnir.archive.batch;
+
+import org.jboss.logging.Logger;
+import org.jboss.set.mjolnir.archive.domain.RemovalStatus;
+import org.jboss.set.mjolnir.archive.domain.UserRemoval;
+
+import javax.batch.api.chunk.AbstractItemWriter;
+import javax.batch.runtime.context.StepContext;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityTransaction;
+import java.util.List;
+
+/**
+ * Stores statuses of processed removals, and commits the transaction of the chunk. Sets the exit status of the
+ * partition to DONE_WITH_ERRORS if any of its removals was not completed.
+ */
+@Named
+public class UserRemovalWriter extends AbstractItemWriter {
+
+    private final Logger logger = Logger.getLogger(getClass());
+
+    @Inject
+    private EntityManager em;
+
+    @Inject
+    private StepContext stepContext;
+
+    @Override
+    public void writeItems(List<Object> items) {
+        EntityTransaction transaction = em.getTransaction();
+        if (!transaction.isActive()) {
+            transaction.begin();
+        }
+
+        int failed = 0;
+        for (Object item : items) {
+            UserRemoval removal = (UserRemoval) item;
+            em.persist(removal);
+            if (!RemovalStatus.COMPLETED.equals(removal.getStatus())) {
+                failed++;
+            }
+        }
+
+        transaction.commit();
+        logger.infof("Stored %d processed removals, %d of them were not completed.", items.size(), failed);
+
+        if (failed > 0) {
+            stepContext.setExitStatus(Constants.DONE_WITH_ERRORS);
+        } else if (stepContext.getExitStatus() == null) {
+            stepContext.setExitStatus(Constants.DONE);
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package org.jboss.set.mjolnir.archive.configuration;
 
+import org.jboss.set.mjolnir.archive.FetchStrategy;
+import org.jboss.set.mjolnir.archive.ldap.LdapExistenceCheckStrategy;
+
 import javax.enterprise.inject.Vetoed;
 import java.net.URI;
 
@@ -21,6 +24,35 @@ public class Configuration {
     private int removeArchivesAfter = 90;
     private int connectTimeout = 5 * 60 * 1000;
     private int readTimeout = 5 * 60 * 1000;
+    private int gitHubFetchThreads = 1;
+    private String gitHubResponseCacheDir;
+    private int gitHubResponseCacheMaxAge = 30;
+    private int membershipSnapshotTtl = 30;
+    private boolean ldapIncrementalScan = false;
+    private int ldapIncrementalScanSlices = 7;
+    private int ldapPoolSize = 4;
+    private int ldapPoolIdleTimeout = 300;
+    private int ldapGroupingFactor = 50;
+    private int ldapParallelQueries = 1;
+    private int ldapCacheSize = 10000;
+    private int ldapCachePositiveTtl = 60;
+    private int ldapCacheNegativeTtl = 10;
+    private int ldapPageSize = 500;
+    private LdapExistenceCheckStrategy ldapExistenceCheckStrategy = LdapExistenceCheckStrategy.QUERY;
+    private int ldapSnapshotMaxAge = 10;
+    private int ldapSnapshotMinSize = 0;
+    private int removalThreads = 1;
+    private int removalTimeBudget = 0;
+    private int gitTimeout = 300;
+    private int removeArchivesThreads = 1;
+    private boolean removeArchivesPruneRemotes = false;
+    private FetchStrategy fetchStrategy = FetchStrategy.FULL;
+    private int archivingThreads = 1;
+    private boolean sharedObjectStores = false;
+    private int maintenancePackThreshold = 10;
+    private int maintenanceTimeBudget = 120;
+    private int upstreamSyncInterval = 60;
+    private String archiveExportDirectory;
 
     public Configuration() {
     }
@@ -90,14 +122,249 @@ public class Configuration {
         return removeUsersWithoutLdapAccount;
     }
 
+    /**
+     * Connect timeout (in milliseconds) of GitHub API requests.
+     */
     public int getConnectTimeout() {
         return connectTimeout;
     }
 
+    /**
+     * Read timeout (in milliseconds) of GitHub API requests.
+     */
     public int getReadTimeout() {
         return readTimeout;
     }
 
+    /**
+     * Maximum number of GitHub API requests that are performed concurrently when retrieving repository forks.
+     * Value of 1 means the forks are retrieved sequentially.
+     */
+    public int getGitHubFetchThreads() {
+        return gitHubFetchThreads;
+    }
+
+    /**
+     * Directory where GitHub API responses are cached for conditional requests. If null, responses are not cached.
+     */
+    public String getGitHubResponseCacheDir() {
+        return gitHubResponseCacheDir;
+    }
+
+    /**
+     * How long (in days) are cached GitHub API responses kept since they were last used. Older responses are
+     * evicted from the cache directory.
+     */
+    public int getGitHubResponseCacheMaxAge() {
+        return gitHubResponseCacheMaxAge;
+    }
+
+    /**
+     * How long (in minutes) can snapshot of GitHub team and organization memberships be reused. Zero disables the
+     * snapshot.
+     */
+    public int getMembershipSnapshotTtl() {
+        return membershipSnapshotTtl;
+    }
+
+    /**
+     * If true, the nightly LDAP scan only checks new members, members without an active LDAP account and a slice of
+     * the remaining members. Full scan is still performed once a week.
+     */
+    public boolean isLdapIncrementalScan() {
+        return ldapIncrementalScan;
+    }
+
+    /**
+     * Number of slices the known members are divided into for incremental LDAP scans, i.e. in how many incremental
+     * scans every member gets checked.
+     */
+    public int getLdapIncrementalScanSlices() {
+        return ldapIncrementalScanSlices;
+    }
+
+    /**
+     * Maximum number of LDAP connections kept open and shared by LDAP searches.
+     */
+    public int getLdapPoolSize() {
+        return ldapPoolSize;
+    }
+
+    /**
+     * How long (in seconds) can a pooled LDAP connection stay unused before it's closed. Idle connections are
+     * checked every five minutes, so a connection may stay open up to five minutes longer.
+     */
+    public int getLdapPoolIdleTimeout() {
+        return ldapPoolIdleTimeout;
+    }
+
+    /**
+     * Number of users checked by a single LDAP query.
+     */
+    public int getLdapGroupingFactor() {
+        return ldapGroupingFactor;
+    }
+
+    /**
+     * Maximum number of LDAP queries sent concurrently when checking existence of many users. Values above
+     * {@link #getLdapPoolSize()} don't help, since every query needs a pooled connection.
+     */
+    public int getLdapParallelQueries() {
+        return ldapParallelQueries;
+    }
+
+    /**
+     * Maximum number of UIDs whose LDAP lookup results are cached. Zero disables the cache.
+     */
+    public int getLdapCacheSize() {
+        return ldapCacheSize;
+    }
+
+    /**
+     * How long (in minutes) are existing LDAP users cached.
+     */
+    public int getLdapCachePositiveTtl() {
+        return ldapCachePositiveTtl;
+    }
+
+    /**
+     * How long (in minutes) are UIDs that don't exist in LDAP cached.
+     */
+    public int getLdapCacheNegativeTtl() {
+        return ldapCacheNegativeTtl;
+    }
+
+    /**
+     * Number of results retrieved in a single page when enumerating all LDAP users.
+     */
+    public int getLdapPageSize() {
+        return ldapPageSize;
+    }
+
+    /**
+     * How is existence of many LDAP users verified - either by queries combining several UIDs, or by downloading
+     * UIDs of all users and looking the users up in memory.
+     */
+    public LdapExistenceCheckStrategy getLdapExistenceCheckStrategy() {
+        return ldapExistenceCheckStrategy;
+    }
+
+    /**
+     * How long (in minutes) can a snapshot of all LDAP UIDs be reused, when the
+     * {@link org.jboss.set.mjolnir.archive.ldap.LdapExistenceCheckStrategy#SNAPSHOT} strategy is used.
+     */
+    public int getLdapSnapshotMaxAge() {
+        return ldapSnapshotMaxAge;
+    }
+
+    /**
+     * Minimal number of UIDs (including prior UIDs) in a newly downloaded snapshot of LDAP UIDs. Smaller snapshots
+     * are rejected as incomplete. Unlike the comparison with the previous snapshot, this also applies to the first
+     * snapshot after the application is started. Zero disables the check.
+     */
+    public int getLdapSnapshotMinSize() {
+        return ldapSnapshotMinSize;
+    }
+
+    /**
+     * Number of partitions of the membership removal job. Each partition processes its share of user removals in its
+     * own thread, so this is the number of user removals processed concurrently.
+     */
+    public int getRemovalThreads() {
+        return removalThreads;
+    }
+
+    /**
+     * Time budget (in minutes) of processing a single user removal. The budget is checked before each repository is
+     * archived and before each membership is removed, and once the removal is processed. A removal that exceeds it
+     * is marked as failed, and its remaining steps are skipped. Zero means no limit.
+     */
+    public int getRemovalTimeBudget() {
+        return removalTimeBudget;
+    }
+
+    /**
+     * Timeout (in seconds) of network operations of Git clones and fetches. An operation fails when no data is
+     * transferred for this long. Zero means no timeout.
+     */
+    public int getGitTimeout() {
+        return gitTimeout;
+    }
+
+    /**
+     * Number of threads removing old archived branches. Archives are partitioned by source repository, so that
+     * each archive repository is only modified by a single thread.
+     */
+    public int getRemoveArchivesThreads() {
+        return removeArchivesThreads;
+    }
+
+    /**
+     * If true, remotes of users whose archived branches were removed are also removed from the archive repository
+     * configuration.
+     */
+    public boolean isRemoveArchivesPruneRemotes() {
+        return removeArchivesPruneRemotes;
+    }
+
+    /**
+     * Determines what is fetched from user forks into archive repositories. With other strategy than FULL, new archive
+     * repositories are cloned with branches and tags only, instead of mirroring all upstream refs.
+     */
+    public FetchStrategy getFetchStrategy() {
+        return fetchStrategy;
+    }
+
+    /**
+     * Number of threads archiving repositories of removed users. The threads are shared by all removal partitions.
+     * Forks of the same source repository are never fetched at the same time, since they are fetched into the same
+     * archive repository.
+     */
+    public int getArchivingThreads() {
+        return archivingThreads;
+    }
+
+    /**
+     * If true, newly created archive repositories keep their objects in object stores shared by all archive
+     * repositories with common history (linked via Git alternates), rather than each having a full copy.
+     */
+    public boolean isSharedObjectStores() {
+        return sharedObjectStores;
+    }
+
+    /**
+     * Archive repositories with at least this number of pack files are garbage collected by the archive maintenance
+     * job.
+     */
+    public int getMaintenancePackThreshold() {
+        return maintenancePackThreshold;
+    }
+
+    /**
+     * Time budget (in minutes) of a single archive maintenance job run. Repositories that weren't processed within the
+     * budget are processed by the next run. Zero means no limit.
+     */
+    public int getMaintenanceTimeBudget() {
+        return maintenanceTimeBudget;
+    }
+
+    /**
+     * Interval (in minutes) of syncing archive repositories with their upstream repositories. Before a fork is
+     * fetched into an archive repository, the upstream is fetched if it wasn't synced within the interval. Zero means
+     * sync before every fork fetch, negative value disables syncing.
+     */
+    public int getUpstreamSyncInterval() {
+        return upstreamSyncInterval;
+    }
+
+    /**
+     * Directory where archived forks are exported as git bundles, before their branches are removed from archive
+     * repositories. Null means archives are not exported.
+     */
+    public String getArchiveExportDirectory() {
+        return archiveExportDirectory;
+    }
+
     public static class ConfigurationBuilder {
 
         private final Configuration configuration = new Configuration();
@@ -169,6 +436,151 @@ public class Configuration {
             return this;
         }
 
+        public ConfigurationBuilder setGitHubFetchThreads(int gitHubFetchThreads) {
+            this.configuration.gitHubFetchThreads = gitHubFetchThreads;
+            return this;
+        }
+
+        public ConfigurationBuilder setGitHubResponseCacheDir(String gitHubResponseCacheDir) {
+            this.configuration.gitHubResponseCacheDir = gitHubResponseCacheDir;
+            return this;
+        }
+
+        public ConfigurationBuilder setGitHubResponseCacheMaxAge(int gitHubResponseCacheMaxAge) {
+            this.configuration.gitHubResponseCacheMaxAge = gitHubResponseCacheMaxAge;
+            return this;
+        }
+
+        public ConfigurationBuilder setMembershipSnapshotTtl(int minutes) {
+            this.configuration.membershipSnapshotTtl = minutes;
+            return this;
+        }
+
+        public ConfigurationBuilder setLdapIncrementalScan(boolean ldapIncrementalScan) {
+            this.configuration.ldapIncrementalScan = ldapIncrementalScan;
+            return this;
+        }
+
+        public ConfigurationBuilder setLdapIncrementalScanSlices(int ldapIncrementalScanSlices) {
+            this.configuration.ldapIncrementalScanSlices = ldapIncrementalScanSlices;
+            return this;
+        }
+
+        public ConfigurationBuilder setLdapPoolSize(int ldapPoolSize) {
+            this.configuration.ldapPoolSize = ldapPoolSize;
+            return this;
+        }
+
+        public ConfigurationBuilder setLdapPoolIdleTimeout(int seconds) {
+            this.configuration.ldapPoolIdleTimeout = seconds;
+            return this;
+        }
+
+        public ConfigurationBuilder setLdapGroupingFactor(int ldapGroupingFactor) {
+            this.configuration.ldapGroupingFactor = ldapGroupingFactor;
+            return this;
+        }
+
+        public ConfigurationBuilder setLdapParallelQueries(int ldapParallelQueries) {
+            this.configuration.ldapParallelQueries = ldapParallelQueries;
+            return this;
+        }
+
+        public ConfigurationBuilder setLdapCacheSize(int ldapCacheSize) {
+            this.configuration.ldapCacheSize = ldapCacheSize;
+            return this;
+        }
+
+        public ConfigurationBuilder setLdapCachePositiveTtl(int minutes) {
+            this.configuration.ldapCachePositiveTtl = minutes;
+            return this;
+        }
+
+        public ConfigurationBuilder setLdapCacheNegativeTtl(int minutes) {
+            this.configuration.ldapCacheNegativeTtl = minutes;
+            return this;
+        }
+
+        public ConfigurationBuilder setLdapPageSize(int ldapPageSize) {
+            this.configuration.ldapPageSize = ldapPageSize;
+            return this;
+        }
+
+        public ConfigurationBuilder setLdapExistenceCheckStrategy(LdapExistenceCheckStrategy strategy) {
+            this.configuration.ldapExistenceCheckStrategy = strategy;
+            return this;
+        }
+
+        public ConfigurationBuilder setLdapSnapshotMaxAge(int minutes) {
+            this.configuration.ldapSnapshotMaxAge = minutes;
+            return this;
+        }
+
+        public ConfigurationBuilder setLdapSnapshotMinSize(int ldapSnapshotMinSize) {
+            this.configuration.ldapSnapshotMinSize = ldapSnapshotMinSize;
+            return this;
+        }
+
+        public ConfigurationBuilder setRemovalThreads(int removalThreads) {
+            this.configuration.removalThreads = removalThreads;
+            return this;
+        }
+
+        public ConfigurationBuilder setRemovalTimeBudget(int minutes) {
+            this.configuration.removalTimeBudget = minutes;
+            return this;
+        }
+
+        public ConfigurationBuilder setGitTimeout(int seconds) {
+            this.configuration.gitTimeout = seconds;
+            return this;
+        }
+
+        public ConfigurationBuilder setRemoveArchivesThreads(int removeArchivesThreads) {
+            this.configuration.removeArchivesThreads = removeArchivesThreads;
+            return this;
+        }
+
+        public ConfigurationBuilder setRemoveArchivesPruneRemotes(boolean removeArchivesPruneRemotes) {
+            this.configuration.removeArchivesPruneRemotes = removeArchivesPruneRemotes;
+            return this;
+        }
+
+        public ConfigurationBuilder setFetchStrategy(FetchStrategy fetchStrategy) {
+            this.configuration.fetchStrategy = fetchStrategy;
+            return this;
+        }
+
+        public ConfigurationBuilder setArchivingThreads(int archivingThreads) {
+            this.configuration.archivingThreads = archivingThreads;
+            return this;
+        }
+
+        public ConfigurationBuilder setSharedObjectStores(boolean sharedObjectStores) {
+            this.configuration.sharedObjectStores = sharedObjectStores;
+            return this;
+        }
+
+        public ConfigurationBuilder setMaintenancePackThreshold(int maintenancePackThreshold) {
+            this.configuration.maintenancePackThreshold = maintenancePackThreshold;
+            return this;
+        }
+
+        public ConfigurationBuilder setMaintenanceTimeBudget(int maintenanceTimeBudget) {
+            this.configuration.maintenanceTimeBudget = maintenanceTimeBudget;
+            return this;
+        }
+
+        public ConfigurationBuilder setUpstreamSyncInterval(int upstreamSyncInterval) {
+            this.configuration.upstreamSyncInterval = upstreamSyncInterval;
+            return this;
+        }
+
+        public ConfigurationBuilder setArchiveExportDirectory(String archiveExportDirectory) {
+            this.configuration.archiveExportDirectory = archiveExportDirectory;
+            return this;
+        }
+
         public Configuration build() {
             return configuration;
         }
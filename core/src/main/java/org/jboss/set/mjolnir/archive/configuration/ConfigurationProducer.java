@@ -1,17 +1,25 @@
 package org.jboss.set.mjolnir.archive.configuration;
 
+import org.apache.commons.lang3.StringUtils;
 import org.eclipse.egit.github.core.client.GitHubClient;
 import org.eclipse.egit.github.core.client.IGitHubConstants;
 import org.jboss.logging.Logger;
+import org.jboss.set.mjolnir.archive.FetchStrategy;
+import org.jboss.set.mjolnir.archive.github.ExtendedGitHubClient;
+import org.jboss.set.mjolnir.archive.github.GitHubRateLimiter;
+import org.jboss.set.mjolnir.archive.github.GitHubResponseCache;
+import org.jboss.set.mjolnir.archive.ldap.LdapExistenceCheckStrategy;
 
 import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.inject.Produces;
 import javax.sql.DataSource;
-import java.net.HttpURLConnection;
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.time.Duration;
 
 /**
  * Loads configuration from a database.
@@ -28,6 +36,37 @@ public class ConfigurationProducer {
     private final static String LDAP_SEARCH_CONTEXT = "ldap.search_context";
     private final static String REMOVE_ARCHIVES = "application.remove_archives";
     private final static String REMOVE_ARCHIVES_AFTER= "application.remove_archives_after";
+    private final static String GITHUB_CONNECT_TIMEOUT = "github.connect_timeout";
+    private final static String GITHUB_READ_TIMEOUT = "github.read_timeout";
+    private final static String GITHUB_FETCH_THREADS = "github.fetch_threads";
+    private final static String GITHUB_RESPONSE_CACHE_DIR = "github.response_cache_dir";
+    private final static String GITHUB_RESPONSE_CACHE_MAX_AGE = "github.response_cache_max_age";
+    private final static String GITHUB_MEMBERSHIP_SNAPSHOT_TTL = "github.membership_snapshot_ttl";
+    private final static String LDAP_INCREMENTAL_SCAN = "ldap.incremental_scan";
+    private final static String LDAP_INCREMENTAL_SCAN_SLICES = "ldap.incremental_scan_slices";
+    private final static String LDAP_POOL_SIZE = "ldap.pool_size";
+    private final static String LDAP_POOL_IDLE_TIMEOUT = "ldap.pool_idle_timeout";
+    private final static String LDAP_GROUPING_FACTOR = "ldap.grouping_factor";
+    private final static String LDAP_PARALLEL_QUERIES = "ldap.parallel_queries";
+    private final static String LDAP_CACHE_SIZE = "ldap.cache_size";
+    private final static String LDAP_CACHE_POSITIVE_TTL = "ldap.cache_positive_ttl";
+    private final static String LDAP_CACHE_NEGATIVE_TTL = "ldap.cache_negative_ttl";
+    private final static String LDAP_PAGE_SIZE = "ldap.page_size";
+    private final static String LDAP_EXISTENCE_CHECK_STRATEGY = "ldap.existence_check_strategy";
+    private final static String LDAP_SNAPSHOT_MAX_AGE = "ldap.snapshot_max_age";
+    private final static String LDAP_SNAPSHOT_MIN_SIZE = "ldap.snapshot_min_size";
+    private final static String REMOVAL_THREADS = "application.removal_threads";
+    private final static String REMOVAL_TIME_BUDGET = "application.removal_time_budget";
+    private final static String GIT_TIMEOUT = "application.git_timeout";
+    private final static String REMOVE_ARCHIVES_THREADS = "application.remove_archives_threads";
+    private final static String REMOVE_ARCHIVES_PRUNE_REMOTES = "application.remove_archives_prune_remotes";
+    private final static String FETCH_STRATEGY = "application.fetch_strategy";
+    private final static String ARCHIVING_THREADS = "application.archiving_threads";
+    private final static String SHARED_OBJECT_STORES = "application.shared_object_stores";
+    private final static String MAINTENANCE_PACK_THRESHOLD = "application.maintenance_pack_threshold";
+    private final static String MAINTENANCE_TIME_BUDGET = "application.maintenance_time_budget";
+    private final static String UPSTREAM_SYNC_INTERVAL = "application.upstream_sync_interval";
+    private final static String ARCHIVE_EXPORT_DIRECTORY = "application.archive_export_directory";
 
     private final Logger logger = Logger.getLogger(getClass());
 
@@ -75,6 +114,100 @@ public class ConfigurationProducer {
                     case REMOVE_ARCHIVES_AFTER:
                         configurationBuilder.setRemoveArchivesAfter(Integer.parseInt(value));
                         break;
+                    case GITHUB_CONNECT_TIMEOUT:
+                        configurationBuilder.setConnectTimeout(Integer.parseInt(value));
+                        break;
+                    case GITHUB_READ_TIMEOUT:
+                        configurationBuilder.setReadTimeout(Integer.parseInt(value));
+                        break;
+                    case GITHUB_FETCH_THREADS:
+                        configurationBuilder.setGitHubFetchThreads(Integer.parseInt(value));
+                        break;
+                    case GITHUB_RESPONSE_CACHE_DIR:
+                        configurationBuilder.setGitHubResponseCacheDir(value);
+                        break;
+                    case GITHUB_RESPONSE_CACHE_MAX_AGE:
+                        configurationBuilder.setGitHubResponseCacheMaxAge(Integer.parseInt(value));
+                        break;
+                    case GITHUB_MEMBERSHIP_SNAPSHOT_TTL:
+                        configurationBuilder.setMembershipSnapshotTtl(Integer.parseInt(value));
+                        break;
+                    case LDAP_INCREMENTAL_SCAN:
+                        configurationBuilder.setLdapIncrementalScan(Boolean.parseBoolean(value));
+                        break;
+                    case LDAP_INCREMENTAL_SCAN_SLICES:
+                        configurationBuilder.setLdapIncrementalScanSlices(Integer.parseInt(value));
+                        break;
+                    case LDAP_POOL_SIZE:
+                        configurationBuilder.setLdapPoolSize(Integer.parseInt(value));
+                        break;
+                    case LDAP_POOL_IDLE_TIMEOUT:
+                        configurationBuilder.setLdapPoolIdleTimeout(Integer.parseInt(value));
+                        break;
+                    case LDAP_GROUPING_FACTOR:
+                        configurationBuilder.setLdapGroupingFactor(Integer.parseInt(value));
+                        break;
+                    case LDAP_PARALLEL_QUERIES:
+                        configurationBuilder.setLdapParallelQueries(Integer.parseInt(value));
+                        break;
+                    case LDAP_CACHE_SIZE:
+                        configurationBuilder.setLdapCacheSize(Integer.parseInt(value));
+                        break;
+                    case LDAP_CACHE_POSITIVE_TTL:
+                        configurationBuilder.setLdapCachePositiveTtl(Integer.parseInt(value));
+                        break;
+                    case LDAP_CACHE_NEGATIVE_TTL:
+                        configurationBuilder.setLdapCacheNegativeTtl(Integer.parseInt(value));
+                        break;
+                    case LDAP_PAGE_SIZE:
+                        configurationBuilder.setLdapPageSize(Integer.parseInt(value));
+                        break;
+                    case LDAP_EXISTENCE_CHECK_STRATEGY:
+                        configurationBuilder.setLdapExistenceCheckStrategy(
+                                LdapExistenceCheckStrategy.valueOf(value.trim().toUpperCase()));
+                        break;
+                    case LDAP_SNAPSHOT_MAX_AGE:
+                        configurationBuilder.setLdapSnapshotMaxAge(Integer.parseInt(value));
+                        break;
+                    case LDAP_SNAPSHOT_MIN_SIZE:
+                        configurationBuilder.setLdapSnapshotMinSize(Integer.parseInt(value));
+                        break;
+                    case REMOVAL_THREADS:
+                        configurationBuilder.setRemovalThreads(Integer.parseInt(value));
+                        break;
+                    case REMOVAL_TIME_BUDGET:
+                        configurationBuilder.setRemovalTimeBudget(Integer.parseInt(value));
+                        break;
+                    case GIT_TIMEOUT:
+                        configurationBuilder.setGitTimeout(Integer.parseInt(value));
+                        break;
+                    case REMOVE_ARCHIVES_THREADS:
+                        configurationBuilder.setRemoveArchivesThreads(Integer.parseInt(value));
+                        break;
+                    case REMOVE_ARCHIVES_PRUNE_REMOTES:
+                        configurationBuilder.setRemoveArchivesPruneRemotes(Boolean.parseBoolean(value));
+                        break;
+                    case FETCH_STRATEGY:
+                        configurationBuilder.setFetchStrategy(FetchStrategy.valueOf(value.trim().toUpperCase()));
+                        break;
+                    case ARCHIVING_THREADS:
+                        configurationBuilder.setArchivingThreads(Integer.parseInt(value));
+                        break;
+                    case SHARED_OBJECT_STORES:
+                        configurationBuilder.setSharedObjectStores(Boolean.parseBoolean(value));
+                        break;
+                    case MAINTENANCE_PACK_THRESHOLD:
+                        configurationBuilder.setMaintenancePackThreshold(Integer.parseInt(value));
+                        break;
+                    case MAINTENANCE_TIME_BUDGET:
+                        configurationBuilder.setMaintenanceTimeBudget(Integer.parseInt(value));
+                        break;
+                    case UPSTREAM_SYNC_INTERVAL:
+                        configurationBuilder.setUpstreamSyncInterval(Integer.parseInt(value));
+                        break;
+                    case ARCHIVE_EXPORT_DIRECTORY:
+                        configurationBuilder.setArchiveExportDirectory(value);
+                        break;
                     default:
                         logger.infof("Skipping configuration parameter %s", name);
                 }
@@ -90,27 +223,35 @@ public class ConfigurationProducer {
      * Default GitHubClient producer method, used by application.
      */
     @Produces
-    public GitHubClient createGitHubClient(Configuration configuration) {
-        return createGitHubClient(configuration, IGitHubConstants.HOST_API, -1, IGitHubConstants.PROTOCOL_HTTPS);
+    public GitHubClient createGitHubClient(Configuration configuration, GitHubRateLimiter rateLimiter) {
+        return createGitHubClient(configuration, IGitHubConstants.HOST_API, -1, IGitHubConstants.PROTOCOL_HTTPS,
+                rateLimiter);
     }
 
     /**
      * More parameter-rich factory method, used in tests.
      */
     public GitHubClient createGitHubClient(Configuration configuration, String hostname, int port, String scheme) {
-        GitHubClient gitHubClient = new GitHubClient(hostname, port, scheme) {
-            @Override
-            protected HttpURLConnection configureRequest(HttpURLConnection request) {
-                HttpURLConnection conn = super.configureRequest(request);
+        return createGitHubClient(configuration, hostname, port, scheme, new GitHubRateLimiter());
+    }
 
-                // configure timeouts
-                conn.setConnectTimeout(configuration.getConnectTimeout());
-                conn.setReadTimeout(configuration.getReadTimeout());
+    public GitHubClient createGitHubClient(Configuration configuration, String hostname, int port, String scheme,
+                                           GitHubRateLimiter rateLimiter) {
+        ExtendedGitHubClient gitHubClient = new ExtendedGitHubClient(hostname, port, scheme,
+                configuration.getConnectTimeout(), configuration.getReadTimeout(), rateLimiter);
+        gitHubClient.setOAuth2Token(configuration.getGitHubToken());
 
-                return conn;
+        if (StringUtils.isNotBlank(configuration.getGitHubResponseCacheDir())) {
+            try {
+                gitHubClient.setResponseCache(
+                        new GitHubResponseCache(Paths.get(configuration.getGitHubResponseCacheDir()),
+                                Duration.ofDays(configuration.getGitHubResponseCacheMaxAge())));
+            } catch (IOException e) {
+                logger.errorf(e, "Couldn't initialize GitHub response cache in %s, conditional requests are disabled",
+                        configuration.getGitHubResponseCacheDir());
             }
-        };
-        gitHubClient.setOAuth2Token(configuration.getGitHubToken());
+        }
+
         return gitHubClient;
     }
 
@@ -0,0 +1,38 @@
+package org.jboss.set.mjolnir.archive.export;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Storage of exported archives.
+ * <p>
+ * Content is streamed directly into the store, so that exports don't need a temporary copy of the whole archive.
+ * An object only becomes visible in the store when it has been written completely.
+ */
+public interface ArchiveExportStore {
+
+    /**
+     * Writes content of an exported archive.
+     */
+    interface ContentWriter {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    /**
+     * Stores an object under given key.
+     *
+     * @param key relative name of the object, segments separated by '/'
+     * @param writer writes the content of the object
+     * @return location of the stored object
+     */
+    String store(String key, ContentWriter writer) throws IOException;
+
+    /**
+     * Reads back an object stored under given key, e.g. to verify it.
+     *
+     * @param key relative name of the object, segments separated by '/'
+     * @return content of the object, to be closed by the caller
+     */
+    InputStream read(String key) throws IOException;
+}
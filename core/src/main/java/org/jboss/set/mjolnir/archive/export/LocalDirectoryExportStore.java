@@ -0,0 +1,56 @@
+package org.jboss.set.mjolnir.archive.export;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Export store keeping exported archives in a local directory, e.g. a mounted cold storage volume.
+ * <p>
+ * Objects are written into a ".part" file next to the target, which is renamed once the content is complete.
+ */
+public class LocalDirectoryExportStore implements ArchiveExportStore {
+
+    private static final String PART_SUFFIX = ".part";
+
+    private final Path rootDirectory;
+
+    public LocalDirectoryExportStore(Path rootDirectory) {
+        this.rootDirectory = rootDirectory.toAbsolutePath().normalize();
+    }
+
+    @Override
+    public String store(String key, ContentWriter writer) throws IOException {
+        Path target = resolve(key);
+        Files.createDirectories(target.getParent());
+        Path part = target.resolveSibling(target.getFileName() + PART_SUFFIX);
+
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(part))) {
+            writer.writeTo(out);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(part);
+            throw e;
+        }
+        Files.move(part, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        return target.toUri().toString();
+    }
+
+    @Override
+    public InputStream read(String key) throws IOException {
+        return new BufferedInputStream(Files.newInputStream(resolve(key)));
+    }
+
+    private Path resolve(String key) {
+        Path target = rootDirectory.resolve(key).normalize();
+        if (!target.startsWith(rootDirectory) || target.equals(rootDirectory)) {
+            throw new IllegalArgumentException("Invalid export key: " + key);
+        }
+        return target;
+    }
+}
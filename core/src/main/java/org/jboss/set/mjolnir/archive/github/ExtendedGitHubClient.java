@@ -0,0 +1,257 @@
+package org.jboss.set.mjolnir.archive.github;
+
+import org.eclipse.egit.github.core.client.GitHubClient;
+import org.eclipse.egit.github.core.client.GitHubRequest;
+import org.eclipse.egit.github.core.client.GitHubResponse;
+import org.eclipse.egit.github.core.client.PagedRequest;
+import org.eclipse.egit.github.core.client.RequestException;
+import org.jboss.logging.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GitHubClient that configures connection timeouts and schedules requests according to the GitHub API rate limits.
+ * <p>
+ * Before each request, the client waits for a slot given by the {@link GitHubRateLimiter}. GET and DELETE requests
+ * that were refused because of exceeded rate limit are repeated once the limit resets.
+ * <p>
+ * If a {@link GitHubResponseCache} is set, paged GET requests are sent as conditional requests with the
+ * "If-None-Match" header, and "304 Not Modified" responses are served from the cache. Such responses don't count
+ * against the rate limit.
+ */
+public class ExtendedGitHubClient extends GitHubClient {
+
+    static final String HEADER_RATE_LIMIT_LIMIT = "X-RateLimit-Limit";
+    static final String HEADER_RATE_LIMIT_REMAINING = "X-RateLimit-Remaining";
+    static final String HEADER_RATE_LIMIT_RESET = "X-RateLimit-Reset";
+    static final String HEADER_RETRY_AFTER = "Retry-After";
+    static final String HEADER_ETAG = "ETag";
+    static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+    static final String HEADER_LINK = "Link";
+
+    private static final int MAX_RATE_LIMIT_RETRIES = 5;
+    private static final long SECONDARY_RATE_LIMIT_BACK_OFF = TimeUnit.MINUTES.toMillis(1);
+
+    private final Logger logger = Logger.getLogger(getClass());
+
+    private final int connectTimeout;
+    private final int readTimeout;
+    private final GitHubRateLimiter rateLimiter;
+
+    /**
+     * HTTP status of the last response received by current thread. Not all error statuses are translated to
+     * {@link RequestException} by the GitHubClient (e.g. 429 is not), so the status has to be tracked separately.
+     */
+    private final ThreadLocal<Integer> lastResponseCode = ThreadLocal.withInitial(() -> -1);
+
+    private GitHubResponseCache responseCache;
+
+    public ExtendedGitHubClient(String hostname, int port, String scheme, int connectTimeout, int readTimeout,
+                                GitHubRateLimiter rateLimiter) {
+        super(hostname, port, scheme);
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+        this.rateLimiter = rateLimiter;
+    }
+
+    public GitHubRateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    public GitHubResponseCache getResponseCache() {
+        return responseCache;
+    }
+
+    /**
+     * @param responseCache cache to use for conditional requests, or null to disable conditional requests
+     */
+    public void setResponseCache(GitHubResponseCache responseCache) {
+        this.responseCache = responseCache;
+    }
+
+    @Override
+    protected HttpURLConnection createConnection(String uri, String method) throws IOException {
+        rateLimiter.acquire();
+        lastResponseCode.set(-1);
+        return super.createConnection(uri, method);
+    }
+
+    @Override
+    protected HttpURLConnection configureRequest(HttpURLConnection request) {
+        HttpURLConnection conn = super.configureRequest(request);
+
+        // configure timeouts
+        conn.setConnectTimeout(connectTimeout);
+        conn.setReadTimeout(readTimeout);
+
+        return conn;
+    }
+
+    @Override
+    protected GitHubClient updateRateLimits(HttpURLConnection request) {
+        super.updateRateLimits(request);
+        try {
+            lastResponseCode.set(request.getResponseCode());
+        } catch (IOException e) {
+            lastResponseCode.set(-1);
+        }
+        rateLimiter.update(request.getHeaderField(HEADER_RATE_LIMIT_LIMIT),
+                request.getHeaderField(HEADER_RATE_LIMIT_REMAINING),
+                request.getHeaderField(HEADER_RATE_LIMIT_RESET),
+                request.getHeaderField(HEADER_RETRY_AFTER));
+        return this;
+    }
+
+    @Override
+    public GitHubResponse get(GitHubRequest request) throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                if (responseCache != null && request instanceof PagedRequest) {
+                    return getConditionally(request);
+                }
+                return super.get(request);
+            } catch (IOException e) {
+                handleRateLimitException(e, attempt);
+            }
+        }
+    }
+
+    @Override
+    public void delete(String uri, Object params) throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                super.delete(uri, params);
+                return;
+            } catch (IOException e) {
+                handleRateLimitException(e, attempt);
+            }
+        }
+    }
+
+    /**
+     * Variant of {@link GitHubClient#get(GitHubRequest)} that sends a conditional request if the response has been
+     * cached before.
+     */
+    private GitHubResponse getConditionally(GitHubRequest request) throws IOException {
+        String uri = request.generateUri();
+        GitHubResponseCache.Entry cached = responseCache.get(uri);
+
+        HttpURLConnection httpRequest = createGet(uri);
+        String accept = request.getResponseContentType();
+        if (accept != null) {
+            httpRequest.setRequestProperty("Accept", accept);
+        }
+        if (cached != null) {
+            httpRequest.setRequestProperty(HEADER_IF_NONE_MATCH, cached.getEtag());
+        }
+
+        final int code = httpRequest.getResponseCode();
+        updateRateLimits(httpRequest);
+
+        if (code == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null) {
+            logger.debugf("Serving cached GitHub response for %s", uri);
+            InputStream body = new ByteArrayInputStream(cached.getBody().getBytes(StandardCharsets.UTF_8));
+            return new GitHubResponse(new CachedResponseConnection(httpRequest.getURL(), cached),
+                    getBody(request, body));
+        }
+        if (isOk(code)) {
+            byte[] body = readFully(getStream(httpRequest));
+            String etag = httpRequest.getHeaderField(HEADER_ETAG);
+            if (etag != null) {
+                responseCache.put(uri, etag, httpRequest.getHeaderField(HEADER_LINK),
+                        new String(body, StandardCharsets.UTF_8));
+            }
+            return new GitHubResponse(httpRequest, getBody(request, new ByteArrayInputStream(body)));
+        }
+        if (isEmpty(code)) {
+            return new GitHubResponse(httpRequest, null);
+        }
+        throw createException(getStream(httpRequest), code, httpRequest.getResponseMessage());
+    }
+
+    private static byte[] readFully(InputStream stream) throws IOException {
+        try (InputStream is = stream) {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = is.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+            }
+            return output.toByteArray();
+        }
+    }
+
+    /**
+     * Rethrows given exception, unless it was caused by an exceeded rate limit and the request can be retried.
+     * The retried request is then delayed by the rate limiter.
+     */
+    private void handleRateLimitException(IOException e, int attempt) throws IOException {
+        int status = e instanceof RequestException ? ((RequestException) e).getStatus() : lastResponseCode.get();
+        if (attempt >= MAX_RATE_LIMIT_RETRIES || !isRateLimitException(e, status)) {
+            throw e;
+        }
+        if (!rateLimiter.isRateLimited()) {
+            // secondary rate limit without Retry-After header
+            rateLimiter.backOff(SECONDARY_RATE_LIMIT_BACK_OFF);
+        }
+        logger.warnf("GitHub API rate limit exceeded (HTTP %d), request will be retried (attempt #%d)",
+                status, attempt);
+    }
+
+    private boolean isRateLimitException(IOException e, int status) {
+        if (status == 429) {
+            return true;
+        }
+        if (status == HttpURLConnection.HTTP_FORBIDDEN) {
+            String message = e.getMessage();
+            return rateLimiter.isRateLimited()
+                    || (message != null && message.toLowerCase().contains("rate limit"));
+        }
+        return false;
+    }
+
+    /**
+     * Stand-in for a connection of a "304 Not Modified" response, which provides headers of the cached response
+     * (the "Link" header is needed to navigate through pages).
+     */
+    private static class CachedResponseConnection extends HttpURLConnection {
+
+        private final GitHubResponseCache.Entry entry;
+
+        CachedResponseConnection(URL url, GitHubResponseCache.Entry entry) {
+            super(url);
+            this.entry = entry;
+            this.responseCode = HTTP_OK;
+        }
+
+        @Override
+        public String getHeaderField(String name) {
+            if (HEADER_LINK.equalsIgnoreCase(name)) {
+                return entry.getLink();
+            } else if (HEADER_ETAG.equalsIgnoreCase(name)) {
+                return entry.getEtag();
+            }
+            return null;
+        }
+
+        @Override
+        public void connect() {
+        }
+
+        @Override
+        public void disconnect() {
+        }
+
+        @Override
+        public boolean usingProxy() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package org.jboss.set.mjolnir.archive.github;
+
+import org.jboss.logging.Logger;
+
+import javax.enterprise.context.ApplicationScoped;
+import java.io.InterruptedIOException;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps track of the GitHub API request budget and schedules requests so that the budget is not exhausted.
+ * <p>
+ * The budget is read from the "X-RateLimit-*" and "Retry-After" headers of every GitHub API response. While plenty
+ * of requests remain, requests are not delayed at all. When remaining requests drop below
+ * {@link #LOW_BUDGET_RATIO} of the limit, requests are paced so that the rest of the budget is spread evenly until
+ * the reset time. When the budget is exhausted, or GitHub asks the client to back off (secondary rate limit),
+ * requests are paused until the reset time instead of failing.
+ * <p>
+ * Single instance is meant to be shared by all clients using the same GitHub token.
+ */
+@ApplicationScoped
+public class GitHubRateLimiter {
+
+    static final double LOW_BUDGET_RATIO = 0.2;
+
+    /**
+     * Upper bound of a single pause, in case GitHub sends a nonsensical reset time. The primary rate limit window
+     * is one hour.
+     */
+    static final long MAX_WAIT_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    /**
+     * Pause used when the budget is exhausted, but the reset time is not known.
+     */
+    static final long DEFAULT_WAIT_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final Logger logger = Logger.getLogger(getClass());
+
+    private int limit = -1;
+    private int remaining = -1;
+    private long resetMillis = -1;
+    private long blockedUntilMillis = -1;
+    private long nextSlotMillis = -1;
+
+    private long requestCount = 0;
+    private long delayedRequestCount = 0;
+    private long totalWaitMillis = 0;
+
+    /**
+     * Blocks until the next request can be sent. Must be called before each request.
+     */
+    public void acquire() throws InterruptedIOException {
+        long waitMillis = reserveSlot();
+        if (waitMillis > 0) {
+            try {
+                sleep(waitMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for GitHub API rate limit");
+            }
+        }
+    }
+
+    /**
+     * Reserves a time slot for the next request and returns how long the caller has to wait for it. Waiting itself
+     * happens outside the lock, so that concurrent callers can reserve subsequent slots.
+     */
+    synchronized long reserveSlot() {
+        long now = currentTimeMillis();
+        long slot = now;
+        requestCount++;
+
+        if (resetMillis > 0 && resetMillis <= now && limit > 0) {
+            // rate limit window has passed, the budget has been restored
+            remaining = limit;
+            resetMillis = -1;
+            nextSlotMillis = -1;
+        }
+
+        if (blockedUntilMillis > now) {
+            // secondary rate limit - GitHub asked us to back off
+            slot = blockedUntilMillis;
+        } else if (remaining == 0) {
+            // budget exhausted - wait for the reset
+            if (resetMillis > now) {
+                slot = resetMillis;
+            } else {
+                // reset time is not known, wait for a while and then let the next response tell
+                slot = now + DEFAULT_WAIT_MILLIS;
+                remaining = -1;
+            }
+            blockedUntilMillis = slot;
+            logger.warnf("GitHub API rate limit exhausted, pausing requests until %s", new Date(slot));
+        } else if (remaining > 0 && limit > 0 && remaining < limit * LOW_BUDGET_RATIO && resetMillis > now) {
+            // budget is running low - spread remaining requests evenly until the reset
+            long interval = (resetMillis - now) / remaining;
+            slot = Math.max(now, nextSlotMillis);
+            nextSlotMillis = slot + interval;
+        }
+
+        if (remaining > 0) {
+            // optimistically consume the budget, it will be corrected by the response headers
+            remaining--;
+        }
+
+        long waitMillis = Math.min(slot - now, MAX_WAIT_MILLIS);
+        if (waitMillis > 0) {
+            delayedRequestCount++;
+            totalWaitMillis += waitMillis;
+        }
+        return waitMillis;
+    }
+
+    /**
+     * Updates the budget from values of the GitHub API response headers. Any of the values can be null if the
+     * header was not present.
+     *
+     * @param limitHeader      value of the "X-RateLimit-Limit" header
+     * @param remainingHeader  value of the "X-RateLimit-Remaining" header
+     * @param resetHeader      value of the "X-RateLimit-Reset" header (epoch seconds)
+     * @param retryAfterHeader value of the "Retry-After" header (seconds)
+     */
+    public synchronized void update(String limitHeader, String remainingHeader, String resetHeader,
+                                    String retryAfterHeader) {
+        Integer newLimit = parseInt(limitHeader);
+        if (newLimit != null) {
+            limit = newLimit;
+        }
+        Integer newRemaining = parseInt(remainingHeader);
+        if (newRemaining != null) {
+            remaining = newRemaining;
+        }
+        Long newReset = parseLong(resetHeader);
+        if (newReset != null) {
+            long newResetMillis = TimeUnit.SECONDS.toMillis(newReset);
+            if (newResetMillis != resetMillis) {
+                // new rate limit window, pacing starts over
+                nextSlotMillis = -1;
+            }
+            resetMillis = newResetMillis;
+        }
+        Long retryAfter = parseLong(retryAfterHeader);
+        if (retryAfter != null) {
+            blockedUntilMillis = currentTimeMillis() + TimeUnit.SECONDS.toMillis(retryAfter);
+            logger.warnf("GitHub API requested to retry after %d seconds", retryAfter);
+        }
+    }
+
+    /**
+     * Pauses all requests for given time. Used when GitHub reports a secondary rate limit without telling when
+     * to retry.
+     */
+    public synchronized void backOff(long millis) {
+        blockedUntilMillis = Math.max(blockedUntilMillis, currentTimeMillis() + millis);
+        logger.warnf("Backing off GitHub API requests for %d ms", millis);
+    }
+
+    /**
+     * @return true if the last response indicated that the client is currently not allowed to send requests
+     */
+    public synchronized boolean isRateLimited() {
+        return remaining == 0 || blockedUntilMillis > currentTimeMillis();
+    }
+
+    /**
+     * @return request limit per rate limit window, or -1 if not known yet
+     */
+    public synchronized int getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return number of remaining requests in current rate limit window, or -1 if not known yet
+     */
+    public synchronized int getRemaining() {
+        return remaining;
+    }
+
+    /**
+     * @return time when current rate limit window resets, or null if not known yet
+     */
+    public synchronized Date getResetTime() {
+        return resetMillis > 0 ? new Date(resetMillis) : null;
+    }
+
+    /**
+     * @return total number of requests scheduled by this limiter
+     */
+    public synchronized long getRequestCount() {
+        return requestCount;
+    }
+
+    /**
+     * @return number of requests that had to be delayed
+     */
+    public synchronized long getDelayedRequestCount() {
+        return delayedRequestCount;
+    }
+
+    /**
+     * @return total time that requests were delayed, in milliseconds
+     */
+    public synchronized long getTotalWaitMillis() {
+        return totalWaitMillis;
+    }
+
+    long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    void sleep(long millis) throws InterruptedException {
+        Thread.sleep(millis);
+    }
+
+    private static Integer parseInt(String value) {
+        Long longValue = parseLong(value);
+        return longValue != null ? longValue.intValue() : null;
+    }
+
+    private static Long parseLong(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
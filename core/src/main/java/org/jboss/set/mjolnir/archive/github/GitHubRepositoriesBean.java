@@ -5,9 +5,12 @@ import org.eclipse.egit.github.core.client.GitHubClient;
 import org.eclipse.egit.github.core.client.IGitHubConstants;
 import org.eclipse.egit.github.core.service.RepositoryService;
 import org.jboss.logging.Logger;
+import org.jboss.set.mjolnir.archive.configuration.Configuration;
+import org.jboss.set.mjolnir.archive.util.ParallelTasks;
 
 import javax.inject.Inject;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.InetAddress;
 import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
@@ -25,20 +28,42 @@ public class GitHubRepositoriesBean {
     private static final Logger LOG = Logger.getLogger(GitHubRepositoriesBean.class);
 
     private final RepositoryService repositoryService;
+    private final ParallelTasks parallelTasks;
 
-    @Inject
+    /**
+     * Creates a bean that retrieves repository forks sequentially.
+     */
     public GitHubRepositoriesBean(GitHubClient client) {
-        repositoryService = new RepositoryService(client);
+        this(client, new ParallelTasks(new Configuration.ConfigurationBuilder().build()));
+    }
+
+    @Inject
+    public GitHubRepositoriesBean(GitHubClient client, ParallelTasks parallelTasks) {
+        this.repositoryService = new RepositoryService(client);
+        this.parallelTasks = parallelTasks;
     }
 
     /**
      * Find forks of private repositories in given organization that belongs to given user.
+     * <p>
+     * When looking up repositories of several users, prefer building the index once via
+     * {@link #createForksIndex(String)} and querying it for each user.
      *
      * @param organisation github organization
      * @param githubUser   github username
      * @return set of private repositories
      */
     public Set<Repository> getRepositoriesToArchive(String organisation, String githubUser) throws IOException {
+        return new HashSet<>(createForksIndex(organisation).getUserForks(githubUser));
+    }
+
+    /**
+     * Retrieves forks of all private repositories in given organization and indexes them by their owners.
+     *
+     * @param organisation github organization
+     * @return index of repository forks
+     */
+    public RepositoryForksIndex createForksIndex(String organisation) throws IOException {
         SocketTimeoutException timeoutException = null;
 
         for (int attempt = 0; attempt < 3; attempt++) {
@@ -49,16 +74,19 @@ public class GitHubRepositoriesBean {
                         .filter(Repository::isPrivate)
                         .collect(Collectors.toList());
 
-                Set<Repository> userRepositories = new HashSet<>();
-                for (Repository sourceRepository : privateRepositories) {
-                    List<Repository> forks = getForksWithRetry(sourceRepository);
-                    forks.stream()
-                            .filter(fork -> githubUser.equalsIgnoreCase(fork.getOwner().getLogin()))
+                List<List<Repository>> forksOfRepositories = getForksOfRepositories(privateRepositories);
+
+                RepositoryForksIndex index = new RepositoryForksIndex(organisation);
+                for (int i = 0; i < privateRepositories.size(); i++) {
+                    Repository sourceRepository = privateRepositories.get(i);
+                    forksOfRepositories.get(i).stream()
                             .peek(repository -> repository.setSource(sourceRepository)) // set organization's repository as the source repository
-                            .forEach(userRepositories::add);
+                            .forEach(index::addFork);
                 }
 
-                return userRepositories;
+                LOG.infof("Indexed forks of %d private repositories in organization %s, found %d fork owners.",
+                        privateRepositories.size(), organisation, index.size());
+                return index;
             } catch (SocketTimeoutException e) {
                 timeoutException = e;
                 // try to report GitHub API IP address, to make it possible to rule out egress firewall issue
@@ -74,6 +102,23 @@ public class GitHubRepositoriesBean {
         throw timeoutException;
     }
 
+    /**
+     * Retrieves forks of given repositories. Up to {@link Configuration#getGitHubFetchThreads()} repositories are
+     * processed concurrently, the limit is shared by all callers. Each request is retried separately.
+     *
+     * @param sourceRepositories repositories to retrieve forks for
+     * @return list of forks for each source repository, in the same order as the source repositories
+     */
+    private List<List<Repository>> getForksOfRepositories(List<Repository> sourceRepositories) throws IOException {
+        try {
+            return parallelTasks.map(ParallelTasks.Pool.GITHUB_FORKS, sourceRepositories, IOException.class,
+                    this::getForksWithRetry);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while retrieving repository forks");
+        }
+    }
+
     private List<Repository> getOrgsRepositoriesWithRetry(String org) throws IOException {
         return withRetry(() -> {
             return repositoryService.getOrgRepositories(org);
@@ -0,0 +1,199 @@
+package org.jboss.set.mjolnir.archive.github;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import org.jboss.logging.Logger;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Persistent cache of GitHub API responses, used to perform conditional requests.
+ * <p>
+ * Each entry holds the response body together with its ETag, and is stored in a separate file in the cache
+ * directory, so the cache survives application restarts. Files are named by a hash of the request URI (including
+ * the page parameters).
+ * <p>
+ * Entries that haven't been used for longer than the maximum age are evicted. Eviction runs when the cache is
+ * opened and then at most once per {@link #EVICTION_INTERVAL} when responses are stored, so the directory doesn't
+ * grow with URIs that are no longer requested (e.g. removed repositories or pages that no longer exist).
+ */
+public class GitHubResponseCache {
+
+    private final Logger logger = Logger.getLogger(getClass());
+
+    static final Duration EVICTION_INTERVAL = Duration.ofHours(1);
+
+    private final Gson gson = new Gson();
+    private final Path directory;
+    private final Duration maxAge;
+    private final AtomicLong lastEviction = new AtomicLong();
+
+    public GitHubResponseCache(Path directory, Duration maxAge) throws IOException {
+        this.directory = directory;
+        this.maxAge = maxAge;
+        Files.createDirectories(directory);
+        evictExpired();
+    }
+
+    /**
+     * @param uri request URI
+     * @return cached response, or null if there is no response cached for given URI
+     */
+    public Entry get(String uri) {
+        Path file = resolveFile(uri);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            Entry entry = gson.fromJson(reader, Entry.class);
+            if (entry == null || !uri.equals(entry.uri) || entry.etag == null || entry.body == null) {
+                return null;
+            }
+            touch(file);
+            return entry;
+        } catch (IOException | JsonParseException e) {
+            logger.warnf(e, "Couldn't read cached GitHub response for %s", uri);
+            return null;
+        }
+    }
+
+    /**
+     * Stores a response. The file is written atomically, so that concurrent readers never see partial content.
+     */
+    public void put(String uri, String etag, String link, String body) {
+        Entry entry = new Entry();
+        entry.uri = uri;
+        entry.etag = etag;
+        entry.link = link;
+        entry.body = body;
+
+        Path file = resolveFile(uri);
+        Path tempFile = null;
+        try {
+            tempFile = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+            try (Writer writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+                gson.toJson(entry, writer);
+            }
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            tempFile = null;
+        } catch (IOException e) {
+            logger.warnf(e, "Couldn't store GitHub response for %s", uri);
+            if (tempFile != null) {
+                try {
+                    Files.deleteIfExists(tempFile);
+                } catch (IOException e2) {
+                    logger.debugf(e2, "Couldn't delete temporary file %s", tempFile);
+                }
+            }
+        }
+
+        long now = System.currentTimeMillis();
+        long last = lastEviction.get();
+        if (now - last >= EVICTION_INTERVAL.toMillis() && lastEviction.compareAndSet(last, now)) {
+            evictExpired();
+        }
+    }
+
+    /**
+     * Deletes entries that haven't been used for longer than the maximum age. Leftover temporary files are deleted
+     * as well.
+     *
+     * @return number of deleted files
+     */
+    public int evictExpired() {
+        lastEviction.set(System.currentTimeMillis());
+        long threshold = System.currentTimeMillis() - maxAge.toMillis();
+        int deleted = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                try {
+                    if (Files.isRegularFile(file) && Files.getLastModifiedTime(file).toMillis() < threshold) {
+                        Files.deleteIfExists(file);
+                        deleted++;
+                    }
+                } catch (IOException e) {
+                    logger.debugf(e, "Couldn't evict cached GitHub response %s", file);
+                }
+            }
+        } catch (IOException e) {
+            logger.warnf(e, "Couldn't evict expired GitHub responses from %s", directory);
+        }
+        if (deleted > 0) {
+            logger.infof("Evicted %d expired GitHub responses from %s", deleted, directory);
+        }
+        return deleted;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Marks the entry as recently used, so that responses that are still being requested (and mostly answered by
+     * "304 Not Modified") are not evicted.
+     */
+    private void touch(Path file) {
+        try {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            logger.debugf(e, "Couldn't update modification time of %s", file);
+        }
+    }
+
+    private Path resolveFile(String uri) {
+        return directory.resolve(sha256(uri) + ".json");
+    }
+
+    private static String sha256(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(value.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static class Entry {
+
+        private String uri;
+        private String etag;
+        private String link;
+        private String body;
+
+        public String getUri() {
+            return uri;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        /**
+         * @return value of the "Link" header, which contains links to other pages of paged responses
+         */
+        public String getLink() {
+            return link;
+        }
+
+        public String getBody() {
+            return body;
+        }
+    }
+}
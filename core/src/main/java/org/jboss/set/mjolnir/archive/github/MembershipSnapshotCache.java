@@ -0,0 +1,98 @@
+package org.jboss.set.mjolnir.archive.github;
+
+import org.jboss.logging.Logger;
+import org.jboss.set.mjolnir.archive.configuration.Configuration;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time-bounded snapshot of GitHub team and organization memberships.
+ * <p>
+ * Retrieving member lists of all monitored teams and organizations is expensive, and a single report run or LDAP
+ * scan needs them several times. The snapshot stores member logins of each team and organization (keyed by their
+ * database IDs), so that they are only retrieved once. The whole snapshot expires after
+ * {@link Configuration#getMembershipSnapshotTtl()} minutes, counted since the first entry was stored, and can be
+ * invalidated explicitly.
+ */
+@ApplicationScoped
+public class MembershipSnapshotCache {
+
+    private final Logger logger = Logger.getLogger(getClass());
+
+    private final Map<Long, List<String>> teamMembers = new HashMap<>();
+    private final Map<Long, List<String>> organizationMembers = new HashMap<>();
+    private long snapshotCreated = -1;
+
+    @Inject
+    private Configuration configuration;
+
+    /**
+     * @param teamId team database ID
+     * @return logins of team members, or null if they are not present in the snapshot
+     */
+    public synchronized List<String> getTeamMembers(Long teamId) {
+        expireSnapshot();
+        List<String> members = teamMembers.get(teamId);
+        return members != null ? new ArrayList<>(members) : null;
+    }
+
+    public synchronized void putTeamMembers(Long teamId, List<String> members) {
+        if (isEnabled()) {
+            startSnapshot();
+            teamMembers.put(teamId, new ArrayList<>(members));
+        }
+    }
+
+    /**
+     * @param organizationId organization database ID
+     * @return logins of organization members, or null if they are not present in the snapshot
+     */
+    public synchronized List<String> getOrganizationMembers(Long organizationId) {
+        expireSnapshot();
+        List<String> members = organizationMembers.get(organizationId);
+        return members != null ? new ArrayList<>(members) : null;
+    }
+
+    public synchronized void putOrganizationMembers(Long organizationId, List<String> members) {
+        if (isEnabled()) {
+            startSnapshot();
+            organizationMembers.put(organizationId, new ArrayList<>(members));
+        }
+    }
+
+    /**
+     * Discards the snapshot, so that memberships are retrieved from GitHub again.
+     */
+    public synchronized void invalidate() {
+        teamMembers.clear();
+        organizationMembers.clear();
+        snapshotCreated = -1;
+    }
+
+    private long getTtlMillis() {
+        return TimeUnit.MINUTES.toMillis(configuration.getMembershipSnapshotTtl());
+    }
+
+    private boolean isEnabled() {
+        return getTtlMillis() > 0;
+    }
+
+    private void startSnapshot() {
+        if (snapshotCreated < 0) {
+            snapshotCreated = System.currentTimeMillis();
+        }
+    }
+
+    private void expireSnapshot() {
+        if (snapshotCreated >= 0 && System.currentTimeMillis() - snapshotCreated > getTtlMillis()) {
+            logger.infof("Membership snapshot expired");
+            invalidate();
+        }
+    }
+}
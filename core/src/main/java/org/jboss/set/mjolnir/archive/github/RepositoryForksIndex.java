@@ -0,0 +1,56 @@
+package org.jboss.set.mjolnir.archive.github;
+
+import org.eclipse.egit.github.core.Repository;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * In-memory index of forks of private repositories in a GitHub organization, keyed by fork owner login.
+ * <p>
+ * The index is built once by {@link GitHubRepositoriesBean#createForksIndex(String)} and can then be queried for any
+ * number of users without further GitHub API calls.
+ */
+public class RepositoryForksIndex {
+
+    private final String organization;
+    private final Map<String, Set<Repository>> forksByOwner = new HashMap<>();
+
+    RepositoryForksIndex(String organization) {
+        this.organization = organization;
+    }
+
+    void addFork(Repository fork) {
+        String ownerLogin = fork.getOwner().getLogin().toLowerCase(Locale.ROOT);
+        forksByOwner.computeIfAbsent(ownerLogin, login -> new HashSet<>()).add(fork);
+    }
+
+    public String getOrganization() {
+        return organization;
+    }
+
+    /**
+     * Returns forks owned by given user. The source repository of each fork is set to the organization's repository.
+     *
+     * @param githubUser GitHub username, matched case-insensitively
+     * @return set of repository forks
+     */
+    public Set<Repository> getUserForks(String githubUser) {
+        Set<Repository> forks = forksByOwner.get(githubUser.toLowerCase(Locale.ROOT));
+        if (forks == null) {
+            return Collections.emptySet();
+        }
+        return Collections.unmodifiableSet(forks);
+    }
+
+    /**
+     * @return number of fork owners present in the index
+     */
+    public int size() {
+        return forksByOwner.size();
+    }
+}
@@ -0,0 +1,49 @@
+package org.jboss.set.mjolnir.archive.github;
+
+import org.jboss.logging.Logger;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Indexes of organization repository forks, shared by all removals processed by a run of the membership removal
+ * job, including removals processed by other partitions.
+ * <p>
+ * Building an index retrieves forks of all organization repositories, so it's only built once per organization,
+ * concurrent callers wait for it. The indexes are kept until {@link #invalidate() invalidated}.
+ */
+@ApplicationScoped
+public class RepositoryForksIndexCache {
+
+    private final Logger logger = Logger.getLogger(getClass());
+
+    private final Map<String, RepositoryForksIndex> indexes = new HashMap<>();
+
+    @Inject
+    private GitHubRepositoriesBean repositoriesBean;
+
+    /**
+     * Returns forks index of given organization, retrieving it from GitHub if it isn't cached.
+     */
+    public synchronized RepositoryForksIndex getForksIndex(String organization) throws IOException {
+        RepositoryForksIndex index = indexes.get(organization);
+        if (index == null) {
+            index = repositoriesBean.createForksIndex(organization);
+            indexes.put(organization, index);
+        }
+        return index;
+    }
+
+    /**
+     * Discards the indexes, so that forks are retrieved from GitHub again.
+     */
+    public synchronized void invalidate() {
+        if (!indexes.isEmpty()) {
+            logger.infof("Discarding forks indexes of %d organizations", indexes.size());
+        }
+        indexes.clear();
+    }
+}
@@ -1,23 +1,47 @@
 package org.jboss.set.mjolnir.archive.ldap;
 
+import javax.naming.CommunicationException;
 import javax.naming.Context;
 import javax.naming.NamingEnumeration;
 import javax.naming.NamingException;
-import javax.naming.directory.InitialDirContext;
+import javax.naming.ServiceUnavailableException;
+import javax.naming.directory.DirContext;
 import javax.naming.directory.SearchControls;
 import javax.naming.directory.SearchResult;
+import javax.naming.ldap.Control;
+import javax.naming.ldap.InitialLdapContext;
+import javax.naming.ldap.LdapContext;
+import javax.naming.ldap.PagedResultsControl;
+import javax.naming.ldap.PagedResultsResponseControl;
+import java.io.IOException;
 import java.util.Hashtable;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Simple client performing LDAP searches.
+ * <p>
+ * Directory contexts are taken from a {@link LdapContextPool}, so that searches don't have to open a new connection
+ * each time.
  */
 public class LdapClient {
 
+    private static final int DEFAULT_POOL_SIZE = 4;
+    private static final long DEFAULT_IDLE_TIMEOUT = TimeUnit.MINUTES.toMillis(5);
+
     private final SearchControls searchControls;
-    private final String ldapUrl;
+    private final LdapContextPool contextPool;
 
     public LdapClient(String ldapUrl) {
-        this.ldapUrl = ldapUrl;
+        this(ldapUrl, DEFAULT_POOL_SIZE, DEFAULT_IDLE_TIMEOUT);
+    }
+
+    public LdapClient(String ldapUrl, int poolSize, long idleTimeoutMillis) {
+        this(new LdapContextPool(() -> createContext(ldapUrl), poolSize, idleTimeoutMillis));
+    }
+
+    LdapClient(LdapContextPool contextPool) {
+        this.contextPool = contextPool;
 
         // prepare SearchControls instance
         searchControls = new SearchControls();
@@ -25,19 +49,280 @@ public class LdapClient {
         searchControls.setReturningAttributes(new String[] {"uid", "rhatPriorUid", "employeeNumber"});
     }
 
+    /**
+     * Performs a search. The returned enumeration holds a pooled context until it's exhausted or closed, so callers
+     * must always close it.
+     */
     public NamingEnumeration<SearchResult> search(String contextName, String filter) throws NamingException {
-        // prepare naming context
+        DirContext ctx = contextPool.borrow();
+        try {
+            return new PooledSearchResults(ctx, ctx.search(contextName, filter, searchControls));
+        } catch (NamingException | RuntimeException e) {
+            releaseContext(ctx, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Performs a search, retrieving results in pages of given size using the paged results control (RFC 2696). The
+     * next page is only requested once the caller consumed the previous one, so arbitrarily large result sets can be
+     * processed at constant memory, without hitting server size limits.
+     * <p>
+     * The returned enumeration holds a pooled context until it's exhausted or closed, so callers must always close it.
+     */
+    public NamingEnumeration<SearchResult> searchPaged(String contextName, String filter, int pageSize)
+            throws NamingException {
+        DirContext ctx = contextPool.borrow();
+        try {
+            if (!(ctx instanceof LdapContext)) {
+                throw new NamingException("Paged search is not supported by " + ctx.getClass().getName());
+            }
+            PagedSearchResults results = new PagedSearchResults((LdapContext) ctx, contextName, filter, pageSize);
+            results.requestPage(null);
+            return results;
+        } catch (NamingException | RuntimeException e) {
+            resetRequestControls(ctx);
+            releaseContext(ctx, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Closes pooled contexts that haven't been used for longer than the idle timeout.
+     */
+    public void evictIdleContexts() {
+        contextPool.evictIdleContexts();
+    }
+
+    /**
+     * Closes pooled contexts.
+     */
+    public void close() {
+        contextPool.close();
+    }
+
+    LdapContextPool getContextPool() {
+        return contextPool;
+    }
+
+    private void releaseContext(DirContext ctx, Exception failure) {
+        if (failure instanceof CommunicationException || failure instanceof ServiceUnavailableException) {
+            contextPool.invalidate(ctx);
+        } else {
+            contextPool.release(ctx);
+        }
+    }
+
+    /**
+     * Removes request controls set by a paged search, so that the context can be reused for plain searches.
+     */
+    private static void resetRequestControls(DirContext ctx) {
+        if (ctx instanceof LdapContext) {
+            try {
+                ((LdapContext) ctx).setRequestControls(null);
+            } catch (NamingException e) {
+                // the context is likely broken, it's going to be discarded when the failure is handled
+            }
+        }
+    }
+
+    private static DirContext createContext(String ldapUrl) throws NamingException {
         final Hashtable<String, Object> env = new Hashtable<>();
         env.put(Context.SECURITY_AUTHENTICATION, "simple");
         env.put(Context.INITIAL_CONTEXT_FACTORY, "com.sun.jndi.ldap.LdapCtxFactory");
         env.put(Context.PROVIDER_URL, ldapUrl);
-        env.put("com.sun.jndi.ldap.connect.pool", "true"); // enable connection pooling, prevents "Connection closed" problems
+        return new InitialLdapContext(env, null);
+    }
 
-        InitialDirContext ctx = new InitialDirContext(env);
-        try {
-            return ctx.search(contextName, filter, searchControls);
-        } finally {
-            ctx.close();
+    /**
+     * Search results, which return the context to the pool once they are exhausted or closed.
+     */
+    private class PooledSearchResults implements NamingEnumeration<SearchResult> {
+
+        private final DirContext ctx;
+        private final NamingEnumeration<SearchResult> delegate;
+        private boolean released = false;
+
+        PooledSearchResults(DirContext ctx, NamingEnumeration<SearchResult> delegate) {
+            this.ctx = ctx;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public SearchResult next() throws NamingException {
+            try {
+                return delegate.next();
+            } catch (NamingException | RuntimeException e) {
+                release(e);
+                throw e;
+            }
+        }
+
+        @Override
+        public boolean hasMore() throws NamingException {
+            try {
+                boolean hasMore = !released && delegate.hasMore();
+                if (!hasMore) {
+                    release(null);
+                }
+                return hasMore;
+            } catch (NamingException | RuntimeException e) {
+                release(e);
+                throw e;
+            }
+        }
+
+        @Override
+        public void close() throws NamingException {
+            try {
+                if (!released) {
+                    delegate.close();
+                }
+            } finally {
+                release(null);
+            }
+        }
+
+        @Override
+        public boolean hasMoreElements() {
+            try {
+                return hasMore();
+            } catch (NamingException e) {
+                return false;
+            }
+        }
+
+        @Override
+        public SearchResult nextElement() {
+            try {
+                return next();
+            } catch (NamingException e) {
+                NoSuchElementException nse = new NoSuchElementException(e.getMessage());
+                nse.initCause(e);
+                throw nse;
+            }
+        }
+
+        private void release(Exception failure) {
+            if (!released) {
+                released = true;
+                releaseContext(ctx, failure);
+            }
+        }
+    }
+
+    /**
+     * Paged search results, requesting the next page when the current one is exhausted. The context is returned to
+     * the pool once the last page is exhausted or the results are closed.
+     */
+    private class PagedSearchResults implements NamingEnumeration<SearchResult> {
+
+        private final LdapContext ctx;
+        private final String contextName;
+        private final String filter;
+        private final int pageSize;
+        private NamingEnumeration<SearchResult> page;
+        private boolean released = false;
+
+        PagedSearchResults(LdapContext ctx, String contextName, String filter, int pageSize) {
+            this.ctx = ctx;
+            this.contextName = contextName;
+            this.filter = filter;
+            this.pageSize = pageSize;
+        }
+
+        void requestPage(byte[] cookie) throws NamingException {
+            try {
+                ctx.setRequestControls(new Control[]{new PagedResultsControl(pageSize, cookie, Control.CRITICAL)});
+            } catch (IOException e) {
+                NamingException ne = new NamingException("Couldn't encode paged results control");
+                ne.setRootCause(e);
+                throw ne;
+            }
+            page = ctx.search(contextName, filter, searchControls);
+        }
+
+        @Override
+        public SearchResult next() throws NamingException {
+            if (!hasMore()) {
+                throw new NoSuchElementException();
+            }
+            try {
+                return page.next();
+            } catch (NamingException | RuntimeException e) {
+                release(e);
+                throw e;
+            }
+        }
+
+        @Override
+        public boolean hasMore() throws NamingException {
+            try {
+                while (!released && !page.hasMore()) {
+                    byte[] cookie = getResponseCookie();
+                    if (cookie == null || cookie.length == 0) {
+                        // last page
+                        release(null);
+                    } else {
+                        requestPage(cookie);
+                    }
+                }
+                return !released;
+            } catch (NamingException | RuntimeException e) {
+                release(e);
+                throw e;
+            }
+        }
+
+        @Override
+        public void close() throws NamingException {
+            try {
+                if (!released) {
+                    page.close();
+                }
+            } finally {
+                release(null);
+            }
+        }
+
+        @Override
+        public boolean hasMoreElements() {
+            try {
+                return hasMore();
+            } catch (NamingException e) {
+                return false;
+            }
+        }
+
+        @Override
+        public SearchResult nextElement() {
+            try {
+                return next();
+            } catch (NamingException e) {
+                NoSuchElementException nse = new NoSuchElementException(e.getMessage());
+                nse.initCause(e);
+                throw nse;
+            }
+        }
+
+        private byte[] getResponseCookie() throws NamingException {
+            Control[] controls = ctx.getResponseControls();
+            if (controls != null) {
+                for (Control control : controls) {
+                    if (control instanceof PagedResultsResponseControl) {
+                        return ((PagedResultsResponseControl) control).getCookie();
+                    }
+                }
+            }
+            return null;
+        }
+
+        private void release(Exception failure) {
+            if (!released) {
+                released = true;
+                resetRequestControls(ctx);
+                releaseContext(ctx, failure);
+            }
         }
     }
 }
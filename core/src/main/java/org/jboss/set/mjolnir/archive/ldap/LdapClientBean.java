@@ -1,8 +1,12 @@
 package org.jboss.set.mjolnir.archive.ldap;
 
+import org.jboss.logging.Logger;
 import org.jboss.set.mjolnir.archive.configuration.Configuration;
+import org.jboss.set.mjolnir.archive.util.ParallelTasks;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 import javax.naming.NamingEnumeration;
 import javax.naming.NamingException;
@@ -12,50 +16,94 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 /**
  * Provides querying of LDAP directory server.
+ * <p>
+ * The bean is application scoped, so that all callers share the same pool of LDAP connections.
  */
+@ApplicationScoped
 public class LdapClientBean {
 
-    private static final int GROUPING_FACTOR = 50; // query for that many users at a time
+    /**
+     * Minimal size of a new UID snapshot, relative to the size of the previous snapshot, and to the number of UIDs
+     * being checked.
+     */
+    private static final double MIN_SNAPSHOT_SIZE_RATIO = 0.5;
+
+    private final Logger logger = Logger.getLogger(getClass());
 
     @Inject
     private Configuration configuration;
 
+    @Inject
+    private ParallelTasks parallelTasks;
+
     private LdapClient ldapClient;
+    private LdapResultCache resultCache;
+    private LdapUidSnapshot uidSnapshot;
+    private int lastSnapshotSize;
 
     @SuppressWarnings("unused")
     public LdapClientBean() {
     }
 
-    LdapClientBean(Configuration configuration, LdapClient ldapClient) {
+    LdapClientBean(Configuration configuration, LdapClient ldapClient, ParallelTasks parallelTasks) {
         this.configuration = configuration;
         this.ldapClient = ldapClient;
+        this.parallelTasks = parallelTasks;
+        this.resultCache = createResultCache(configuration);
     }
 
     @PostConstruct
     public void init() {
         // fetch ldap url
         final String ldapUrl = configuration.getLdapUrl();
-        ldapClient = new LdapClient(ldapUrl);
+        ldapClient = new LdapClient(ldapUrl, configuration.getLdapPoolSize(),
+                TimeUnit.SECONDS.toMillis(configuration.getLdapPoolIdleTimeout()));
+        resultCache = createResultCache(configuration);
+    }
+
+    private static LdapResultCache createResultCache(Configuration configuration) {
+        return new LdapResultCache(configuration.getLdapCacheSize(),
+                TimeUnit.MINUTES.toMillis(configuration.getLdapCachePositiveTtl()),
+                TimeUnit.MINUTES.toMillis(configuration.getLdapCacheNegativeTtl()));
+    }
+
+    /**
+     * @return cache of lookup results, shared by all callers
+     */
+    public LdapResultCache getResultCache() {
+        return resultCache;
+    }
+
+    /**
+     * Closes pooled LDAP connections that haven't been used for longer than
+     * {@link Configuration#getLdapPoolIdleTimeout()}. Idle connections are otherwise only evicted when another
+     * connection is returned to the pool, so this is called periodically to close them between scans.
+     */
+    public void evictIdleContexts() {
+        ldapClient.evictIdleContexts();
+    }
+
+    @PreDestroy
+    public void close() {
+        if (ldapClient != null) {
+            ldapClient.close();
+        }
     }
 
     /**
      * Verifies that given UID exists in LDAP database.
      */
     public boolean checkUserExists(String uid) throws NamingException {
-        final NamingEnumeration<SearchResult> results =
-                ldapClient.search(configuration.getLdapSearchContext(),
-                        "(|(uid=" + uid + ")(rhatPriorUid=" + uid + "))");
-        try {
-            return results.hasMore();
-        } finally {
-            results.close();
-        }
+        return !findAllUserUids(uid).isEmpty();
     }
 
     /**
@@ -64,29 +112,21 @@ public class LdapClientBean {
      * @return list of current and prior UIDs
      */
     public List<String> findAllUserUids(String uid) throws NamingException {
+        final LdapResultCache.Entry cached = resultCache.get(uid);
+        if (cached != null) {
+            return new ArrayList<>(cached.getUids());
+        }
+
         final NamingEnumeration<SearchResult> results =
                 ldapClient.search(configuration.getLdapSearchContext(),
                         "(|(uid=" + uid + ")(rhatPriorUid=" + uid + "))");
         try {
             if (results.hasMore()) {
-                ArrayList<String> uids = new ArrayList<>();
-
-                SearchResult searchResult = results.next();
-                String currentUid = (String) searchResult.getAttributes().get("uid").get();
-                uids.add(currentUid);
-
-                // add user's prior UIDs to the map of existing users
-                Attribute priorUidAttr = searchResult.getAttributes().get("rhatPriorUid");
-                if (priorUidAttr != null) {
-                    NamingEnumeration<?> priorUids = priorUidAttr.getAll();
-                    while (priorUids.hasMore()) {
-                        String priorUid = (String) priorUids.next();
-                        uids.add(priorUid);
-                    }
-                }
-
+                List<String> uids = readUids(results.next());
+                resultCache.putExisting(uids);
                 return uids;
             } else {
+                resultCache.putMissing(uid);
                 return Collections.emptyList();
             }
         } finally {
@@ -94,28 +134,175 @@ public class LdapClientBean {
         }
     }
 
+    /**
+     * Enumerates all users in the search context. Results are retrieved page by page, so the whole directory can be
+     * processed at constant memory.
+     *
+     * @param consumer receives UIDs of each user - his current UID followed by his prior UIDs
+     */
+    public void forEachUser(Consumer<List<String>> consumer) throws NamingException {
+        final NamingEnumeration<SearchResult> results = ldapClient.searchPaged(configuration.getLdapSearchContext(),
+                "(uid=*)", Math.max(1, configuration.getLdapPageSize()));
+        try {
+            while (results.hasMore()) {
+                consumer.accept(readUids(results.next()));
+            }
+        } finally {
+            results.close();
+        }
+    }
+
     /**
      * Verifies which of given UIDs exists in LDAP database.
      *
      * Given names are looked for either in the uid or rhatPriorUid attributes. If an existing user has some rhatPriorUid
      * attributes, the resulting map will contain his uid and all his rhatPriorUid values.
      *
+     * With the {@link LdapExistenceCheckStrategy#QUERY} strategy, users that are not cached are checked in groups
+     * of {@link Configuration#getLdapGroupingFactor()}, up to {@link Configuration#getLdapParallelQueries()} groups
+     * are being checked concurrently, the limit is shared by all callers. With the
+     * {@link LdapExistenceCheckStrategy#SNAPSHOT} strategy, users are looked up in a snapshot of all UIDs in the
+     * directory.
+     *
      * @param users list of users to check
      * @return map where keys are UIDs and values are booleans indicating if given UID exists or not
      */
     public Map<String, Boolean> checkUsersExists(Collection<String> users) throws NamingException {
+        return checkUsersExists(users, true);
+    }
+
+    /**
+     * Verifies which of given UIDs exists in LDAP database, like {@link #checkUsersExists(Collection)}.
+     *
+     * @param users    list of users to check
+     * @param useCache if false, cached lookup results are ignored and all users are looked up in the directory (with
+     *                 the {@link LdapExistenceCheckStrategy#SNAPSHOT} strategy, a new snapshot is downloaded). Checks
+     *                 whose results lead to removal of users shouldn't rely on cached results.
+     * @return map where keys are UIDs and values are booleans indicating if given UID exists or not
+     */
+    public Map<String, Boolean> checkUsersExists(Collection<String> users, boolean useCache) throws NamingException {
+        if (configuration.getLdapExistenceCheckStrategy() == LdapExistenceCheckStrategy.SNAPSHOT) {
+            return checkUsersExistInSnapshot(users, useCache);
+        }
+
         final Map<String, Boolean> result = new HashMap<>();
+        final List<String> uncachedUsers = new ArrayList<>();
+        for (String uid : users) {
+            final LdapResultCache.Entry cached = useCache ? resultCache.get(uid) : null;
+            if (cached == null) {
+                uncachedUsers.add(uid);
+            } else if (cached.isExists()) {
+                cached.getUids().forEach(cachedUid -> result.put(cachedUid, true));
+            } else {
+                result.merge(uid, false, Boolean::logicalOr);
+            }
+        }
+
+        final List<List<String>> groups =
+                splitToGroups(uncachedUsers, Math.max(1, configuration.getLdapGroupingFactor()));
+
+        try {
+            parallelTasks.map(ParallelTasks.Pool.LDAP_QUERY, groups, NamingException.class,
+                    this::checkUsersSubsetExists)
+                    .forEach(groupResult -> mergeResults(result, groupResult));
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            NamingException ne = new NamingException("Interrupted while checking LDAP users");
+            ne.setRootCause(e);
+            throw ne;
+        }
+    }
+
+    private Map<String, Boolean> checkUsersExistInSnapshot(Collection<String> users, boolean useCache)
+            throws NamingException {
+        final LdapUidSnapshot snapshot = getUidSnapshot(!useCache);
+        // the directory contains far more users than are being checked, a snapshot smaller than that is incomplete
+        final int checkedUids = new HashSet<>(users).size();
+        if (snapshot.size() < checkedUids * MIN_SNAPSHOT_SIZE_RATIO) {
+            throw new NamingException(String.format(
+                    "Snapshot of LDAP UIDs contains only %d UIDs, while %d UIDs are being checked",
+                    snapshot.size(), checkedUids));
+        }
+
+        final Map<String, Boolean> result = new HashMap<>();
+        for (String uid : users) {
+            List<String> userUids = snapshot.getUserUids(uid);
+            if (userUids.isEmpty()) {
+                result.putIfAbsent(uid, false);
+            } else {
+                userUids.forEach(userUid -> result.put(userUid, true));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns a snapshot of all UIDs in the directory, downloading a new one if the current snapshot is older than
+     * {@link Configuration#getLdapSnapshotMaxAge()}.
+     * <p>
+     * A newly downloaded snapshot is rejected if it's empty, if it's smaller than
+     * {@link Configuration#getLdapSnapshotMinSize()}, or if it's less than half the size of the previous snapshot.
+     * That most likely means the paged search was cut short, and using such snapshot would report most users as
+     * missing. The previous size is only known in memory, so after a restart only the configured minimum applies.
+     *
+     * @param refresh if true, a new snapshot is always downloaded
+     */
+    synchronized LdapUidSnapshot getUidSnapshot(boolean refresh) throws NamingException {
+        final long now = System.currentTimeMillis();
+        final long maxAge = TimeUnit.MINUTES.toMillis(configuration.getLdapSnapshotMaxAge());
+        if (refresh || uidSnapshot == null || now - uidSnapshot.getCreated() >= maxAge) {
+            logger.infof("Downloading snapshot of LDAP UIDs");
+            LdapUidSnapshot snapshot = new LdapUidSnapshot(now);
+            forEachUser(snapshot::addUser);
+            logger.infof("Downloaded %d LDAP UIDs in %d ms", snapshot.size(), System.currentTimeMillis() - now);
+            if (snapshot.size() == 0) {
+                throw new NamingException("Downloaded snapshot of LDAP UIDs is empty");
+            }
+            if (snapshot.size() < configuration.getLdapSnapshotMinSize()) {
+                throw new NamingException(String.format(
+                        "Downloaded snapshot of LDAP UIDs contains only %d UIDs, at least %d UIDs are required",
+                        snapshot.size(), configuration.getLdapSnapshotMinSize()));
+            }
+            if (snapshot.size() < lastSnapshotSize * MIN_SNAPSHOT_SIZE_RATIO) {
+                throw new NamingException(String.format(
+                        "Downloaded snapshot of LDAP UIDs contains only %d UIDs, previous snapshot contained %d UIDs",
+                        snapshot.size(), lastSnapshotSize));
+            }
+            uidSnapshot = snapshot;
+            lastSnapshotSize = snapshot.size();
+        }
+        return uidSnapshot;
+    }
+
+    /**
+     * Releases the snapshot of LDAP UIDs, so that it doesn't occupy memory between scans. The next check using
+     * the {@link LdapExistenceCheckStrategy#SNAPSHOT} strategy downloads a new snapshot.
+     */
+    public synchronized void releaseUidSnapshot() {
+        uidSnapshot = null;
+    }
+
+    private static List<List<String>> splitToGroups(Collection<String> users, int groupSize) {
+        final List<List<String>> groups = new ArrayList<>();
         final Iterator<String> iterator = users.iterator();
-        final List<String> tempUserList = new ArrayList<>(GROUPING_FACTOR);
+        List<String> tempUserList = new ArrayList<>(groupSize);
         while (iterator.hasNext()) {
             tempUserList.add(iterator.next());
-            if (tempUserList.size() >= GROUPING_FACTOR || !iterator.hasNext()) {
-                final Map<String, Boolean> tempResultMap = checkUsersSubsetExists(tempUserList);
-                result.putAll(tempResultMap);
-                tempUserList.clear();
+            if (tempUserList.size() >= groupSize || !iterator.hasNext()) {
+                groups.add(tempUserList);
+                tempUserList = new ArrayList<>(groupSize);
             }
         }
-        return result;
+        return groups;
+    }
+
+    /**
+     * Merges results of a single group. A UID found by any of the queries (e.g. as a prior UID of a user from
+     * another group) is reported as existing.
+     */
+    private static void mergeResults(Map<String, Boolean> result, Map<String, Boolean> groupResult) {
+        groupResult.forEach((uid, exists) -> result.merge(uid, exists, Boolean::logicalOr));
     }
 
     private Map<String, Boolean> checkUsersSubsetExists(List<String> users) throws NamingException {
@@ -139,19 +326,10 @@ public class LdapClientBean {
             while (searchResults.hasMore()) {
                 final SearchResult record = searchResults.next();
 
-                // add user's UID to the map of existing users
-                String uid = (String) record.getAttributes().get("uid").get();
-                result.put(uid, true);
-
-                // add user's prior UIDs to the map of existing users
-                Attribute priorUidAttr = record.getAttributes().get("rhatPriorUid");
-                if (priorUidAttr != null) {
-                    NamingEnumeration<?> priorUids = priorUidAttr.getAll();
-                    while (priorUids.hasMore()) {
-                        String priorUid = (String) priorUids.next();
-                        result.put(priorUid, true);
-                    }
-                }
+                // add user's UID and prior UIDs to the map of existing users
+                List<String> uids = readUids(record);
+                uids.forEach(uid -> result.put(uid, true));
+                resultCache.putExisting(uids);
             }
         } finally {
             searchResults.close();
@@ -161,10 +339,29 @@ public class LdapClientBean {
         for (String uid : users) {
             if (!result.containsKey(uid)) {
                 result.put(uid, false);
+                resultCache.putMissing(uid);
             }
         }
 
         return result;
     }
 
+    /**
+     * @return current UID of found user, followed by his prior UIDs
+     */
+    private static List<String> readUids(SearchResult searchResult) throws NamingException {
+        ArrayList<String> uids = new ArrayList<>();
+        String currentUid = (String) searchResult.getAttributes().get("uid").get();
+        uids.add(currentUid);
+
+        Attribute priorUidAttr = searchResult.getAttributes().get("rhatPriorUid");
+        if (priorUidAttr != null) {
+            NamingEnumeration<?> priorUids = priorUidAttr.getAll();
+            while (priorUids.hasMore()) {
+                String priorUid = (String) priorUids.next();
+                uids.add(priorUid);
+            }
+        }
+        return uids;
+    }
 }
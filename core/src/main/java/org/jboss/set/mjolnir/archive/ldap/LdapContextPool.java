@@ -0,0 +1,188 @@
+package org.jboss.set.mjolnir.archive.ldap;
+
+import org.jboss.logging.Logger;
+
+import javax.naming.NamingException;
+import javax.naming.directory.DirContext;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pool of LDAP directory contexts.
+ * <p>
+ * Creating a context means opening a connection to the LDAP server and binding, so contexts are kept open and
+ * reused by subsequent searches. At most {@code maxSize} contexts exist at a time, callers asking for a context
+ * when all of them are in use are blocked until one is released. Contexts that stay idle longer than
+ * {@code idleTimeout} are closed, and contexts that have been idle for a while are verified by reading the root DSE
+ * before they are handed out, so that connections dropped by the server are replaced transparently.
+ */
+public class LdapContextPool {
+
+    /**
+     * Contexts idle for longer than this are checked before being reused.
+     */
+    static final long HEALTH_CHECK_INTERVAL = TimeUnit.SECONDS.toMillis(30);
+
+    /**
+     * Creates new directory contexts.
+     */
+    public interface ContextFactory {
+        DirContext create() throws NamingException;
+    }
+
+    private final Logger logger = Logger.getLogger(getClass());
+
+    private final ContextFactory contextFactory;
+    private final long idleTimeoutMillis;
+    private final Semaphore permits;
+    private final Deque<IdleContext> idleContexts = new ArrayDeque<>();
+    private boolean closed = false;
+
+    public LdapContextPool(ContextFactory contextFactory, int maxSize, long idleTimeoutMillis) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Pool size must be positive: " + maxSize);
+        }
+        this.contextFactory = contextFactory;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.permits = new Semaphore(maxSize, true);
+    }
+
+    /**
+     * Borrows a context from the pool, creating a new one if there is no idle context available. The context has
+     * to be returned via {@link #release(DirContext)}, or {@link #invalidate(DirContext)} if it's broken.
+     */
+    public DirContext borrow() throws NamingException {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            NamingException ne = new NamingException("Interrupted while waiting for LDAP context");
+            ne.setRootCause(e);
+            throw ne;
+        }
+
+        try {
+            IdleContext idle;
+            while ((idle = pollIdleContext()) != null) {
+                if (currentTimeMillis() - idle.since < HEALTH_CHECK_INTERVAL || isHealthy(idle.context)) {
+                    return idle.context;
+                }
+                logger.debugf("Discarding broken LDAP context");
+                closeQuietly(idle.context);
+            }
+            return contextFactory.create();
+        } catch (NamingException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns a healthy context to the pool.
+     */
+    public void release(DirContext context) {
+        boolean close;
+        synchronized (this) {
+            close = closed;
+            if (!closed) {
+                idleContexts.addFirst(new IdleContext(context, currentTimeMillis()));
+            }
+        }
+        if (close) {
+            closeQuietly(context);
+        }
+        permits.release();
+        evictIdleContexts();
+    }
+
+    /**
+     * Closes a broken context, releasing its slot in the pool.
+     */
+    public void invalidate(DirContext context) {
+        closeQuietly(context);
+        permits.release();
+    }
+
+    /**
+     * @return number of open contexts that are not in use
+     */
+    public synchronized int getIdleCount() {
+        return idleContexts.size();
+    }
+
+    /**
+     * Closes idle contexts that haven't been used for longer than the idle timeout.
+     */
+    public void evictIdleContexts() {
+        Deque<IdleContext> evicted = new ArrayDeque<>();
+        synchronized (this) {
+            long now = currentTimeMillis();
+            Iterator<IdleContext> iterator = idleContexts.iterator();
+            while (iterator.hasNext()) {
+                IdleContext idle = iterator.next();
+                if (now - idle.since > idleTimeoutMillis) {
+                    iterator.remove();
+                    evicted.add(idle);
+                }
+            }
+        }
+        if (!evicted.isEmpty()) {
+            logger.debugf("Closing %d idle LDAP contexts", evicted.size());
+            evicted.forEach(idle -> closeQuietly(idle.context));
+        }
+    }
+
+    /**
+     * Closes all idle contexts. Contexts that are currently in use are closed when they are released.
+     */
+    public void close() {
+        Deque<IdleContext> toClose;
+        synchronized (this) {
+            closed = true;
+            toClose = new ArrayDeque<>(idleContexts);
+            idleContexts.clear();
+        }
+        toClose.forEach(idle -> closeQuietly(idle.context));
+    }
+
+    long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    private synchronized IdleContext pollIdleContext() {
+        return idleContexts.pollFirst();
+    }
+
+    private boolean isHealthy(DirContext context) {
+        try {
+            // read the root DSE, which is available on any LDAP server without authentication
+            context.getAttributes("", new String[]{"namingContexts"});
+            return true;
+        } catch (NamingException | RuntimeException e) {
+            logger.debugf(e, "LDAP context health check failed");
+            return false;
+        }
+    }
+
+    private void closeQuietly(DirContext context) {
+        try {
+            context.close();
+        } catch (NamingException e) {
+            logger.debugf(e, "Failed to close LDAP context");
+        }
+    }
+
+    private static class IdleContext {
+
+        private final DirContext context;
+        private final long since;
+
+        IdleContext(DirContext context, long since) {
+            this.context = context;
+            this.since = since;
+        }
+    }
+}
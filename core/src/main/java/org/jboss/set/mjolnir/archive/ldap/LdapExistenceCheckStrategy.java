@@ -0,0 +1,17 @@
+package org.jboss.set.mjolnir.archive.ldap;
+
+/**
+ * Strategy used to verify existence of many LDAP users at once.
+ */
+public enum LdapExistenceCheckStrategy {
+
+    /**
+     * Users are looked up by queries combining several UIDs into a single filter.
+     */
+    QUERY,
+
+    /**
+     * UIDs of all users in the search context are downloaded, and users are looked up in memory.
+     */
+    SNAPSHOT
+}
@@ -0,0 +1,132 @@
+package org.jboss.set.mjolnir.archive.ldap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cache of LDAP lookup results.
+ * <p>
+ * For every looked up UID, the cache remembers whether a user with such current or prior UID exists, and if so,
+ * the list of all the user's UIDs (current UID first, followed by prior UIDs). Existing and non-existing users
+ * expire after different times, so that newly created accounts are picked up sooner. The number of entries is
+ * bounded, least recently used entries are evicted first.
+ */
+public class LdapResultCache {
+
+    private final int maxSize;
+    private final long positiveTtlMillis;
+    private final long negativeTtlMillis;
+    private final LinkedHashMap<String, Entry> entries;
+
+    private long hitCount;
+    private long missCount;
+
+    /**
+     * @param maxSize           maximum number of cached UIDs, zero disables the cache
+     * @param positiveTtlMillis how long are existing users cached
+     * @param negativeTtlMillis how long are non-existing users cached
+     */
+    public LdapResultCache(int maxSize, long positiveTtlMillis, long negativeTtlMillis) {
+        this.maxSize = maxSize;
+        this.positiveTtlMillis = positiveTtlMillis;
+        this.negativeTtlMillis = negativeTtlMillis;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > LdapResultCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * @param uid current or prior UID
+     * @return cached result, or null if the UID is not cached or the entry expired
+     */
+    public synchronized Entry get(String uid) {
+        Entry entry = entries.get(uid);
+        if (entry != null && entry.expires <= currentTimeMillis()) {
+            entries.remove(uid);
+            entry = null;
+        }
+        if (entry == null) {
+            missCount++;
+        } else {
+            hitCount++;
+        }
+        return entry;
+    }
+
+    /**
+     * Caches an existing user under each of his UIDs.
+     *
+     * @param uids current UID followed by prior UIDs
+     */
+    public synchronized void putExisting(List<String> uids) {
+        if (!isEnabled() || positiveTtlMillis <= 0) {
+            return;
+        }
+        Entry entry = new Entry(true, uids, currentTimeMillis() + positiveTtlMillis);
+        uids.forEach(uid -> entries.put(uid, entry));
+    }
+
+    /**
+     * Caches a UID that doesn't belong to any user.
+     */
+    public synchronized void putMissing(String uid) {
+        if (!isEnabled() || negativeTtlMillis <= 0) {
+            return;
+        }
+        entries.put(uid, new Entry(false, Collections.emptyList(), currentTimeMillis() + negativeTtlMillis));
+    }
+
+    public synchronized void invalidate() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    private boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    public static class Entry {
+
+        private final boolean exists;
+        private final List<String> uids;
+        private final long expires;
+
+        Entry(boolean exists, List<String> uids, long expires) {
+            this.exists = exists;
+            this.uids = Collections.unmodifiableList(new ArrayList<>(uids));
+            this.expires = expires;
+        }
+
+        public boolean isExists() {
+            return exists;
+        }
+
+        /**
+         * @return current UID followed by prior UIDs, or an empty list if the user doesn't exist
+         */
+        public List<String> getUids() {
+            return uids;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package org.jboss.set.mjolnir.archive.ldap;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory snapshot of UIDs of all LDAP users.
+ * <p>
+ * Every current and prior UID maps to the UIDs of the user it belongs to. UIDs of a single user are stored in one
+ * shared array, and strings are interned, so the snapshot of the whole directory stays compact.
+ */
+public class LdapUidSnapshot {
+
+    private final Map<String, String[]> users = new HashMap<>();
+    private final long created;
+
+    public LdapUidSnapshot(long created) {
+        this.created = created;
+    }
+
+    /**
+     * @param uids current UID of a user followed by his prior UIDs
+     */
+    public void addUser(List<String> uids) {
+        String[] userUids = uids.stream().map(String::intern).toArray(String[]::new);
+        for (String uid : userUids) {
+            users.put(uid, userUids);
+        }
+    }
+
+    /**
+     * @param uid current or prior UID
+     * @return current UID of the user followed by his prior UIDs, or an empty list if the user doesn't exist
+     */
+    public List<String> getUserUids(String uid) {
+        String[] userUids = users.get(uid);
+        return userUids != null ? Collections.unmodifiableList(Arrays.asList(userUids)) : Collections.emptyList();
+    }
+
+    public boolean contains(String uid) {
+        return users.containsKey(uid);
+    }
+
+    /**
+     * @return number of known UIDs, including prior UIDs
+     */
+    public int size() {
+        return users.size();
+    }
+
+    /**
+     * @return time when the snapshot was taken, in milliseconds
+     */
+    public long getCreated() {
+        return created;
+    }
+}
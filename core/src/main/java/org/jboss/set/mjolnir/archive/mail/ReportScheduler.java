@@ -2,6 +2,8 @@ package org.jboss.set.mjolnir.archive.mail;
 
 import org.jboss.logging.Logger;
 import org.jboss.set.mjolnir.archive.configuration.Configuration;
+import org.jboss.set.mjolnir.archive.github.MembershipSnapshotCache;
+import org.jboss.set.mjolnir.archive.mail.report.ArchiveStorageReportTable;
 import org.jboss.set.mjolnir.archive.mail.report.InvalidGitHubUsersReportTable;
 import org.jboss.set.mjolnir.archive.mail.report.InvalidResponsiblePersonTable;
 import org.jboss.set.mjolnir.archive.mail.report.RemovalsReportTable;
@@ -40,6 +42,9 @@ public class ReportScheduler {
     @Inject
     private MailBodyMessageProducer mailBodyMessageProducer;
 
+    @Inject
+    private MembershipSnapshotCache membershipSnapshotCache;
+
     @Inject
     private RemovalsReportTable removalsReportTable;
 
@@ -58,6 +63,9 @@ public class ReportScheduler {
     @Inject
     private InvalidGitHubUsersReportTable invalidGitHubUsersReportTable;
 
+    @Inject
+    private ArchiveStorageReportTable archiveStorageReportTable;
+
     @Schedule(dayOfWeek="Sun", hour="7", persistent = false)
     public void sendMail() throws IOException, NamingException {
         String fromAddress = configuration.getSenderEmail();
@@ -73,7 +81,10 @@ public class ReportScheduler {
         reportTables.add(allowedUsersReportTable);
         reportTables.add(invalidUserId);
         reportTables.add(invalidGitHubUsersReportTable);
+        reportTables.add(archiveStorageReportTable);
 
+        // report tables share one snapshot of current GitHub memberships
+        membershipSnapshotCache.invalidate();
         String body = mailBodyMessageProducer.composeMessageBody(reportTables);
 
         try {
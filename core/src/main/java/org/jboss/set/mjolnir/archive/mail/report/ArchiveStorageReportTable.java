@@ -0,0 +1,90 @@
+package org.jboss.set.mjolnir.archive.mail.report;
+
+import j2html.tags.ContainerTag;
+import j2html.tags.DomContent;
+import org.jboss.set.mjolnir.archive.ArchiveStorageBean;
+import org.jboss.set.mjolnir.archive.ArchiveStorageBean.StorageUsage;
+import org.jboss.set.mjolnir.archive.domain.ArchiveMaintenanceRun;
+
+import javax.inject.Inject;
+import java.text.SimpleDateFormat;
+import java.util.List;
+
+import static j2html.TagCreator.div;
+import static j2html.TagCreator.each;
+import static j2html.TagCreator.h2;
+import static j2html.TagCreator.p;
+import static j2html.TagCreator.table;
+import static j2html.TagCreator.td;
+import static j2html.TagCreator.th;
+import static j2html.TagCreator.tr;
+
+/**
+ * Prints removed users and source repositories whose archived forks take up the most storage, and the result of the
+ * last archive maintenance.
+ */
+public class ArchiveStorageReportTable implements ReportTable {
+
+    static final int ROW_LIMIT = 10;
+
+    @Inject
+    private ArchiveStorageBean archiveStorageBean;
+
+    @Override
+    public String composeTable() {
+        return div().with(
+                h2("Archive Storage").withStyle(Styles.H2_STYLE),
+                p("...users whose archived forks take up the most storage").withStyle(Styles.SUB_HEADING_STYLE),
+                usageTable(Constants.GH_NAME, archiveStorageBean.getUsageByUser()),
+                p("...source repositories whose archived forks take up the most storage")
+                        .withStyle(Styles.SUB_HEADING_STYLE),
+                usageTable(Constants.REPOSITORY, archiveStorageBean.getUsageByRepository()),
+                p("...last archive maintenance").withStyle(Styles.SUB_HEADING_STYLE),
+                maintenanceTable(archiveStorageBean.getLastMaintenanceRun())
+        ).render();
+    }
+
+    private ContainerTag maintenanceTable(ArchiveMaintenanceRun run) {
+        ContainerTag table = table().withStyle(Styles.TABLE_STYLE + Styles.TD_STYLE).with(
+                tr().with(
+                        th(Constants.STARTED).withStyle(Styles.TH_STYLE),
+                        th(Constants.PROCESSED).withStyle(Styles.TH_STYLE),
+                        th(Constants.SKIPPED).withStyle(Styles.TH_STYLE),
+                        th(Constants.RECLAIMED).withStyle(Styles.TH_STYLE),
+                        th(Constants.STATUS).withStyle(Styles.TH_STYLE)
+                )
+        );
+        if (run != null) {
+            SimpleDateFormat noMillisFormat = new SimpleDateFormat("yyyy-MM-dd hh:mm:ss");
+            table.with(tr(
+                    td(noMillisFormat.format(run.getStarted())).withStyle(Styles.TD_STYLE),
+                    td(String.valueOf(run.getProcessed())).withStyle(Styles.TD_STYLE),
+                    td(String.valueOf(run.getSkipped())).withStyle(Styles.TD_STYLE),
+                    td(ReportUtils.formatBytes(run.getReclaimedBytes())).withStyle(Styles.TD_STYLE),
+                    td(run.isSuccessful() ? "OK" : "Failures, see the log").withStyle(Styles.TD_STYLE)
+            ));
+        }
+        return table;
+    }
+
+    private ContainerTag usageTable(String nameHeading, List<StorageUsage> usages) {
+        return table().withStyle(Styles.TABLE_STYLE + Styles.TD_STYLE).with(
+                tr().with(
+                        th(nameHeading).withStyle(Styles.TH_STYLE),
+                        th(Constants.FORKS).withStyle(Styles.TH_STYLE),
+                        th(Constants.OBJECTS).withStyle(Styles.TH_STYLE),
+                        th(Constants.UNIQUE_SIZE).withStyle(Styles.TH_STYLE)
+                ),
+                addUsageRows(usages.subList(0, Math.min(ROW_LIMIT, usages.size())))
+        );
+    }
+
+    private DomContent addUsageRows(List<StorageUsage> usages) {
+        return each(usages, usage -> tr(
+                td(usage.getName()).withStyle(Styles.TD_STYLE),
+                td(String.valueOf(usage.getForkCount())).withStyle(Styles.TD_STYLE),
+                td(String.valueOf(usage.getObjectCount())).withStyle(Styles.TD_STYLE),
+                td(ReportUtils.formatBytes(usage.getUniqueBytes())).withStyle(Styles.TD_STYLE)
+        ));
+    }
+}
@@ -4,17 +4,24 @@ final class Constants {
 
     public static final String ACTIVE_LDAP_ACCOUNT = "Active LDAP Account";
     public static final String CREATED = "Created";
+    public static final String FORKS = "Forks";
     public static final String GH_NAME = "GH Name";
     public static final String GH_ID = "GH ID";
     public static final String ID = "ID";
     public static final String GH_NAME_FOR_ID = "GH Name for ID";
     public static final String LDAP_NAME = "LDAP Name";
+    public static final String OBJECTS = "Objects";
     public static final String ORGANIZATIONS = "Organizations";
+    public static final String PROCESSED = "Processed";
+    public static final String RECLAIMED = "Reclaimed";
     public static final String REGISTERED = "Registered";
+    public static final String REPOSITORY = "Repository";
     public static final String RESPONSIBLE_PERSON = "Responsible Person";
+    public static final String SKIPPED = "Skipped";
     public static final String STARTED = "Started";
     public static final String STATUS = "Status";
     public static final String TEAMS = "Teams";
+    public static final String UNIQUE_SIZE = "Unique Size (uncompressed)";
 
     private Constants() {
     }
@@ -1,5 +1,7 @@
 package org.jboss.set.mjolnir.archive.mail.report;
 
+import java.util.Locale;
+
 public final class ReportUtils {
 
     private ReportUtils() {
@@ -16,4 +18,16 @@ public final class ReportUtils {
         return o == null ? "" : o.toString();
     }
 
+    /**
+     * Formats a number of bytes using binary units, e.g. "1.5 MiB".
+     */
+    public static String formatBytes(long bytes) {
+        if (bytes < 1024) {
+            return bytes + " B";
+        }
+        int exponent = (int) (Math.log(bytes) / Math.log(1024));
+        exponent = Math.min(exponent, 4);
+        return String.format(Locale.ROOT, "%.1f %siB", bytes / Math.pow(1024, exponent), "KMGT".charAt(exponent - 1));
+    }
+
 }
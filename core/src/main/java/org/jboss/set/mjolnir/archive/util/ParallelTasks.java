@@ -0,0 +1,180 @@
+package org.jboss.set.mjolnir.archive.util;
+
+import org.jboss.set.mjolnir.archive.configuration.Configuration;
+
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToIntFunction;
+
+/**
+ * Runs independent tasks on shared pools of worker threads.
+ * <p>
+ * There is a single pool per purpose (see {@link Pool}), shared by all callers in the application. Concurrent
+ * callers, like partitions of a batch step, therefore don't multiply the number of threads - the number of tasks
+ * of given purpose running at a time is bounded by the configured number of threads. The size of each pool is read
+ * from the configuration when the pool is first used, and stays fixed for the lifetime of the application. Tasks
+ * must not submit further tasks to the pool they are running in. Idle worker threads are terminated after a minute,
+ * so pools don't hold any threads between runs.
+ * <p>
+ * The bean is application scoped, the pools are shut down when the application is undeployed.
+ */
+@ApplicationScoped
+public class ParallelTasks {
+
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    /**
+     * Purpose of a pool, determines its name and size.
+     */
+    public enum Pool {
+        GITHUB_FORKS("github-forks", Configuration::getGitHubFetchThreads),
+        LDAP_QUERY("ldap-query", Configuration::getLdapParallelQueries),
+        ARCHIVING("archiving", Configuration::getArchivingThreads);
+
+        private final String threadNamePrefix;
+        private final ToIntFunction<Configuration> threads;
+
+        Pool(String threadNamePrefix, ToIntFunction<Configuration> threads) {
+            this.threadNamePrefix = threadNamePrefix;
+            this.threads = threads;
+        }
+    }
+
+    /**
+     * Task processing a single input.
+     *
+     * @param <T> input type
+     * @param <R> result type
+     * @param <E> checked exception thrown by the task
+     */
+    public interface Task<T, R, E extends Exception> {
+        R run(T input) throws E;
+    }
+
+    @Inject
+    private Configuration configuration;
+
+    private final Map<Pool, ThreadPoolExecutor> pools = new EnumMap<>(Pool.class);
+    private boolean shutdown;
+
+    @SuppressWarnings("unused")
+    public ParallelTasks() {
+    }
+
+    /**
+     * Creates an instance outside of the CDI container. The caller is responsible for calling {@link #shutdown()}.
+     */
+    public ParallelTasks(Configuration configuration) {
+        this.configuration = configuration;
+    }
+
+    /**
+     * @return maximum number of tasks of given pool running concurrently
+     */
+    public int getThreads(Pool pool) {
+        return Math.max(1, pool.threads.applyAsInt(configuration));
+    }
+
+    /**
+     * Runs a task for each of given inputs, using the threads of given pool. If the pool is configured with a single
+     * thread, or there is a single input, the tasks are run sequentially in the calling thread and the pool isn't
+     * used at all.
+     * <p>
+     * When a task fails, tasks that haven't finished yet are cancelled and the failure is rethrown.
+     *
+     * @param pool pool to run the tasks in
+     * @param inputs inputs to process
+     * @param exceptionType checked exception thrown by the task, rethrown unwrapped
+     * @param task task to run for each input
+     * @return results in the same order as the inputs
+     */
+    public <T, R, E extends Exception> List<R> map(Pool pool, List<T> inputs, Class<E> exceptionType,
+                                                   Task<T, R, E> task) throws E, InterruptedException {
+        List<R> results = new ArrayList<>(inputs.size());
+        if (Math.min(getThreads(pool), inputs.size()) <= 1) {
+            for (T input : inputs) {
+                results.add(task.run(input));
+            }
+            return results;
+        }
+
+        ThreadPoolExecutor executor = getExecutor(pool);
+        List<Future<R>> futures = new ArrayList<>(inputs.size());
+        try {
+            for (T input : inputs) {
+                futures.add(executor.submit(() -> task.run(input)));
+            }
+            for (Future<R> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (exceptionType.isInstance(cause)) {
+                throw exceptionType.cast(cause);
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        } finally {
+            // no-op for finished tasks
+            futures.forEach(future -> future.cancel(true));
+        }
+    }
+
+    private synchronized ThreadPoolExecutor getExecutor(Pool pool) {
+        if (shutdown) {
+            throw new IllegalStateException("Worker pools have been shut down");
+        }
+        ThreadPoolExecutor executor = pools.get(pool);
+        if (executor == null) {
+            int threads = getThreads(pool);
+            executor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), new NamedThreadFactory(pool.threadNamePrefix));
+            executor.allowCoreThreadTimeOut(true);
+            pools.put(pool, executor);
+        }
+        return executor;
+    }
+
+    /**
+     * Interrupts running tasks and terminates the worker threads of all pools.
+     */
+    @PreDestroy
+    public synchronized void shutdown() {
+        shutdown = true;
+        pools.values().forEach(ThreadPoolExecutor::shutdownNow);
+        pools.clear();
+    }
+
+    private static class NamedThreadFactory implements ThreadFactory {
+
+        private final String prefix;
+        private final AtomicInteger threadCounter = new AtomicInteger();
+
+        NamedThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, prefix + "-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
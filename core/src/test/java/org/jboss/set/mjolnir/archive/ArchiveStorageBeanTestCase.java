@@ -0,0 +1,92 @@
+package org.jboss.set.mjolnir.archive;
+
+import org.apache.deltaspike.testcontrol.api.junit.CdiTestRunner;
+import org.assertj.core.groups.Tuple;
+import org.jboss.set.mjolnir.archive.domain.RepositoryFork;
+import org.jboss.set.mjolnir.archive.domain.RepositoryForkStatus;
+import org.jboss.set.mjolnir.archive.domain.UserRemoval;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import javax.inject.Inject;
+import javax.persistence.EntityManager;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(CdiTestRunner.class)
+public class ArchiveStorageBeanTestCase {
+
+    @Inject
+    private EntityManager em;
+
+    @Inject
+    private ArchiveStorageBean archiveStorageBean;
+
+    @Before
+    public void setup() {
+        em.getTransaction().begin();
+
+        // clear tables to avoid object accumulation
+        em.createNativeQuery("delete from repository_forks;").executeUpdate();
+        em.createNativeQuery("delete from user_removals;").executeUpdate();
+
+        UserRemoval userRemoval = new UserRemoval();
+        userRemoval.setLdapUsername("thofman");
+        em.persist(userRemoval);
+
+        persistFork(userRemoval, "user1/repo1", "upstream/repo1", RepositoryForkStatus.ARCHIVED, 10L, 1000L);
+        persistFork(userRemoval, "user1/repo2", "upstream/repo2", RepositoryForkStatus.ARCHIVED, 5L, 200L);
+        persistFork(userRemoval, "user2/repo1", "upstream/repo1", RepositoryForkStatus.ARCHIVED, 20L, 5000L);
+        // archived before storage accounting was introduced
+        persistFork(userRemoval, "user2/repo2", "upstream/repo2", RepositoryForkStatus.ARCHIVED, null, null);
+        // archives of these records no longer exist
+        persistFork(userRemoval, "user3/repo1", "upstream/repo1", RepositoryForkStatus.DELETED, 100L, 100000L);
+        persistFork(userRemoval, "user3/repo2", "upstream/repo2", RepositoryForkStatus.ARCHIVAL_FAILED, 1L, 1L);
+        RepositoryFork olderFork =
+                persistFork(userRemoval, "user1/repo1", "upstream/repo1", RepositoryForkStatus.ARCHIVED, 7L, 700L);
+
+        em.flush();
+        em.clear();
+
+        // the second "user1/repo1" record is older, so it was replaced by the first one
+        em.createNativeQuery("update repository_forks set created = now() - interval '1' day where id = :id")
+                .setParameter("id", olderFork.getId())
+                .executeUpdate();
+
+        em.getTransaction().commit();
+    }
+
+    @Test
+    public void testUsageByUser() {
+        assertThat(archiveStorageBean.getUsageByUser())
+                .extracting("name", "forkCount", "unaccountedForkCount", "objectCount", "uniqueBytes")
+                .containsExactly(
+                        Tuple.tuple("user2", 2, 1, 20L, 5000L),
+                        Tuple.tuple("user1", 2, 0, 15L, 1200L)
+                );
+    }
+
+    @Test
+    public void testUsageByRepository() {
+        assertThat(archiveStorageBean.getUsageByRepository())
+                .extracting("name", "forkCount", "unaccountedForkCount", "objectCount", "uniqueBytes")
+                .containsExactly(
+                        Tuple.tuple("upstream/repo1", 2, 0, 30L, 6000L),
+                        Tuple.tuple("upstream/repo2", 2, 1, 5L, 200L)
+                );
+    }
+
+    private RepositoryFork persistFork(UserRemoval userRemoval, String repositoryName, String sourceRepositoryName,
+                                       RepositoryForkStatus status, Long objectCount, Long uniqueBytes) {
+        RepositoryFork fork = new RepositoryFork();
+        fork.setUserRemoval(userRemoval);
+        fork.setRepositoryName(repositoryName);
+        fork.setSourceRepositoryName(sourceRepositoryName);
+        fork.setStatus(status);
+        fork.setObjectCount(objectCount);
+        fork.setUniqueBytes(uniqueBytes);
+        em.persist(fork);
+        return fork;
+    }
+}
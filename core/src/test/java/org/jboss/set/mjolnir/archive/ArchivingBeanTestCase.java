@@ -5,21 +5,39 @@ import org.eclipse.egit.github.core.User;
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.ListBranchCommand;
 import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.errors.MissingBundlePrerequisiteException;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.transport.BundleWriter;
+import org.eclipse.jgit.transport.RefSpec;
 import org.eclipse.jgit.transport.RemoteConfig;
+import org.eclipse.jgit.transport.Transport;
+import org.eclipse.jgit.transport.TransportBundleStream;
 import org.eclipse.jgit.transport.URIish;
 import org.jboss.set.mjolnir.archive.configuration.Configuration;
+import org.jboss.set.mjolnir.archive.util.ParallelTasks;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 public class ArchivingBeanTestCase {
 
@@ -145,6 +163,451 @@ public class ArchivingBeanTestCase {
         testCreateRepositoryMirror();
     }
 
+    @Test
+    public void testCreateRepositoryMirror_branchesOnly() throws Exception {
+        tagForkedRepository();
+
+        configuration = new Configuration.ConfigurationBuilder()
+                .setGitHubToken("token")
+                .setRepositoryArchiveRoot(archiveDir.getAbsolutePath())
+                .setFetchStrategy(FetchStrategy.BRANCHES)
+                .build();
+        ArchivingBean bean = new ArchivingBean(configuration);
+        bean.createRepositoryMirror(userRepository);
+
+        try (Git archivedRepository = Git.open(new File(archiveDir, "testorg/testrepo"))) {
+            assertThat(archivedRepository.branchList().setListMode(ListBranchCommand.ListMode.ALL).call())
+                    .extracting("name")
+                    .contains("refs/heads/master",
+                            "refs/remotes/TomasHofman/master",
+                            "refs/remotes/TomasHofman/feature");
+            assertThat(archivedRepository.tagList().call()).isEmpty();
+        }
+    }
+
+    @Test
+    public void testCreateRepositoryMirror_branchesAndNewTags() throws Exception {
+        tagForkedRepository();
+
+        configuration = new Configuration.ConfigurationBuilder()
+                .setGitHubToken("token")
+                .setRepositoryArchiveRoot(archiveDir.getAbsolutePath())
+                .setFetchStrategy(FetchStrategy.BRANCHES_AND_NEW_TAGS)
+                .build();
+        ArchivingBean bean = new ArchivingBean(configuration);
+        bean.createRepositoryMirror(userRepository);
+
+        try (Git archivedRepository = Git.open(new File(archiveDir, "testorg/testrepo"))) {
+            assertThat(archivedRepository.branchList().setListMode(ListBranchCommand.ListMode.REMOTE).call())
+                    .extracting("name")
+                    .contains("refs/remotes/TomasHofman/master",
+                            "refs/remotes/TomasHofman/feature");
+            // tag points to a fetched commit, so it's followed
+            assertThat(archivedRepository.tagList().call())
+                    .extracting("name")
+                    .containsOnly("refs/tags/fork-tag");
+        }
+    }
+
+    @Test
+    public void testCreateRepositoryMirror_completeHistory() throws Exception {
+        // fork diverging from the upstream by several commits
+        try (Git forkedRepo = Git.open(forkedRepositoryDir)) {
+            for (int i = 0; i < 5; i++) {
+                Files.write(new File(forkedRepositoryDir, "feature.txt").toPath(),
+                        ("feature " + i).getBytes(StandardCharsets.UTF_8));
+                forkedRepo.add().addFilepattern(".").call();
+                forkedRepo.commit().setMessage("Feature commit " + i).call();
+            }
+        }
+
+        for (FetchStrategy strategy : FetchStrategy.values()) {
+            File archiveRoot = tempDir.newFolder("archive-" + strategy);
+            configuration = new Configuration.ConfigurationBuilder()
+                    .setGitHubToken("token")
+                    .setRepositoryArchiveRoot(archiveRoot.getAbsolutePath())
+                    .setFetchStrategy(strategy)
+                    .build();
+            ArchivingBean bean = new ArchivingBean(configuration);
+            bean.createRepositoryMirror(userRepository);
+
+            try (Git archivedRepository = Git.open(new File(archiveRoot, "testorg/testrepo"))) {
+                // archive repository must never be shallow, it's shared by forks and pruned by gc
+                assertThat(new File(archivedRepository.getRepository().getDirectory(), "shallow"))
+                        .as(strategy.name())
+                        .doesNotExist();
+                ObjectId featureId = archivedRepository.getRepository()
+                        .resolve("refs/remotes/TomasHofman/feature");
+                assertThat(archivedRepository.log().add(featureId).call())
+                        .as(strategy.name())
+                        .hasSize(6);
+            }
+        }
+    }
+
+    @Test
+    public void testCreateRepositoryMirror_concurrentForks() throws Exception {
+        // second fork of the same source repository
+        File secondForkDir = tempDir.newFolder("secondFork");
+        try (Git secondFork = Git.cloneRepository()
+                .setURI(sourceRepositoryDir.getAbsolutePath())
+                .setDirectory(secondForkDir)
+                .call()) {
+            secondFork.checkout().setName("bugfix").setCreateBranch(true).call();
+        }
+        Repository secondRepository = createFork("lvydra", secondForkDir.getAbsolutePath());
+        // fork that can't be fetched
+        Repository missingRepository = createFork("missing", new File(tempDir.getRoot(), "missing").getAbsolutePath());
+
+        ArchivingBean bean = new ArchivingBean(configuration);
+        ParallelTasks parallelTasks = new ParallelTasks(new Configuration.ConfigurationBuilder()
+                .setArchivingThreads(3)
+                .build());
+        List<Exception> failures;
+        try {
+            failures = parallelTasks.map(ParallelTasks.Pool.ARCHIVING,
+                    Arrays.asList(userRepository, missingRepository, secondRepository), RuntimeException.class,
+                    repository -> {
+                        try {
+                            bean.createRepositoryMirror(repository);
+                            return null;
+                        } catch (Exception e) {
+                            return e;
+                        }
+                    });
+        } finally {
+            parallelTasks.shutdown();
+        }
+
+        assertThat(failures.get(0)).isNull();
+        assertThat(failures.get(1)).isNotNull();
+        assertThat(failures.get(2)).isNull();
+        try (Git archivedRepository = Git.open(new File(archiveDir, "testorg/testrepo"))) {
+            assertThat(archivedRepository.branchList().setListMode(ListBranchCommand.ListMode.REMOTE).call())
+                    .extracting("name")
+                    .contains("refs/remotes/TomasHofman/feature",
+                            "refs/remotes/lvydra/bugfix");
+        }
+    }
+
+    @Test
+    public void testCreateRepositoryMirror_sharedObjectStore() throws Exception {
+        // the same source repository, available under a different organization and name
+        File renamedRepositoryDir = tempDir.newFolder("renamedRepository");
+        Git.cloneRepository()
+                .setURI(sourceRepositoryDir.getAbsolutePath())
+                .setDirectory(renamedRepositoryDir)
+                .call()
+                .close();
+
+        User otherOrg = new User();
+        otherOrg.setLogin("otherorg");
+
+        Repository renamedRepository = new Repository();
+        renamedRepository.setName("renamedrepo");
+        renamedRepository.setCloneUrl(renamedRepositoryDir.getAbsolutePath());
+        renamedRepository.setOwner(otherOrg);
+
+        Repository otherUserRepository = new Repository();
+        otherUserRepository.setCloneUrl(forkedRepositoryDir.getAbsolutePath());
+        otherUserRepository.setName("renamedrepo");
+        otherUserRepository.setOwner(userRepository.getOwner());
+        otherUserRepository.setSource(renamedRepository);
+
+        configuration = new Configuration.ConfigurationBuilder()
+                .setGitHubToken("token")
+                .setRepositoryArchiveRoot(archiveDir.getAbsolutePath())
+                .setSharedObjectStores(true)
+                .build();
+        ArchivingBean bean = new ArchivingBean(configuration);
+        bean.createRepositoryMirror(userRepository);
+        bean.createRepositoryMirror(otherUserRepository);
+
+        // a single store was created, and both archives are linked to it
+        File[] stores = new File(archiveDir, SharedObjectStores.STORES_DIRECTORY).listFiles();
+        assertThat(stores).hasSize(1);
+        String expectedAlternates = new File(stores[0], "objects").getAbsolutePath();
+        for (String archive : new String[]{"testorg/testrepo", "otherorg/renamedrepo"}) {
+            File archiveRepositoryDir = new File(archiveDir, archive);
+            assertThat(new File(archiveRepositoryDir, "objects/info/alternates"))
+                    .hasContent(expectedAlternates);
+
+            try (Git archivedRepository = Git.open(archiveRepositoryDir)) {
+                assertThat(archivedRepository.branchList().setListMode(ListBranchCommand.ListMode.ALL).call())
+                        .extracting("name")
+                        .contains("refs/heads/master",
+                                "refs/remotes/TomasHofman/master",
+                                "refs/remotes/TomasHofman/feature");
+                assertThat(archivedRepository.log().call()).isNotEmpty();
+            }
+        }
+
+        // the second archive didn't need to download any objects
+        File[] packs = new File(archiveDir, "otherorg/renamedrepo/objects/pack").listFiles();
+        assertThat(packs == null ? new File[0] : packs).isEmpty();
+    }
+
+    @Test
+    public void testUpstreamIsSyncedBeforeFetchingFork() throws Exception {
+        configuration = new Configuration.ConfigurationBuilder()
+                .setGitHubToken("token")
+                .setRepositoryArchiveRoot(archiveDir.getAbsolutePath())
+                .setUpstreamSyncInterval(0)
+                .build();
+        ArchivingBean bean = new ArchivingBean(configuration);
+        bean.createRepositoryMirror(userRepository);
+
+        // new upstream commit after the archive was created
+        RevCommit upstreamCommit;
+        try (Git sourceRepo = Git.open(sourceRepositoryDir)) {
+            Assert.assertTrue(new File(sourceRepositoryDir, "upstream.txt").createNewFile());
+            sourceRepo.add().addFilepattern(".").call();
+            upstreamCommit = sourceRepo.commit().setMessage("Upstream commit").call();
+        }
+
+        bean.createRepositoryMirror(userRepository);
+
+        try (Git archivedRepository = Git.open(new File(archiveDir, "testorg/testrepo"))) {
+            assertThat(archivedRepository.getRepository().resolve("refs/heads/master"))
+                    .isEqualTo(upstreamCommit.getId());
+        }
+    }
+
+    @Test
+    public void testUpstreamSyncOnlyUpdatesBranchesAndTags() throws Exception {
+        try (Git sourceRepo = Git.open(sourceRepositoryDir)) {
+            sourceRepo.branchCreate().setName("old").call();
+        }
+
+        configuration = new Configuration.ConfigurationBuilder()
+                .setGitHubToken("token")
+                .setRepositoryArchiveRoot(archiveDir.getAbsolutePath())
+                .setUpstreamSyncInterval(0)
+                .build();
+        ArchivingBean bean = new ArchivingBean(configuration);
+        bean.createRepositoryMirror(userRepository);
+
+        // upstream branch is deleted, and a pull request ref is created
+        try (Git sourceRepo = Git.open(sourceRepositoryDir)) {
+            sourceRepo.branchDelete().setBranchNames("old").setForce(true).call();
+            Assert.assertTrue(new File(sourceRepositoryDir, "upstream.txt").createNewFile());
+            sourceRepo.add().addFilepattern(".").call();
+            RevCommit upstreamCommit = sourceRepo.commit().setMessage("Upstream commit").call();
+            RefUpdate refUpdate = sourceRepo.getRepository().updateRef("refs/pull/1/head");
+            refUpdate.setNewObjectId(upstreamCommit);
+            refUpdate.update();
+            sourceRepo.tag().setName("v1").setAnnotated(false).call();
+        }
+
+        bean.createRepositoryMirror(userRepository);
+
+        try (Git archivedRepository = Git.open(new File(archiveDir, "testorg/testrepo"))) {
+            assertThat(archivedRepository.getRepository().resolve("refs/tags/v1")).isNotNull();
+            assertThat(archivedRepository.getRepository().resolve("refs/heads/old")).isNotNull();
+            assertThat(archivedRepository.getRepository().resolve("refs/pull/1/head")).isNull();
+            assertThat(archivedRepository.getRepository().resolve("refs/remotes/TomasHofman/feature")).isNotNull();
+        }
+    }
+
+    @Test
+    public void testUpstreamIsNotSyncedWithinInterval() throws Exception {
+        ArchivingBean bean = new ArchivingBean(configuration);
+        bean.createRepositoryMirror(userRepository);
+
+        ObjectId originalHead;
+        try (Git archivedRepository = Git.open(new File(archiveDir, "testorg/testrepo"))) {
+            originalHead = archivedRepository.getRepository().resolve("refs/heads/master");
+        }
+
+        try (Git sourceRepo = Git.open(sourceRepositoryDir)) {
+            Assert.assertTrue(new File(sourceRepositoryDir, "upstream.txt").createNewFile());
+            sourceRepo.add().addFilepattern(".").call();
+            sourceRepo.commit().setMessage("Upstream commit").call();
+        }
+
+        // the archive was created (and thus synced) just now
+        bean.createRepositoryMirror(userRepository);
+
+        try (Git archivedRepository = Git.open(new File(archiveDir, "testorg/testrepo"))) {
+            assertThat(archivedRepository.getRepository().resolve("refs/heads/master")).isEqualTo(originalHead);
+        }
+    }
+
+    @Test
+    public void testStorageStats() throws Exception {
+        ArchivingBean bean = new ArchivingBean(configuration);
+
+        // fork without own commits adds nothing
+        ArchiveStorageStats stats = bean.createRepositoryMirror(userRepository);
+        assertThat(stats.getObjectCount()).isZero();
+        assertThat(stats.getUniqueBytes()).isZero();
+
+        try (Git forkedRepo = Git.open(forkedRepositoryDir)) {
+            Files.write(new File(forkedRepositoryDir, "feature.txt").toPath(),
+                    "feature".getBytes(StandardCharsets.UTF_8));
+            forkedRepo.add().addFilepattern(".").call();
+            forkedRepo.commit().setMessage("Feature commit").call();
+        }
+
+        // commit, root tree and the new blob
+        stats = bean.createRepositoryMirror(userRepository);
+        assertThat(stats.getObjectCount()).isEqualTo(3);
+        assertThat(stats.getUniqueBytes()).isGreaterThan("feature".length());
+    }
+
+    @Test
+    public void testStorageStats_forkOnlyTag() throws Exception {
+        // tag of the fork is fetched into the archive next to upstream tags, its commit is still counted
+        try (Git forkedRepo = Git.open(forkedRepositoryDir)) {
+            Files.write(new File(forkedRepositoryDir, "feature.txt").toPath(),
+                    "feature".getBytes(StandardCharsets.UTF_8));
+            forkedRepo.add().addFilepattern(".").call();
+            forkedRepo.commit().setMessage("Feature commit").call();
+            forkedRepo.tag().setName("fork-tag").setAnnotated(false).call();
+        }
+
+        ArchivingBean bean = new ArchivingBean(configuration);
+        ArchiveStorageStats stats = bean.createRepositoryMirror(userRepository);
+
+        try (Git archivedRepository = Git.open(new File(archiveDir, "testorg/testrepo"))) {
+            assertThat(archivedRepository.getRepository().resolve("refs/tags/fork-tag")).isNotNull();
+        }
+        // commit, root tree and the new blob
+        assertThat(stats.getObjectCount()).isEqualTo(3);
+    }
+
+    @Test
+    public void testExportBundle() throws Exception {
+        RevCommit featureCommit;
+        try (Git forkedRepo = Git.open(forkedRepositoryDir)) {
+            Assert.assertTrue(new File(forkedRepositoryDir, "feature.txt").createNewFile());
+            forkedRepo.add().addFilepattern(".").call();
+            featureCommit = forkedRepo.commit().setMessage("Feature commit").call();
+        }
+
+        ArchivingBean bean = new ArchivingBean(configuration);
+        bean.createRepositoryMirror(userRepository);
+
+        ByteArrayOutputStream bundle = new ByteArrayOutputStream();
+        try (GitArchiveRepository archive = GitArchiveRepository.open(new File(archiveDir, "testorg/testrepo"))) {
+            assertThat(archive.exportBundle("TomasHofman", bundle)).isEqualTo(2);
+            archive.verifyBundle("TomasHofman", new ByteArrayInputStream(bundle.toByteArray()));
+        }
+
+        // bundle can be unbundled into a clone of the upstream repository
+        File restoredDir = tempDir.newFolder("restored");
+        try (Git restored = Git.cloneRepository().setURI(sourceRepositoryDir.getAbsolutePath())
+                .setDirectory(restoredDir).call()) {
+            fetchBundle(restored, bundle.toByteArray());
+            assertThat(restored.getRepository().resolve("refs/remotes/TomasHofman/feature"))
+                    .isEqualTo(featureCommit.getId());
+        }
+
+        // upstream commits are not part of the bundle
+        File emptyDir = tempDir.newFolder("empty");
+        try (Git empty = Git.init().setDirectory(emptyDir).call()) {
+            assertThatThrownBy(() -> fetchBundle(empty, bundle.toByteArray()))
+                    .isInstanceOf(MissingBundlePrerequisiteException.class);
+        }
+    }
+
+    @Test
+    public void testExportBundle_forkOnlyTag() throws Exception {
+        // tag of the fork is fetched into the archive next to upstream tags
+        tagForkedRepository();
+        ObjectId taggedCommit;
+        try (Git forkedRepo = Git.open(forkedRepositoryDir)) {
+            taggedCommit = forkedRepo.getRepository().resolve("refs/tags/fork-tag");
+        }
+
+        ArchivingBean bean = new ArchivingBean(configuration);
+        bean.createRepositoryMirror(userRepository);
+
+        ByteArrayOutputStream bundle = new ByteArrayOutputStream();
+        try (GitArchiveRepository archive = GitArchiveRepository.open(new File(archiveDir, "testorg/testrepo"))) {
+            archive.exportBundle("TomasHofman", bundle);
+            archive.verifyBundle("TomasHofman", new ByteArrayInputStream(bundle.toByteArray()));
+        }
+
+        // the tagged commit is part of the bundle, not its prerequisite
+        File restoredDir = tempDir.newFolder("restored");
+        try (Git restored = Git.cloneRepository().setURI(sourceRepositoryDir.getAbsolutePath())
+                .setDirectory(restoredDir).call()) {
+            fetchBundle(restored, bundle.toByteArray());
+            assertThat(restored.getRepository().resolve("refs/remotes/TomasHofman/feature")).isEqualTo(taggedCommit);
+        }
+    }
+
+    @Test
+    public void testVerifyBundle() throws Exception {
+        tagForkedRepository();
+
+        ArchivingBean bean = new ArchivingBean(configuration);
+        bean.createRepositoryMirror(userRepository);
+
+        File archiveRepositoryDir = new File(archiveDir, "testorg/testrepo");
+        try (Git archivedRepository = Git.open(archiveRepositoryDir);
+             GitArchiveRepository archive = GitArchiveRepository.open(archiveRepositoryDir)) {
+            org.eclipse.jgit.lib.Repository repository = archivedRepository.getRepository();
+            RevCommit taggedCommit = repository.parseCommit(repository.resolve("refs/tags/fork-tag"));
+
+            // bundle assuming the fork-only tag, which isn't present in clones of the upstream repository
+            ByteArrayOutputStream bundle = new ByteArrayOutputStream();
+            BundleWriter bundleWriter = new BundleWriter(repository);
+            for (Ref ref : archive.getRemoteBranches("TomasHofman")) {
+                bundleWriter.include(ref.getName(), ref.getObjectId());
+            }
+            bundleWriter.assume(taggedCommit);
+            bundleWriter.writeBundle(NullProgressMonitor.INSTANCE, bundle);
+            assertThatThrownBy(() -> archive.verifyBundle("TomasHofman",
+                    new ByteArrayInputStream(bundle.toByteArray())))
+                    .isInstanceOf(MissingBundlePrerequisiteException.class);
+
+            // bundle missing a branch
+            ByteArrayOutputStream incompleteBundle = new ByteArrayOutputStream();
+            bundleWriter = new BundleWriter(repository);
+            bundleWriter.include("refs/remotes/TomasHofman/master",
+                    repository.resolve("refs/remotes/TomasHofman/master"));
+            bundleWriter.writeBundle(NullProgressMonitor.INSTANCE, incompleteBundle);
+            assertThatThrownBy(() -> archive.verifyBundle("TomasHofman",
+                    new ByteArrayInputStream(incompleteBundle.toByteArray())))
+                    .isInstanceOf(IOException.class)
+                    .hasMessageContaining("refs/remotes/TomasHofman/feature");
+        }
+    }
+
+    private static void fetchBundle(Git git, byte[] bundle) throws Exception {
+        try (Transport transport = new TransportBundleStream(git.getRepository(), new URIish("bundle"),
+                new ByteArrayInputStream(bundle))) {
+            transport.fetch(NullProgressMonitor.INSTANCE,
+                    Collections.singletonList(new RefSpec("+refs/remotes/*:refs/remotes/*")));
+        }
+    }
+
+    /**
+     * Adds a commit and a tag to the "feature" branch of the forked repository.
+     */
+    private void tagForkedRepository() throws Exception {
+        try (Git forkedRepo = Git.open(forkedRepositoryDir)) {
+            Assert.assertTrue(new File(forkedRepositoryDir, "feature.txt").createNewFile());
+            forkedRepo.add().addFilepattern(".").call();
+            forkedRepo.commit().setMessage("Feature commit").call();
+            forkedRepo.tag().setName("fork-tag").setAnnotated(false).call();
+        }
+    }
+
+    private Repository createFork(String owner, String cloneUrl) {
+        User user = new User();
+        user.setLogin(owner);
+
+        Repository repository = new Repository();
+        repository.setCloneUrl(cloneUrl);
+        repository.setName("testrepo");
+        repository.setOwner(user);
+        repository.setSource(userRepository.getSource());
+        return repository;
+    }
+
     private RemoteConfig findRemoteConfigByName(List<? extends RemoteConfig> remotes, String name) {
         Optional<? extends RemoteConfig> first = remotes.stream().filter(r -> name.equals(r.getName())).findFirst();
         Assert.assertTrue(first.isPresent());
@@ -0,0 +1,111 @@
+package org.jboss.set.mjolnir.archive;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.ListBranchCommand;
+import org.eclipse.jgit.lib.BatchRefUpdate;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.transport.ReceiveCommand;
+import org.jboss.set.mjolnir.archive.util.GitRepositoryUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compares listing all remote branches and filtering them, to reading only the prefix of a single remote from the
+ * ref database, in a repository with 50k packed remote refs.
+ * <p>
+ * Not executed as part of the regular build, run with:
+ * <pre>
+ * mvn test -pl core -Dtest=GitArchiveRepositoryBenchmark
+ * </pre>
+ */
+public class GitArchiveRepositoryBenchmark {
+
+    private static final int REMOTES = 1000;
+    private static final int BRANCHES_PER_REMOTE = 50;
+    private static final int WARMUP_ITERATIONS = 5;
+    private static final int ITERATIONS = 20;
+    private static final String REMOTE_NAME = "user500";
+
+    @Rule
+    public TemporaryFolder tempDir = new TemporaryFolder();
+
+    private Git git;
+
+    @Before
+    public void setup() throws Exception {
+        git = GitRepositoryUtils.initializeRepository(tempDir.newFolder("archiveRepo"), true);
+        RevCommit commit = git.log().call().iterator().next();
+
+        BatchRefUpdate batchUpdate = git.getRepository().getRefDatabase().newBatchUpdate();
+        for (int i = 0; i < REMOTES; i++) {
+            for (int j = 0; j < BRANCHES_PER_REMOTE; j++) {
+                batchUpdate.addCommand(new ReceiveCommand(ObjectId.zeroId(), commit.getId(),
+                        Constants.R_REMOTES + "user" + i + "/branch" + j, ReceiveCommand.Type.CREATE));
+            }
+        }
+        try (RevWalk revWalk = new RevWalk(git.getRepository())) {
+            batchUpdate.execute(revWalk, NullProgressMonitor.INSTANCE);
+        }
+        git.gc().call();
+    }
+
+    @After
+    public void tearDown() {
+        git.close();
+    }
+
+    @Test
+    public void benchmarkRemoteBranchLookup() throws Exception {
+        GitArchiveRepository repository = new GitArchiveRepository(git);
+
+        Callable<List<Ref>> listAndFilter = () -> git.branchList()
+                .setListMode(ListBranchCommand.ListMode.REMOTE)
+                .call()
+                .stream()
+                .filter(ref -> ref.getName().startsWith(Constants.R_REMOTES + REMOTE_NAME + "/"))
+                .collect(Collectors.toList());
+        Callable<List<Ref>> prefixScan = () -> repository.getRemoteBranches(REMOTE_NAME);
+
+        assertThat(listAndFilter.call()).hasSize(BRANCHES_PER_REMOTE);
+        assertThat(prefixScan.call()).hasSize(BRANCHES_PER_REMOTE);
+
+        measure("branchList() + filter", listAndFilter);
+        measure("getRefsByPrefix()", prefixScan);
+    }
+
+    private static void measure(String name, Callable<List<Ref>> lookup) throws Exception {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            lookup.call();
+        }
+
+        com.sun.management.ThreadMXBean threadMXBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = threadMXBean.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            lookup.call();
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        System.out.printf("%-25s %8.3f ms/op %12d bytes allocated/op%n", name,
+                (double) elapsed / ITERATIONS / TimeUnit.MILLISECONDS.toNanos(1), allocated / ITERATIONS);
+    }
+}
@@ -0,0 +1,89 @@
+package org.jboss.set.mjolnir.archive;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.ListBranchCommand;
+import org.eclipse.jgit.lib.Ref;
+import org.jboss.set.mjolnir.archive.util.GitRepositoryUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class GitArchiveRepositoryTestCase {
+
+    @Rule
+    public TemporaryFolder tempDir = new TemporaryFolder();
+
+    private File archiveRepoDir;
+
+    @Before
+    public void setup() throws Exception {
+        // user's repository with some branches
+        File userRepoDir = tempDir.newFolder("userRepo");
+        try (Git userRepository = GitRepositoryUtils.initializeRepository(userRepoDir, true)) {
+            for (int i = 0; i < 10; i++) {
+                userRepository.branchCreate().setName("branch" + i).call();
+            }
+        }
+
+        archiveRepoDir = tempDir.newFolder("archiveRepo");
+        try (Git archiveRepository = GitRepositoryUtils.initializeRepository(archiveRepoDir, false)) {
+            GitRepositoryUtils.addRemoteAndFetch(archiveRepository, "user1", userRepoDir);
+            GitRepositoryUtils.addRemoteAndFetch(archiveRepository, "user10", userRepoDir);
+
+            // pack the refs, so that the deletion has to rewrite the packed-refs file
+            archiveRepository.gc().call();
+        }
+    }
+
+    @Test
+    public void testGetRemoteBranches() throws Exception {
+        List<Ref> refs = GitArchiveRepository.open(archiveRepoDir).getRemoteBranches("user1");
+
+        // branches of the user with a common prefix are not included
+        assertThat(refs).extracting("name")
+                .hasSize(11)
+                .contains("refs/remotes/user1/master", "refs/remotes/user1/branch0")
+                .allMatch(name -> ((String) name).startsWith("refs/remotes/user1/"));
+    }
+
+    @Test
+    public void testRemoveRemoteBranches() throws Exception {
+        GitArchiveRepository.open(archiveRepoDir).removeRemoteBranches("user1");
+
+        try (Git git = Git.open(archiveRepoDir)) {
+            List<Ref> refs = git.branchList().setListMode(ListBranchCommand.ListMode.REMOTE).call();
+            // branches of the user with a common prefix remain
+            assertThat(refs).extracting("name")
+                    .hasSize(11)
+                    .allMatch(name -> ((String) name).startsWith("refs/remotes/user10/"));
+            assertThat(git.getRepository().getConfig().getSubsections("remote")).contains("user1", "user10");
+        }
+    }
+
+    @Test
+    public void testRemoveRemoteBranchesAndPruneRemote() throws Exception {
+        GitArchiveRepository.open(archiveRepoDir).removeRemoteBranches("user1", true);
+
+        try (Git git = Git.open(archiveRepoDir)) {
+            List<Ref> refs = git.branchList().setListMode(ListBranchCommand.ListMode.REMOTE).call();
+            assertThat(refs).hasSize(11);
+            assertThat(git.getRepository().getConfig().getSubsections("remote")).containsOnly("user10");
+        }
+    }
+
+    @Test
+    public void testRemoveRemoteBranchesOfUnknownRemote() throws Exception {
+        GitArchiveRepository.open(archiveRepoDir).removeRemoteBranches("unknown", true);
+
+        try (Git git = Git.open(archiveRepoDir)) {
+            List<Ref> refs = git.branchList().setListMode(ListBranchCommand.ListMode.REMOTE).call();
+            assertThat(refs).hasSize(22);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package org.jboss.set.mjolnir.archive;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RepositoryLocksTestCase {
+
+    @Rule
+    public TemporaryFolder tempDir = new TemporaryFolder();
+
+    @Test
+    public void testSameDirectorySharesLock() throws Exception {
+        RepositoryLocks locks = new RepositoryLocks();
+        File root = tempDir.getRoot();
+
+        assertThat(locks.getLock(new File(root, "org/repo")))
+                .isSameAs(locks.getLock(new File(new File(root, "org/other/.."), "repo")));
+    }
+
+    @Test
+    public void testNumberOfLocksIsBounded() throws Exception {
+        RepositoryLocks locks = new RepositoryLocks();
+        File root = tempDir.getRoot();
+
+        Set<Lock> distinctLocks = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int i = 0; i < 1000; i++) {
+            distinctLocks.add(locks.getLock(new File(root, "org/repo" + i)));
+        }
+        assertThat(distinctLocks).hasSizeBetween(2, RepositoryLocks.STRIPES);
+    }
+}
@@ -7,7 +7,9 @@ import org.assertj.core.groups.Tuple;
 import org.jboss.set.mjolnir.archive.domain.GitHubOrganization;
 import org.jboss.set.mjolnir.archive.domain.GitHubTeam;
 import org.jboss.set.mjolnir.archive.domain.RegisteredUser;
+import org.jboss.set.mjolnir.archive.domain.UserLdapStatus;
 import org.jboss.set.mjolnir.archive.domain.UserRemoval;
+import org.jboss.set.mjolnir.archive.github.MembershipSnapshotCache;
 import org.jboss.set.mjolnir.archive.ldap.LdapClientBean;
 import org.jboss.set.mjolnir.archive.util.MockitoAnswers;
 import org.junit.After;
@@ -16,6 +18,7 @@ import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 
 import javax.inject.Inject;
@@ -24,6 +27,7 @@ import javax.persistence.EntityManager;
 import javax.persistence.TypedQuery;
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.sql.Timestamp;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
@@ -32,11 +36,14 @@ import java.util.Map;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
 import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
 import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
 import static com.github.tomakehurst.wiremock.client.WireMock.urlPathEqualTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.verify;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.jboss.set.mjolnir.archive.util.TestUtils.readSampleResponse;
 import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doReturn;
 
 @RunWith(CdiTestRunner.class)
@@ -54,11 +61,15 @@ public class UserDiscoveryBeanTestCase {
     @Inject
     private LdapClientBean ldapClientBeanMock;
 
+    @Inject
+    private MembershipSnapshotCache membershipSnapshotCache;
+
     @Before
     public void setup() throws IOException, URISyntaxException, NamingException {
         // clear data before each test
 
         clearData();
+        membershipSnapshotCache.invalidate();
 
 
         // stubs for GitHub API endpoints
@@ -167,6 +178,23 @@ public class UserDiscoveryBeanTestCase {
         assertThat(members.get("ben")).extracting("name").containsOnly("Team 2");
     }
 
+    @Test
+    public void testMembershipSnapshotIsReused() throws IOException {
+        userDiscoveryBean.getAllTeamsMembers();
+        userDiscoveryBean.getAllOrganizationsMembers();
+        userDiscoveryBean.getAllTeamsMembers();
+        userDiscoveryBean.getAllOrganizationsMembers();
+
+        verify(1, getRequestedFor(urlPathEqualTo("/api/v3/orgs/testorg/team/1/members")));
+        verify(1, getRequestedFor(urlPathEqualTo("/api/v3/orgs/testorg/members")));
+
+        // after invalidation, memberships are retrieved again
+        membershipSnapshotCache.invalidate();
+        HashMap<String, List<GitHubTeam>> members = userDiscoveryBean.getAllTeamsMembers();
+        assertThat(members.keySet()).containsOnly("bob", "ben");
+        verify(2, getRequestedFor(urlPathEqualTo("/api/v3/orgs/testorg/team/1/members")));
+    }
+
     @Test
     public void testGetUnregisteredTeamsMembers() throws IOException {
         createRegisteredUser(null, "bob", false);
@@ -185,6 +213,15 @@ public class UserDiscoveryBeanTestCase {
         assertThat(members.get("ben")).extracting("name").containsOnly("Team 2");
     }
 
+    @Test
+    public void testGetUnregisteredTeamsMembersDuplicateGitHubName() throws IOException {
+        createRegisteredUser(null, "bob", false);
+        createRegisteredUser(null, "Bob", false);
+
+        Map<String, List<GitHubTeam>> members = userDiscoveryBean.findUnregisteredTeamsMembers();
+        assertThat(members.keySet()).containsOnly("ben");
+    }
+
     @Test
     public void testUnregisteredOrganizationMembers() throws IOException {
         createRegisteredUser(null, "bob", false);
@@ -203,6 +240,15 @@ public class UserDiscoveryBeanTestCase {
         assertThat(members.get("ben")).extracting("name").containsOnly("testorg");
     }
 
+    @Test
+    public void testUnregisteredOrganizationMembersDuplicateGitHubName() throws IOException {
+        createRegisteredUser(null, "bob", false);
+        createRegisteredUser(null, "BOB", false);
+
+        Map<String, List<GitHubOrganization>> members = userDiscoveryBean.findUnregisteredOrganizationsMembers();
+        assertThat(members.keySet()).containsOnly("ben");
+    }
+
     @Test
     public void testFindAllUsersWithoutLdapAccount() throws IOException, NamingException {
         createRegisteredUser("bob", "Bob", false);
@@ -373,7 +419,7 @@ public class UserDiscoveryBeanTestCase {
     public void testCreateRemovalsForUsersWithoutLdapAccount() throws NamingException {
         createRegisteredUser("bob", "bob", false);
         createRegisteredUser("ben", "ben", false);
-        Mockito.when(ldapClientBeanMock.checkUsersExists(anyCollection()))
+        Mockito.when(ldapClientBeanMock.checkUsersExists(anyCollection(), eq(false)))
                 .thenAnswer(new MockitoAnswers.UsersNotInLdapAnswer());
 
         userDiscoveryBean.createRemovalsForUsersWithoutLdapAccount();
@@ -389,7 +435,7 @@ public class UserDiscoveryBeanTestCase {
     public void testCreateRemovalsForUsersWithoutLdapAccountCaseInsensitive() throws NamingException {
         createRegisteredUser("bob", "BOB", false);
         createRegisteredUser("ben", "BEN", false);
-        Mockito.when(ldapClientBeanMock.checkUsersExists(anyCollection()))
+        Mockito.when(ldapClientBeanMock.checkUsersExists(anyCollection(), eq(false)))
                 .thenAnswer(new MockitoAnswers.UsersNotInLdapAnswer());
 
         userDiscoveryBean.createRemovalsForUsersWithoutLdapAccount();
@@ -407,7 +453,7 @@ public class UserDiscoveryBeanTestCase {
         createRegisteredUser("ben", "ben", false);
         // create already existing removal
         createUserRemoval("bob");
-        Mockito.when(ldapClientBeanMock.checkUsersExists(anyCollection()))
+        Mockito.when(ldapClientBeanMock.checkUsersExists(anyCollection(), eq(false)))
                 .thenAnswer(new MockitoAnswers.UsersNotInLdapAnswer());
 
         userDiscoveryBean.createRemovalsForUsersWithoutLdapAccount();
@@ -421,6 +467,57 @@ public class UserDiscoveryBeanTestCase {
                 .containsOnly("ben", "bob");
     }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testIncrementalLdapScan() throws NamingException {
+        createRegisteredUser("bob", "bob", false);
+        createRegisteredUser("ben", "ben", false);
+        Mockito.when(ldapClientBeanMock.checkUsersExists(anyCollection(), eq(false)))
+                .thenAnswer(new MockitoAnswers.UsersInLdapAnswer());
+
+        // full scan checks all members and records their statuses
+        userDiscoveryBean.createRemovalsForUsersWithoutLdapAccount();
+
+        ArgumentCaptor<Collection<String>> captor = ArgumentCaptor.forClass(Collection.class);
+        Mockito.verify(ldapClientBeanMock).checkUsersExists(captor.capture(), eq(false));
+        assertThat(captor.getValue()).containsOnly("bob", "ben");
+        assertThat(em.createNamedQuery(UserLdapStatus.FIND_ALL, UserLdapStatus.class).getResultList())
+                .extracting("githubName", "ldapAccountActive")
+                .containsOnly(Tuple.tuple("bob", true), Tuple.tuple("ben", true));
+
+        // incremental scan checks only a slice of known active members (2 members in 7 slices -> 1 member)
+        Mockito.clearInvocations(ldapClientBeanMock);
+        userDiscoveryBean.createRemovalsForUsersWithoutLdapAccount(true);
+
+        Mockito.verify(ldapClientBeanMock).checkUsersExists(captor.capture(), eq(false));
+        assertThat(captor.getValue()).hasSize(1);
+        assertThat(em.createNamedQuery(UserRemoval.FIND_REMOVALS_TO_PROCESS, UserRemoval.class).getResultList())
+                .isEmpty();
+    }
+
+    @Test
+    public void testLdapStatusesOfFormerMembersAreDeleted() throws NamingException {
+        createRegisteredUser("bob", "bob", false);
+        createRegisteredUser("ben", "ben", false);
+        UserLdapStatus formerMember = new UserLdapStatus();
+        formerMember.setGithubName("formermember");
+        formerMember.setLdapUsername("formermember");
+        formerMember.setLdapAccountActive(true);
+        formerMember.setLastSeen(new Timestamp(System.currentTimeMillis() - 1000));
+        em.getTransaction().begin();
+        em.persist(formerMember);
+        em.getTransaction().commit();
+        Mockito.when(ldapClientBeanMock.checkUsersExists(anyCollection(), eq(false)))
+                .thenAnswer(new MockitoAnswers.UsersInLdapAnswer());
+
+        userDiscoveryBean.createRemovalsForUsersWithoutLdapAccount(true);
+
+        em.clear();
+        assertThat(em.createNamedQuery(UserLdapStatus.FIND_ALL, UserLdapStatus.class).getResultList())
+                .extracting("githubName")
+                .containsOnly("bob", "ben");
+    }
+
     @Test
     public void testFindInvalidGithubUsers() {
         createRegisteredUser("bob", "bob", false);
@@ -466,6 +563,7 @@ public class UserDiscoveryBeanTestCase {
     private void clearData() {
         em.getTransaction().begin();
         em.createQuery("delete from UserRemoval").executeUpdate();
+        em.createQuery("delete from UserLdapStatus").executeUpdate();
         em.createQuery("delete from RegisteredUser").executeUpdate();
         em.getTransaction().commit();
     }
@@ -0,0 +1,235 @@
+package org.jboss.set.mjolnir.archive.batch;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.jboss.set.mjolnir.archive.GitArchiveRepository;
+import org.jboss.set.mjolnir.archive.RepositoryLocks;
+import org.jboss.set.mjolnir.archive.SharedObjectStores;
+import org.jboss.set.mjolnir.archive.configuration.Configuration;
+import org.jboss.set.mjolnir.archive.util.GitRepositoryUtils;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.Lock;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ArchiveMaintenanceBatchletTest {
+
+    @Rule
+    public TemporaryFolder tempDir = new TemporaryFolder();
+
+    private File archiveRoot;
+    private File archiveRepoDir;
+    private File smallRepoDir;
+
+    @Before
+    public void setup() throws Exception {
+        archiveRoot = tempDir.newFolder("archive");
+
+        // user's repository, fetched into the archive repository after every commit, creating a new pack each time
+        File userRepoDir = tempDir.newFolder("userRepo");
+        archiveRepoDir = new File(archiveRoot, "upstream/repo1");
+        try (Git userRepository = GitRepositoryUtils.initializeRepository(userRepoDir, true);
+             Git archiveRepository = Git.init().setBare(true).setDirectory(archiveRepoDir).call()) {
+            GitRepositoryUtils.addRemoteAndFetch(archiveRepository, "user1", userRepoDir);
+            for (int i = 0; i < 4; i++) {
+                Assert.assertTrue(new File(userRepoDir, "file" + i).createNewFile());
+                userRepository.add().addFilepattern(".").call();
+                userRepository.commit().setMessage("Commit " + i).call();
+                archiveRepository.fetch().setRemote("user1").call();
+            }
+        }
+
+        // repository with a single pack, under the threshold
+        smallRepoDir = new File(archiveRoot, "upstream/repo2");
+        try (Git smallRepository = Git.init().setBare(true).setDirectory(smallRepoDir).call()) {
+            GitRepositoryUtils.addRemoteAndFetch(smallRepository, "user1", userRepoDir);
+        }
+    }
+
+    @Test
+    public void testMaintenance() {
+        assertThat(ArchiveMaintenanceBatchlet.countPacks(archiveRepoDir)).isGreaterThanOrEqualTo(3);
+        int smallRepoPacks = ArchiveMaintenanceBatchlet.countPacks(smallRepoDir);
+
+        ArchiveMaintenanceBatchlet batchlet = new ArchiveMaintenanceBatchlet();
+        batchlet.configuration = new Configuration.ConfigurationBuilder()
+                .setRepositoryArchiveRoot(archiveRoot.getAbsolutePath())
+                .setMaintenancePackThreshold(3)
+                .build();
+
+        ArchiveMaintenanceBatchlet.MaintenanceReport report = new ArchiveMaintenanceBatchlet.MaintenanceReport();
+        assertThat(batchlet.runMaintenance(report)).isTrue();
+
+        assertThat(ArchiveMaintenanceBatchlet.countPacks(archiveRepoDir)).isEqualTo(1);
+        assertThat(new File(archiveRepoDir, "objects/pack").list((dir, name) -> name.endsWith(".bitmap")))
+                .hasSize(1);
+        assertThat(ArchiveMaintenanceBatchlet.countPacks(smallRepoDir)).isEqualTo(smallRepoPacks);
+        assertThat(report.getSkipped()).isZero();
+    }
+
+    @Test
+    public void testTimeBudgetExceeded() {
+        ArchiveMaintenanceBatchlet batchlet = new ArchiveMaintenanceBatchlet() {
+            @Override
+            long currentTimeMillis() {
+                // the time budget is exceeded right after start
+                return System.currentTimeMillis() + 2 * 60 * 1000;
+            }
+        };
+        batchlet.configuration = new Configuration.ConfigurationBuilder()
+                .setRepositoryArchiveRoot(archiveRoot.getAbsolutePath())
+                .setMaintenancePackThreshold(3)
+                .setMaintenanceTimeBudget(1)
+                .build();
+
+        ArchiveMaintenanceBatchlet.MaintenanceReport report = new ArchiveMaintenanceBatchlet.MaintenanceReport();
+        assertThat(batchlet.runMaintenance(report)).isTrue();
+
+        assertThat(report.getSkipped()).isEqualTo(1);
+        assertThat(ArchiveMaintenanceBatchlet.countPacks(archiveRepoDir)).isGreaterThanOrEqualTo(3);
+    }
+
+    @Test
+    public void testStoreKeepsObjectsOfLinkedRepositories() throws Exception {
+        File sharedArchiveRoot = tempDir.newFolder("sharedArchive");
+        File upstreamDir = tempDir.newFolder("upstream");
+        GitRepositoryUtils.initializeRepository(upstreamDir, true).close();
+        ObjectId forkCommit = createFork(upstreamDir, tempDir.newFolder("fork1"));
+        createFork(upstreamDir, tempDir.newFolder("fork2"));
+
+        // two archive repositories linked to the same store
+        SharedObjectStores objectStores = new SharedObjectStores(sharedArchiveRoot);
+        File firstArchiveDir = new File(sharedArchiveRoot, "upstream/first");
+        File secondArchiveDir = new File(sharedArchiveRoot, "upstream/second");
+        GitArchiveRepository.clone(firstArchiveDir, upstreamDir.getAbsolutePath(), null).close();
+        File store = objectStores.moveToStore(firstArchiveDir);
+        GitArchiveRepository.cloneWithAlternates(secondArchiveDir, upstreamDir.getAbsolutePath(), null, true, store)
+                .close();
+
+        // the fork is archived in the first repository and consolidated, so the second repository, archiving the
+        // same fork later, borrows its objects from the store
+        try (GitArchiveRepository firstArchive = GitArchiveRepository.open(firstArchiveDir)) {
+            firstArchive.addRemote("user1", new File(tempDir.getRoot(), "fork1").getAbsolutePath());
+            firstArchive.fetch("user1", null);
+        }
+        objectStores.consolidate(firstArchiveDir, store);
+        try (GitArchiveRepository secondArchive = GitArchiveRepository.open(secondArchiveDir)) {
+            secondArchive.addRemote("user1", new File(tempDir.getRoot(), "fork1").getAbsolutePath());
+            secondArchive.fetch("user1", null);
+        }
+        assertThat(ArchiveMaintenanceBatchlet.countPacks(secondArchiveDir)).isZero();
+
+        // branches of the fork are removed from the first repository, which then archives another fork
+        try (GitArchiveRepository firstArchive = GitArchiveRepository.open(firstArchiveDir)) {
+            firstArchive.removeRemoteBranches("user1");
+            firstArchive.addRemote("user2", new File(tempDir.getRoot(), "fork2").getAbsolutePath());
+            firstArchive.fetch("user2", null);
+        }
+
+        // unreachable objects are pruned from the store right away
+        try (Git storeGit = Git.open(store)) {
+            StoredConfig config = storeGit.getRepository().getConfig();
+            config.setString(ConfigConstants.CONFIG_GC_SECTION, null, ConfigConstants.CONFIG_KEY_PRUNEEXPIRE, "now");
+            config.setString(ConfigConstants.CONFIG_GC_SECTION, null, ConfigConstants.CONFIG_KEY_PRUNEPACKEXPIRE,
+                    "now");
+            config.save();
+        }
+
+        ArchiveMaintenanceBatchlet batchlet = new ArchiveMaintenanceBatchlet();
+        batchlet.configuration = new Configuration.ConfigurationBuilder()
+                .setRepositoryArchiveRoot(sharedArchiveRoot.getAbsolutePath())
+                .setMaintenancePackThreshold(1)
+                .build();
+
+        ArchiveMaintenanceBatchlet.MaintenanceReport report = new ArchiveMaintenanceBatchlet.MaintenanceReport();
+        assertThat(batchlet.runMaintenance(report)).isTrue();
+        assertThat(ArchiveMaintenanceBatchlet.countPacks(firstArchiveDir)).isZero();
+
+        // the second repository still has all objects of the fork
+        try (Git secondArchive = Git.open(secondArchiveDir);
+             RevWalk walk = new RevWalk(secondArchive.getRepository())) {
+            RevCommit commit = walk.parseCommit(forkCommit);
+            assertThat(secondArchive.getRepository().getObjectDatabase().has(commit.getTree())).isTrue();
+            assertThat(secondArchive.log().add(commit).call()).hasSize(2);
+        }
+    }
+
+    @Test
+    public void testStoreSkippedWhileLinkedRepositoryIsInUse() throws Exception {
+        File sharedArchiveRoot = tempDir.newFolder("sharedArchive");
+        File upstreamDir = tempDir.newFolder("upstream");
+        GitRepositoryUtils.initializeRepository(upstreamDir, true).close();
+
+        SharedObjectStores objectStores = new SharedObjectStores(sharedArchiveRoot);
+        File firstArchiveDir = new File(sharedArchiveRoot, "upstream/first");
+        File secondArchiveDir = new File(sharedArchiveRoot, "upstream/second");
+        GitArchiveRepository.clone(firstArchiveDir, upstreamDir.getAbsolutePath(), null).close();
+        File store = objectStores.moveToStore(firstArchiveDir);
+        GitArchiveRepository.cloneWithAlternates(secondArchiveDir, upstreamDir.getAbsolutePath(), null, true, store)
+                .close();
+        int storePacks = ArchiveMaintenanceBatchlet.countPacks(store);
+
+        ArchiveMaintenanceBatchlet batchlet = new ArchiveMaintenanceBatchlet();
+        batchlet.configuration = new Configuration.ConfigurationBuilder()
+                .setRepositoryArchiveRoot(sharedArchiveRoot.getAbsolutePath())
+                .setMaintenancePackThreshold(1)
+                .build();
+
+        // another thread is archiving a fork into the second repository
+        Lock lock = RepositoryLocks.archiveRepositoryLocks().getLock(secondArchiveDir);
+        // the maintenance would wait for the object stores lock if the directories happened to share a lock
+        Assume.assumeFalse(lock == RepositoryLocks.archiveRepositoryLocks().getLock(objectStores.getStoresRoot()));
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        Thread archivingThread = new Thread(() -> {
+            lock.lock();
+            try {
+                locked.countDown();
+                done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                lock.unlock();
+            }
+        });
+        archivingThread.start();
+        try {
+            locked.await();
+            ArchiveMaintenanceBatchlet.MaintenanceReport report = new ArchiveMaintenanceBatchlet.MaintenanceReport();
+            assertThat(batchlet.runMaintenance(report)).isTrue();
+            assertThat(report.getBusyStores()).containsExactly(store);
+            assertThat(ArchiveMaintenanceBatchlet.countPacks(store)).isEqualTo(storePacks);
+        } finally {
+            done.countDown();
+            archivingThread.join();
+        }
+
+        // the store is collected once the repository is no longer in use
+        ArchiveMaintenanceBatchlet.MaintenanceReport report = new ArchiveMaintenanceBatchlet.MaintenanceReport();
+        assertThat(batchlet.runMaintenance(report)).isTrue();
+        assertThat(report.getBusyStores()).isEmpty();
+        assertThat(report.getProcessed()).isEqualTo(1);
+    }
+
+    private static ObjectId createFork(File upstreamDir, File forkDir) throws Exception {
+        try (Git fork = Git.cloneRepository().setURI(upstreamDir.getAbsolutePath()).setDirectory(forkDir).call()) {
+            Files.write(new File(forkDir, "fork.txt").toPath(), forkDir.getName().getBytes(StandardCharsets.UTF_8));
+            fork.add().addFilepattern(".").call();
+            return fork.commit().setMessage("Fork commit").call();
+        }
+    }
+}
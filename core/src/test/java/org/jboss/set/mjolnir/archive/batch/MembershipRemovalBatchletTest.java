@@ -5,14 +5,19 @@ import com.github.tomakehurst.wiremock.junit.WireMockRule;
 import org.apache.deltaspike.testcontrol.api.junit.CdiTestRunner;
 import org.assertj.core.groups.Tuple;
 import org.eclipse.egit.github.core.Repository;
+import org.eclipse.egit.github.core.User;
+import org.jboss.set.mjolnir.archive.ArchiveStorageStats;
 import org.jboss.set.mjolnir.archive.ArchivingBean;
 import org.jboss.set.mjolnir.archive.domain.GitHubOrganization;
 import org.jboss.set.mjolnir.archive.domain.RegisteredUser;
+import org.jboss.set.mjolnir.archive.configuration.Configuration;
 import org.jboss.set.mjolnir.archive.domain.RemovalStatus;
+import org.jboss.set.mjolnir.archive.domain.RepositoryForkStatus;
 import org.jboss.set.mjolnir.archive.domain.UnsubscribeStatus;
 import org.jboss.set.mjolnir.archive.domain.UnsubscribedUserFromOrg;
 import org.jboss.set.mjolnir.archive.domain.UnsubscribedUserFromTeam;
 import org.jboss.set.mjolnir.archive.domain.UserRemoval;
+import org.jboss.set.mjolnir.archive.util.ParallelTasks;
 import org.jboss.set.mjolnir.archive.util.TestUtils;
 import org.junit.Before;
 import org.junit.Rule;
@@ -24,13 +29,21 @@ import org.mockito.Mockito;
 import javax.inject.Inject;
 import javax.persistence.EntityManager;
 import javax.persistence.TypedQuery;
+import java.io.IOException;
 import java.sql.Date;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.deleteRequestedFor;
 import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
 import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathEqualTo;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
@@ -241,6 +254,10 @@ public class MembershipRemovalBatchletTest {
                 .containsOnly("https://github.com/TomasHofman/aphrodite.git",
                         "https://github.com/TomasHofman/activemq-artemis.git");
 
+        // verify that organization forks were only retrieved once, even though multiple removals were processed
+        WireMock.verify(1, getRequestedFor(urlPathEqualTo("/api/v3/repos/testorg/aphrodite/forks")));
+        WireMock.verify(1, getRequestedFor(urlPathEqualTo("/api/v3/repos/testorg/activemq-artemis/forks")));
+
         // verify that user was removed from GitHub teams
         WireMock.verify(getRequestedFor(urlEqualTo("/api/v3/teams/1/members/TomasHofman")));
         WireMock.verify(getRequestedFor(urlEqualTo("/api/v3/teams/2/members/TomasHofman")));
@@ -296,4 +313,124 @@ public class MembershipRemovalBatchletTest {
         
     }
 
+    @Test
+    public void testProcessRemovalInTransaction() throws Exception {
+        TestUtils.setupGitHubApiStubs();
+
+        UserRemoval removal = em.createQuery("select r from UserRemoval r where ldapUsername = 'lvydra'", UserRemoval.class)
+                .getSingleResult();
+
+        // the removal is processed in its own transaction, its status and log are stored
+        RemovalStatus removalStatus = batchlet.processRemovalInTransaction(removal.getId());
+        assertThat(removalStatus).isEqualTo(RemovalStatus.UNKNOWN_USER);
+        assertThat(em.getTransaction().isActive()).isFalse();
+
+        em.clear();
+        UserRemoval processedRemoval = em.find(UserRemoval.class, removal.getId());
+        assertThat(processedRemoval.getStatus()).isEqualTo(RemovalStatus.UNKNOWN_USER);
+        assertThat(processedRemoval.getLogs())
+                .extracting("message")
+                .contains("Ignoring removal request for user lvydra");
+    }
+
+    @Test
+    public void testRemovalExceedingTimeBudgetFails() throws Exception {
+        batchlet.configuration = new Configuration.ConfigurationBuilder()
+                .setUnsubscribeUsers(true)
+                .setRemovalTimeBudget(1)
+                .build();
+        TestUtils.setupGitHubApiStubs();
+
+        // the first repository takes longer than the budget, the second one isn't archived at all
+        Mockito.when(archivingBeanMock.createRepositoryMirror(Mockito.any(Repository.class))).then(invocation -> {
+            batchlet.clock = Clock.offset(Clock.systemUTC(), Duration.ofMinutes(2));
+            return null;
+        });
+
+        UserRemoval removal = em.createQuery("select r from UserRemoval r where ldapUsername = 'thofman'", UserRemoval.class)
+                .getSingleResult();
+
+        em.getTransaction().begin();
+        RemovalStatus removalStatus = batchlet.processRemovalSafely(removal);
+        em.getTransaction().commit();
+
+        assertThat(removalStatus).isEqualTo(RemovalStatus.FAILED);
+        verify(archivingBeanMock, times(1)).createRepositoryMirror(Mockito.any(Repository.class));
+
+        em.clear();
+        UserRemoval processedRemoval = em.find(UserRemoval.class, removal.getId());
+        assertThat(processedRemoval.getStatus()).isEqualTo(RemovalStatus.FAILED);
+        assertThat(processedRemoval.getForks())
+                .extracting("status")
+                .containsOnly(RepositoryForkStatus.ARCHIVED, RepositoryForkStatus.ARCHIVAL_FAILED);
+
+        // memberships are not removed after the budget was exceeded
+        WireMock.verify(0, deleteRequestedFor(urlEqualTo("/api/v3/orgs/testorg/teams/team-1/memberships/TomasHofman")));
+    }
+
+    @Test
+    public void testArchiveRepositoriesConcurrently() throws Exception {
+        batchlet.configuration = new Configuration.ConfigurationBuilder()
+                .setArchivingThreads(2)
+                .build();
+        batchlet.parallelTasks = new ParallelTasks(batchlet.configuration);
+
+        // two forks of the same parent repository, archiving of the second one fails
+        Repository source = createRepository("testorg", "aphrodite", null);
+        Repository fork = createRepository("TomasHofman", "aphrodite", source);
+        Repository failingFork = createRepository("lvydra", "aphrodite", source);
+
+        Set<String> threadNames = ConcurrentHashMap.newKeySet();
+        Mockito.when(archivingBeanMock.createRepositoryMirror(Mockito.any(Repository.class))).then(invocation -> {
+            threadNames.add(Thread.currentThread().getName());
+            Repository repository = invocation.getArgument(0);
+            if (repository == failingFork) {
+                throw new IOException("Simulated failure");
+            }
+            return new ArchiveStorageStats(10, 1000);
+        });
+
+        UserRemoval removal = em.createQuery("select r from UserRemoval r where ldapUsername = 'thofman'", UserRemoval.class)
+                .getSingleResult();
+
+        em.getTransaction().begin();
+        try {
+            assertThatThrownBy(() -> batchlet.archiveRepositories(removal, Arrays.asList(fork, failingFork), Long.MAX_VALUE))
+                    .isInstanceOf(IOException.class)
+                    .hasMessage("Simulated failure");
+        } finally {
+            batchlet.parallelTasks.shutdown();
+        }
+        em.getTransaction().commit();
+
+        // both repositories were archived on the shared pool, despite the failure
+        verify(archivingBeanMock, times(2)).createRepositoryMirror(Mockito.any(Repository.class));
+        assertThat(threadNames).allMatch(name -> name.startsWith("archiving-"));
+
+        em.clear();
+        UserRemoval processedRemoval = em.find(UserRemoval.class, removal.getId());
+        assertThat(processedRemoval.getStatus()).isEqualTo(RemovalStatus.FAILED);
+        assertThat(processedRemoval.getForks())
+                .extracting("repositoryName", "status", "objectCount")
+                .containsOnly(
+                        Tuple.tuple("TomasHofman/aphrodite", RepositoryForkStatus.ARCHIVED, 10L),
+                        Tuple.tuple("lvydra/aphrodite", RepositoryForkStatus.ARCHIVAL_FAILED, null)
+                );
+        assertThat(processedRemoval.getLogs())
+                .extracting("message")
+                .contains("Couldn't archive repository: https://github.com/lvydra/aphrodite.git");
+    }
+
+    private static Repository createRepository(String owner, String name, Repository source) {
+        User user = new User();
+        user.setLogin(owner);
+
+        Repository repository = new Repository();
+        repository.setOwner(user);
+        repository.setName(name);
+        repository.setCloneUrl("https://github.com/" + owner + "/" + name + ".git");
+        repository.setSource(source);
+        return repository;
+    }
+
 }
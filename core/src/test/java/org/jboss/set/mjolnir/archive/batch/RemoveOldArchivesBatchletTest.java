@@ -193,6 +193,23 @@ public class RemoveOldArchivesBatchletTest {
         );
     }
 
+    /**
+     * Checks that forks of the same source repository are always processed by the same partition.
+     */
+    @Test
+    public void testLoadRepositoryForks_partitioned() {
+        Map<String, List<RepositoryFork>> firstPartition = batchlet.loadRepositoryForks(0, 2);
+        Map<String, List<RepositoryFork>> secondPartition = batchlet.loadRepositoryForks(1, 2);
+
+        // both fork groups belong to upstream/repo1, so they must end up in the same partition
+        Map<String, List<RepositoryFork>> nonEmptyPartition = firstPartition.isEmpty() ? secondPartition : firstPartition;
+        Map<String, List<RepositoryFork>> emptyPartition = firstPartition.isEmpty() ? firstPartition : secondPartition;
+
+        assertThat(nonEmptyPartition.keySet()).containsOnly("user1/repo1", "user2/repo1");
+        assertThat(nonEmptyPartition.get("user2/repo1")).hasSize(3);
+        assertThat(emptyPartition).isEmpty();
+    }
+
     /**
      * Checks that the updateRecordStatus() method correctly sets deleted timestamp.
      */
@@ -0,0 +1,95 @@
+package org.jboss.set.mjolnir.archive.batch;
+
+import org.apache.deltaspike.testcontrol.api.junit.CdiTestRunner;
+import org.jboss.set.mjolnir.archive.domain.RemovalStatus;
+import org.jboss.set.mjolnir.archive.domain.UserRemoval;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import javax.inject.Inject;
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(CdiTestRunner.class)
+public class UserRemovalReaderTest {
+
+    @Inject
+    private EntityManager em;
+
+    private final List<Long> startedRemovalIds = new ArrayList<>();
+
+    @Before
+    public void setup() {
+        em.getTransaction().begin();
+
+        // clear tables before each test
+        em.createNativeQuery("delete from repository_forks").executeUpdate();
+        em.createNativeQuery("delete from unsubscribed_users_from_orgs").executeUpdate();
+        em.createNativeQuery("delete from unsubscribed_users_from_teams").executeUpdate();
+        em.createNativeQuery("delete from user_removals").executeUpdate();
+        em.clear();
+
+        // create sample removals, four started and one completed
+        startedRemovalIds.clear();
+        for (int i = 0; i < 5; i++) {
+            UserRemoval userRemoval = new UserRemoval();
+            userRemoval.setLdapUsername("user" + i);
+            userRemoval.setStatus(i < 4 ? RemovalStatus.STARTED : RemovalStatus.COMPLETED);
+            em.persist(userRemoval);
+            em.flush();
+            if (i < 4) {
+                startedRemovalIds.add(userRemoval.getId());
+            }
+        }
+
+        em.getTransaction().commit();
+    }
+
+    @Test
+    public void testReadStartedRemovals() {
+        UserRemovalReader reader = new UserRemovalReader(em, "0", "1");
+        reader.open(null);
+
+        assertThat(readAll(reader)).containsExactlyElementsOf(startedRemovalIds);
+        assertThat(reader.checkpointInfo()).isEqualTo(startedRemovalIds.get(3));
+    }
+
+    @Test
+    public void testPartitionsDontOverlap() {
+        UserRemovalReader first = new UserRemovalReader(em, "0", "2");
+        UserRemovalReader second = new UserRemovalReader(em, "1", "2");
+        first.open(null);
+        second.open(null);
+
+        List<Long> firstIds = readAll(first);
+        List<Long> secondIds = readAll(second);
+
+        assertThat(firstIds).doesNotContainAnyElementsOf(secondIds);
+        assertThat(firstIds).hasSize(2);
+        assertThat(secondIds).hasSize(2);
+        List<Long> allIds = new ArrayList<>(firstIds);
+        allIds.addAll(secondIds);
+        assertThat(allIds).containsExactlyInAnyOrderElementsOf(startedRemovalIds);
+    }
+
+    @Test
+    public void testResumeFromCheckpoint() {
+        UserRemovalReader reader = new UserRemovalReader(em, "0", "1");
+        reader.open(startedRemovalIds.get(1));
+
+        assertThat(readAll(reader)).containsExactly(startedRemovalIds.get(2), startedRemovalIds.get(3));
+    }
+
+    private static List<Long> readAll(UserRemovalReader reader) {
+        List<Long> ids = new ArrayList<>();
+        Object item;
+        while ((item = reader.readItem()) != null) {
+            ids.add((Long) item);
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,73 @@
+package org.jboss.set.mjolnir.archive.export;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class LocalDirectoryExportStoreTestCase {
+
+    @Rule
+    public TemporaryFolder tempDir = new TemporaryFolder();
+
+    private File exportDir;
+    private LocalDirectoryExportStore store;
+
+    @Before
+    public void setup() throws Exception {
+        exportDir = tempDir.newFolder("export");
+        store = new LocalDirectoryExportStore(exportDir.toPath());
+    }
+
+    @Test
+    public void testStore() throws Exception {
+        String location = store.store("testorg/testrepo/user-1.bundle",
+                out -> out.write("content".getBytes(StandardCharsets.UTF_8)));
+
+        Path exported = Paths.get(URI.create(location));
+        assertThat(exported).isEqualTo(exportDir.toPath().resolve("testorg/testrepo/user-1.bundle"));
+        assertThat(exported).hasContent("content");
+        assertThat(exported.resolveSibling("user-1.bundle.part")).doesNotExist();
+    }
+
+    @Test
+    public void testRead() throws Exception {
+        store.store("testorg/testrepo/user-1.bundle", out -> out.write("content".getBytes(StandardCharsets.UTF_8)));
+
+        try (InputStream in = store.read("testorg/testrepo/user-1.bundle")) {
+            assertThat(in).hasContent("content");
+        }
+        assertThatThrownBy(() -> store.read("testorg/testrepo/user-2.bundle")).isInstanceOf(IOException.class);
+    }
+
+    @Test
+    public void testFailedWriteLeavesNoFile() throws Exception {
+        assertThatThrownBy(() -> store.store("testorg/testrepo/user-1.bundle", out -> {
+            out.write("partial".getBytes(StandardCharsets.UTF_8));
+            throw new IOException("Connection lost");
+        })).isInstanceOf(IOException.class);
+
+        try (Stream<Path> files = Files.list(exportDir.toPath().resolve("testorg/testrepo"))) {
+            assertThat(files).isEmpty();
+        }
+    }
+
+    @Test
+    public void testKeyOutsideOfDirectoryIsRejected() {
+        assertThatThrownBy(() -> store.store("../user-1.bundle", out -> {}))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,152 @@
+package org.jboss.set.mjolnir.archive.github;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import com.github.tomakehurst.wiremock.stubbing.Scenario;
+import org.eclipse.egit.github.core.User;
+import org.eclipse.egit.github.core.service.UserService;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.verify;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class GitHubRateLimiterTestCase {
+
+    private static final long NOW = 1_600_000_000_000L;
+
+    @Rule
+    public WireMockRule wireMockRule = new WireMockRule(8089);
+
+    @Test
+    public void testNoDelayWithUnknownBudget() throws Exception {
+        TestRateLimiter limiter = new TestRateLimiter();
+
+        limiter.acquire();
+        limiter.acquire();
+
+        assertThat(limiter.sleeps).isEmpty();
+        assertThat(limiter.getRequestCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void testNoDelayWithSufficientBudget() throws Exception {
+        TestRateLimiter limiter = new TestRateLimiter();
+        limiter.update("5000", "4000", resetIn(TimeUnit.MINUTES.toSeconds(30)), null);
+
+        limiter.acquire();
+
+        assertThat(limiter.sleeps).isEmpty();
+        assertThat(limiter.getRemaining()).isEqualTo(3999);
+    }
+
+    @Test
+    public void testPacingWithLowBudget() throws Exception {
+        TestRateLimiter limiter = new TestRateLimiter();
+        // 100 requests remaining for next 100 seconds -> one request per second
+        limiter.update("5000", "100", resetIn(100), null);
+
+        limiter.acquire();
+        limiter.acquire();
+        limiter.acquire();
+
+        // first request is sent immediately, subsequent ones are spread over time
+        assertThat(limiter.sleeps).hasSize(2);
+        assertThat(limiter.sleeps.get(0)).isEqualTo(1000);
+        assertThat(limiter.sleeps.get(1)).isGreaterThan(1000);
+        assertThat(limiter.getDelayedRequestCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void testWaitForResetWhenExhausted() throws Exception {
+        TestRateLimiter limiter = new TestRateLimiter();
+        limiter.update("5000", "0", resetIn(120), null);
+
+        assertThat(limiter.isRateLimited()).isTrue();
+        limiter.acquire();
+
+        assertThat(limiter.sleeps).containsExactly(TimeUnit.SECONDS.toMillis(120));
+
+        // after the reset, the budget is restored
+        limiter.now += TimeUnit.SECONDS.toMillis(120);
+        limiter.acquire();
+        assertThat(limiter.sleeps).hasSize(1);
+        assertThat(limiter.getRemaining()).isEqualTo(4999);
+    }
+
+    @Test
+    public void testRetryAfter() throws Exception {
+        TestRateLimiter limiter = new TestRateLimiter();
+        limiter.update("5000", "4000", resetIn(1000), "30");
+
+        limiter.acquire();
+
+        assertThat(limiter.sleeps).containsExactly(TimeUnit.SECONDS.toMillis(30));
+    }
+
+    /**
+     * Verifies that the client repeats a request refused because of a secondary rate limit.
+     */
+    @Test
+    public void testClientRetriesRateLimitedRequest() throws Exception {
+        stubFor(get(urlEqualTo("/api/v3/users/TomasHofman"))
+                .inScenario("rate-limit")
+                .whenScenarioStateIs(Scenario.STARTED)
+                .willReturn(aResponse()
+                        .withStatus(429)
+                        .withHeader("Retry-After", "1")
+                        .withHeader("Content-Type", "application/json")
+                        .withBody("{\"message\": \"You have exceeded a secondary rate limit.\"}"))
+                .willSetStateTo("allowed"));
+        stubFor(get(urlEqualTo("/api/v3/users/TomasHofman"))
+                .inScenario("rate-limit")
+                .whenScenarioStateIs("allowed")
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("X-RateLimit-Limit", "5000")
+                        .withHeader("X-RateLimit-Remaining", "4321")
+                        .withHeader("Content-Type", "application/json")
+                        .withBody("{\"login\": \"TomasHofman\", \"id\": 123}")));
+
+        GitHubRateLimiter limiter = new GitHubRateLimiter();
+        ExtendedGitHubClient client = new ExtendedGitHubClient("localhost", 8089, "http", 1000, 1000, limiter);
+
+        User user = new UserService(client).getUser("TomasHofman");
+
+        assertThat(user.getLogin()).isEqualTo("TomasHofman");
+        verify(2, getRequestedFor(urlEqualTo("/api/v3/users/TomasHofman")));
+        assertThat(limiter.getLimit()).isEqualTo(5000);
+        assertThat(limiter.getRemaining()).isEqualTo(4321);
+    }
+
+    private static String resetIn(long seconds) {
+        return String.valueOf(TimeUnit.MILLISECONDS.toSeconds(NOW) + seconds);
+    }
+
+    /**
+     * Rate limiter with a fake clock, which records sleeps instead of performing them.
+     */
+    private static class TestRateLimiter extends GitHubRateLimiter {
+
+        private long now = NOW;
+        private final List<Long> sleeps = new ArrayList<>();
+
+        @Override
+        long currentTimeMillis() {
+            return now;
+        }
+
+        @Override
+        void sleep(long millis) {
+            sleeps.add(millis);
+        }
+    }
+}
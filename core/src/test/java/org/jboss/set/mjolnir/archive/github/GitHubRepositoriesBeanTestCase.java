@@ -4,6 +4,8 @@ import com.github.tomakehurst.wiremock.junit.WireMockRule;
 import org.eclipse.egit.github.core.Repository;
 import org.eclipse.egit.github.core.client.GitHubClient;
 import org.eclipse.egit.github.core.service.RepositoryService;
+import org.jboss.set.mjolnir.archive.configuration.Configuration;
+import org.jboss.set.mjolnir.archive.util.ParallelTasks;
 import org.jboss.set.mjolnir.archive.util.TestUtils;
 import org.junit.Before;
 import org.junit.Rule;
@@ -73,4 +75,48 @@ public class GitHubRepositoriesBeanTestCase {
                         tuple("TomasHofman", "activemq-artemis"));
     }
 
+    @Test
+    public void testCreateForksIndex() throws Exception {
+        GitHubRepositoriesBean bean = new GitHubRepositoriesBean(client);
+
+        RepositoryForksIndex index = bean.createForksIndex("testorg");
+        assertEquals("testorg", index.getOrganization());
+        assertEquals(3, index.size());
+
+        // owner login is matched case-insensitively
+        assertThat(index.getUserForks("tomashofman"))
+                .extracting("owner.login", "name", "source.name")
+                .containsOnly(
+                        tuple("TomasHofman", "aphrodite", "aphrodite"),
+                        tuple("TomasHofman", "activemq-artemis", "activemq-artemis"));
+        assertThat(index.getUserForks("Belaran"))
+                .extracting("owner.login", "name")
+                .containsOnly(tuple("Belaran", "aphrodite"));
+        assertThat(index.getUserForks("nobody")).isEmpty();
+    }
+
+    @Test
+    public void testCreateForksIndexConcurrently() throws Exception {
+        ParallelTasks parallelTasks = new ParallelTasks(new Configuration.ConfigurationBuilder()
+                .setGitHubFetchThreads(4)
+                .build());
+        GitHubRepositoriesBean bean = new GitHubRepositoriesBean(client, parallelTasks);
+
+        RepositoryForksIndex index;
+        try {
+            index = bean.createForksIndex("testorg");
+        } finally {
+            parallelTasks.shutdown();
+        }
+        assertEquals(3, index.size());
+        assertThat(index.getUserForks("TomasHofman"))
+                .extracting("owner.login", "name", "source.name")
+                .containsOnly(
+                        tuple("TomasHofman", "aphrodite", "aphrodite"),
+                        tuple("TomasHofman", "activemq-artemis", "activemq-artemis"));
+        assertThat(index.getUserForks("otheruser"))
+                .extracting("owner.login", "name", "source.name")
+                .containsOnly(tuple("otheruser", "activemq-artemis", "activemq-artemis"));
+    }
+
 }
@@ -0,0 +1,131 @@
+package org.jboss.set.mjolnir.archive.github;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import org.eclipse.egit.github.core.User;
+import org.jboss.set.mjolnir.archive.util.TestUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.absent;
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathEqualTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.verify;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class GitHubResponseCacheTestCase {
+
+    private static final String ETAG = "\"0123456789abcdef\"";
+    private static final Duration MAX_AGE = Duration.ofDays(30);
+
+    @Rule
+    public WireMockRule wireMockRule = new WireMockRule(8089);
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private ExtendedGitHubClient client;
+
+    @Before
+    public void setup() throws Exception {
+        stubFor(get(urlPathEqualTo("/api/v3/orgs/testorg/team/1/members"))
+                .withHeader("If-None-Match", absent())
+                .willReturn(aResponse()
+                        .withStatus(200)
+                        .withHeader("Content-Type", "application/json")
+                        .withHeader("ETag", ETAG)
+                        .withBody(TestUtils.readSampleResponse("responses/gh-orgs-team-1-members-response.json"))));
+        stubFor(get(urlPathEqualTo("/api/v3/orgs/testorg/team/1/members"))
+                .withHeader("If-None-Match", equalTo(ETAG))
+                .willReturn(aResponse()
+                        .withStatus(304)
+                        .withHeader("ETag", ETAG)));
+
+        client = new ExtendedGitHubClient("localhost", 8089, "http", 1000, 1000, new GitHubRateLimiter());
+        client.setResponseCache(new GitHubResponseCache(temporaryFolder.getRoot().toPath(), MAX_AGE));
+    }
+
+    @Test
+    public void testNotModifiedResponseServedFromCache() throws Exception {
+        ExtendedTeamService teamService = new ExtendedTeamService(client);
+
+        List<User> members = teamService.getMembers("testorg", 1);
+        assertThat(members).isNotEmpty();
+        verify(1, getRequestedFor(urlPathEqualTo("/api/v3/orgs/testorg/team/1/members"))
+                .withHeader("If-None-Match", absent()));
+
+        List<User> cachedMembers = teamService.getMembers("testorg", 1);
+        verify(1, getRequestedFor(urlPathEqualTo("/api/v3/orgs/testorg/team/1/members"))
+                .withHeader("If-None-Match", equalTo(ETAG)));
+        assertThat(cachedMembers)
+                .extracting("login")
+                .containsExactlyElementsOf(members.stream().map(User::getLogin).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testCacheSurvivesClientRecreation() throws Exception {
+        new ExtendedTeamService(client).getMembers("testorg", 1);
+
+        // new client using the same cache directory
+        ExtendedGitHubClient newClient = new ExtendedGitHubClient("localhost", 8089, "http", 1000, 1000,
+                new GitHubRateLimiter());
+        newClient.setResponseCache(new GitHubResponseCache(temporaryFolder.getRoot().toPath(), MAX_AGE));
+        List<User> members = new ExtendedTeamService(newClient).getMembers("testorg", 1);
+
+        assertThat(members).isNotEmpty();
+        verify(1, getRequestedFor(urlPathEqualTo("/api/v3/orgs/testorg/team/1/members"))
+                .withHeader("If-None-Match", equalTo(ETAG)));
+    }
+
+    @Test
+    public void testUnusedEntriesAreEvicted() throws Exception {
+        Path directory = temporaryFolder.newFolder("eviction").toPath();
+        GitHubResponseCache cache = new GitHubResponseCache(directory, MAX_AGE);
+        cache.put("/used", ETAG, null, "[]");
+        cache.put("/unused", ETAG, null, "[]");
+
+        // both entries are older than the maximum age, but one of them is used again
+        expireEntries(directory);
+        assertThat(cache.get("/used")).isNotNull();
+
+        assertThat(cache.evictExpired()).isEqualTo(1);
+        assertThat(cache.get("/used")).isNotNull();
+        assertThat(cache.get("/unused")).isNull();
+    }
+
+    @Test
+    public void testExpiredEntriesAreEvictedWhenCacheIsOpened() throws Exception {
+        Path directory = temporaryFolder.newFolder("reopen").toPath();
+        new GitHubResponseCache(directory, MAX_AGE).put("/unused", ETAG, null, "[]");
+        expireEntries(directory);
+
+        GitHubResponseCache cache = new GitHubResponseCache(directory, MAX_AGE);
+
+        assertThat(cache.get("/unused")).isNull();
+        try (Stream<Path> files = Files.list(directory)) {
+            assertThat(files.count()).isZero();
+        }
+    }
+
+    private static void expireEntries(Path directory) throws Exception {
+        FileTime expired = FileTime.fromMillis(System.currentTimeMillis() - MAX_AGE.plusDays(1).toMillis());
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.collect(Collectors.toList())) {
+                Files.setLastModifiedTime(file, expired);
+            }
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package org.jboss.set.mjolnir.archive.github;
+
+import org.eclipse.egit.github.core.Repository;
+import org.eclipse.egit.github.core.User;
+import org.junit.Test;
+
+import java.util.Locale;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RepositoryForksIndexTestCase {
+
+    @Test
+    public void testLoginIsMatchedIndependentlyOfDefaultLocale() {
+        Locale defaultLocale = Locale.getDefault();
+        try {
+            // in Turkish, "I".toLowerCase() is a dotless "ı"
+            Locale.setDefault(new Locale("tr", "TR"));
+
+            User owner = new User();
+            owner.setLogin("ISSUER");
+            Repository fork = new Repository();
+            fork.setName("repo");
+            fork.setOwner(owner);
+
+            RepositoryForksIndex index = new RepositoryForksIndex("org");
+            index.addFork(fork);
+
+            assertThat(index.getUserForks("issuer")).containsExactly(fork);
+            assertThat(index.getUserForks("Issuer")).containsExactly(fork);
+        } finally {
+            Locale.setDefault(defaultLocale);
+        }
+    }
+}
@@ -1,23 +1,32 @@
 package org.jboss.set.mjolnir.archive.ldap;
 
 import org.jboss.set.mjolnir.archive.configuration.Configuration;
+import org.jboss.set.mjolnir.archive.util.ParallelTasks;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 
 import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
 import javax.naming.directory.Attributes;
 import javax.naming.directory.BasicAttribute;
 import javax.naming.directory.BasicAttributes;
 import javax.naming.directory.SearchResult;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.entry;
 
 public class LdapClientBeanTestCase {
 
@@ -25,7 +34,8 @@ public class LdapClientBeanTestCase {
             .setLdapSearchContext("context")
             .build();
     private final LdapClient ldapClientMock = Mockito.mock(LdapClient.class);
-    private final LdapClientBean ldapClientBean = new LdapClientBean(configuration, ldapClientMock);
+    private final LdapClientBean ldapClientBean =
+            new LdapClientBean(configuration, ldapClientMock, new ParallelTasks(configuration));
 
     private final ArgumentCaptor<String> baseCaptor = ArgumentCaptor.forClass(String.class);
     private final ArgumentCaptor<String> filterCaptor = ArgumentCaptor.forClass(String.class);
@@ -82,6 +92,235 @@ public class LdapClientBeanTestCase {
                 .contains("(|(uid=tom)(rhatPriorUid=tom))");
     }
 
+    @Test
+    public void testForEachUser() throws Exception {
+        Mockito.when(ldapClientMock.searchPaged(Mockito.anyString(), Mockito.anyString(), Mockito.anyInt()))
+                .thenReturn(new ResultEnumeration(Arrays.asList(
+                        createSearchResult("alice"),
+                        createSearchResult("jim", "james")).iterator()));
+
+        List<List<String>> users = new ArrayList<>();
+        ldapClientBean.forEachUser(users::add);
+
+        assertThat(users).containsExactly(Collections.singletonList("alice"), Arrays.asList("jim", "james"));
+        Mockito.verify(ldapClientMock).searchPaged("context", "(uid=*)", 500);
+    }
+
+    @Test
+    public void testCheckUsersExistsInSnapshot() throws Exception {
+        Configuration configuration = new Configuration.ConfigurationBuilder()
+                .setLdapSearchContext("context")
+                .setLdapExistenceCheckStrategy(LdapExistenceCheckStrategy.SNAPSHOT)
+                .build();
+        LdapClientBean ldapClientBean = new LdapClientBean(configuration, ldapClientMock,
+                new ParallelTasks(configuration));
+        Mockito.when(ldapClientMock.searchPaged(Mockito.anyString(), Mockito.anyString(), Mockito.anyInt()))
+                .thenAnswer(invocation -> new ResultEnumeration(Arrays.asList(
+                        createSearchResult("alice"),
+                        createSearchResult("bob", "robert"),
+                        createSearchResult("jim", "james")).iterator()));
+
+        Map<String, Boolean> existingUsersMap = ldapClientBean.checkUsersExists(Arrays.asList("alice", "james", "tom"));
+        assertThat(existingUsersMap)
+                .containsOnly(
+                        entry("alice", true),
+                        entry("jim", true),
+                        entry("james", true),
+                        entry("tom", false));
+
+        // the snapshot is reused by subsequent checks, no filter queries are sent
+        assertThat(ldapClientBean.checkUsersExists(Collections.singletonList("robert")))
+                .containsOnly(entry("bob", true), entry("robert", true));
+        Mockito.verify(ldapClientMock, Mockito.times(1))
+                .searchPaged(Mockito.anyString(), Mockito.anyString(), Mockito.anyInt());
+        Mockito.verify(ldapClientMock, Mockito.never()).search(Mockito.anyString(), Mockito.anyString());
+    }
+
+    @Test
+    public void testReleasedSnapshotIsDownloadedAgain() throws Exception {
+        Configuration configuration = new Configuration.ConfigurationBuilder()
+                .setLdapSearchContext("context")
+                .setLdapExistenceCheckStrategy(LdapExistenceCheckStrategy.SNAPSHOT)
+                .build();
+        LdapClientBean ldapClientBean = new LdapClientBean(configuration, ldapClientMock,
+                new ParallelTasks(configuration));
+        Mockito.when(ldapClientMock.searchPaged(Mockito.anyString(), Mockito.anyString(), Mockito.anyInt()))
+                .thenAnswer(invocation -> new ResultEnumeration(
+                        Collections.singletonList(createSearchResult("alice")).iterator()));
+
+        assertThat(ldapClientBean.checkUsersExists(Collections.singletonList("alice")))
+                .containsOnly(entry("alice", true));
+        ldapClientBean.releaseUidSnapshot();
+        assertThat(ldapClientBean.checkUsersExists(Collections.singletonList("alice")))
+                .containsOnly(entry("alice", true));
+
+        Mockito.verify(ldapClientMock, Mockito.times(2))
+                .searchPaged(Mockito.anyString(), Mockito.anyString(), Mockito.anyInt());
+    }
+
+    @Test
+    public void testEmptySnapshotIsRejected() throws Exception {
+        Configuration configuration = new Configuration.ConfigurationBuilder()
+                .setLdapSearchContext("context")
+                .setLdapExistenceCheckStrategy(LdapExistenceCheckStrategy.SNAPSHOT)
+                .build();
+        LdapClientBean ldapClientBean = new LdapClientBean(configuration, ldapClientMock,
+                new ParallelTasks(configuration));
+        Mockito.when(ldapClientMock.searchPaged(Mockito.anyString(), Mockito.anyString(), Mockito.anyInt()))
+                .thenAnswer(invocation -> new ResultEnumeration(Collections.emptyIterator()));
+
+        assertThatThrownBy(() -> ldapClientBean.checkUsersExists(Collections.singletonList("alice")))
+                .isInstanceOf(NamingException.class);
+    }
+
+    @Test
+    public void testTruncatedSnapshotIsRejected() throws Exception {
+        Configuration configuration = new Configuration.ConfigurationBuilder()
+                .setLdapSearchContext("context")
+                .setLdapExistenceCheckStrategy(LdapExistenceCheckStrategy.SNAPSHOT)
+                .build();
+        LdapClientBean ldapClientBean = new LdapClientBean(configuration, ldapClientMock,
+                new ParallelTasks(configuration));
+        Mockito.when(ldapClientMock.searchPaged(Mockito.anyString(), Mockito.anyString(), Mockito.anyInt()))
+                .thenAnswer(invocation -> new ResultEnumeration(Arrays.asList(
+                        createSearchResult("alice"),
+                        createSearchResult("bob"),
+                        createSearchResult("jim")).iterator()));
+        assertThat(ldapClientBean.checkUsersExists(Collections.singletonList("bob"), false))
+                .containsOnly(entry("bob", true));
+
+        // the paged search returned only a part of the directory
+        Mockito.when(ldapClientMock.searchPaged(Mockito.anyString(), Mockito.anyString(), Mockito.anyInt()))
+                .thenAnswer(invocation -> new ResultEnumeration(
+                        Collections.singletonList(createSearchResult("alice")).iterator()));
+
+        assertThatThrownBy(() -> ldapClientBean.checkUsersExists(Collections.singletonList("bob"), false))
+                .isInstanceOf(NamingException.class);
+    }
+
+    @Test
+    public void testSnapshotBelowConfiguredMinimumIsRejected() throws Exception {
+        Configuration configuration = new Configuration.ConfigurationBuilder()
+                .setLdapSearchContext("context")
+                .setLdapExistenceCheckStrategy(LdapExistenceCheckStrategy.SNAPSHOT)
+                .setLdapSnapshotMinSize(3)
+                .build();
+        LdapClientBean ldapClientBean = new LdapClientBean(configuration, ldapClientMock,
+                new ParallelTasks(configuration));
+        // first snapshot after a restart, there is no previous snapshot to compare with
+        Mockito.when(ldapClientMock.searchPaged(Mockito.anyString(), Mockito.anyString(), Mockito.anyInt()))
+                .thenAnswer(invocation -> new ResultEnumeration(Arrays.asList(
+                        createSearchResult("alice"),
+                        createSearchResult("bob")).iterator()));
+
+        assertThatThrownBy(() -> ldapClientBean.checkUsersExists(Collections.singletonList("alice"), false))
+                .isInstanceOf(NamingException.class);
+    }
+
+    @Test
+    public void testSnapshotSmallerThanCheckedUsersIsRejected() throws Exception {
+        Configuration configuration = new Configuration.ConfigurationBuilder()
+                .setLdapSearchContext("context")
+                .setLdapExistenceCheckStrategy(LdapExistenceCheckStrategy.SNAPSHOT)
+                .build();
+        LdapClientBean ldapClientBean = new LdapClientBean(configuration, ldapClientMock,
+                new ParallelTasks(configuration));
+        Mockito.when(ldapClientMock.searchPaged(Mockito.anyString(), Mockito.anyString(), Mockito.anyInt()))
+                .thenAnswer(invocation -> new ResultEnumeration(
+                        Collections.singletonList(createSearchResult("alice")).iterator()));
+
+        assertThatThrownBy(() -> ldapClientBean.checkUsersExists(Arrays.asList("alice", "bob", "jim", "tom"), false))
+                .isInstanceOf(NamingException.class);
+    }
+
+    @Test
+    public void testLookupResultsAreCached() throws Exception {
+        Mockito.when(ldapClientMock.search(Mockito.anyString(), Mockito.anyString()))
+                .thenAnswer(invocation -> new ResultEnumeration(
+                        Collections.singletonList(createSearchResult("jim", "james")).iterator()));
+
+        assertThat(ldapClientBean.findAllUserUids("jim")).containsExactly("jim", "james");
+        // prior uid of a cached user and repeated queries are served from the cache
+        assertThat(ldapClientBean.checkUserExists("james")).isTrue();
+        assertThat(ldapClientBean.checkUsersExists(Arrays.asList("jim", "james")))
+                .containsEntry("jim", true)
+                .containsEntry("james", true);
+
+        Mockito.verify(ldapClientMock, Mockito.times(1)).search(Mockito.anyString(), Mockito.anyString());
+        assertThat(ldapClientBean.getResultCache().getHitCount()).isEqualTo(3);
+        assertThat(ldapClientBean.getResultCache().getMissCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testUncachedCheckIgnoresCachedResults() throws Exception {
+        Mockito.when(ldapClientMock.search(Mockito.anyString(), Mockito.anyString()))
+                .thenAnswer(invocation -> new ResultEnumeration(
+                        Collections.singletonList(createSearchResult("jim", "james")).iterator()));
+        assertThat(ldapClientBean.checkUserExists("jim")).isTrue();
+
+        // the user was removed from the directory in the meantime
+        Mockito.when(ldapClientMock.search(Mockito.anyString(), Mockito.anyString()))
+                .thenAnswer(invocation -> new ResultEnumeration(Collections.emptyIterator()));
+
+        assertThat(ldapClientBean.checkUsersExists(Collections.singletonList("jim")))
+                .containsOnly(entry("jim", true), entry("james", true));
+        assertThat(ldapClientBean.checkUsersExists(Collections.singletonList("jim"), false))
+                .containsOnly(entry("jim", false));
+        Mockito.verify(ldapClientMock, Mockito.times(2)).search(Mockito.anyString(), Mockito.anyString());
+    }
+
+    @Test
+    public void testCheckUsersExistsConcurrently() throws Exception {
+        Configuration configuration = new Configuration.ConfigurationBuilder()
+                .setLdapSearchContext("context")
+                .setLdapGroupingFactor(2)
+                .setLdapParallelQueries(3)
+                .build();
+        ParallelTasks parallelTasks = new ParallelTasks(configuration);
+        LdapClientBean ldapClientBean = new LdapClientBean(configuration, ldapClientMock, parallelTasks);
+
+        // only users from following list exist, "jim" has prior uid "james"
+        Map<String, SearchResult> existingUsers = new HashMap<>();
+        existingUsers.put("alice", createSearchResult("alice"));
+        existingUsers.put("bob", createSearchResult("bob"));
+        existingUsers.put("jim", createSearchResult("jim", "james"));
+        existingUsers.put("james", existingUsers.get("jim"));
+        Set<String> threadNames = Collections.synchronizedSet(new HashSet<>());
+        Mockito.when(ldapClientMock.search(Mockito.anyString(), Mockito.anyString())).thenAnswer(invocation -> {
+            threadNames.add(Thread.currentThread().getName());
+            String filter = invocation.getArgument(1);
+            List<SearchResult> results = existingUsers.entrySet().stream()
+                    .filter(entry -> filter.contains("(uid=" + entry.getKey() + ")"))
+                    .map(Map.Entry::getValue)
+                    .distinct()
+                    .collect(Collectors.toList());
+            return new ResultEnumeration(results.iterator());
+        });
+
+        Map<String, Boolean> existingUsersMap;
+        try {
+            existingUsersMap = ldapClientBean.checkUsersExists(Arrays.asList("alice", "tom", "bob", "james", "jim"));
+        } finally {
+            parallelTasks.shutdown();
+        }
+
+        assertThat(existingUsersMap)
+                .containsEntry("alice", true)
+                .containsEntry("bob", true)
+                .containsEntry("jim", true)
+                .containsEntry("james", true)
+                .containsEntry("tom", false);
+        Mockito.verify(ldapClientMock, Mockito.times(3)).search(Mockito.anyString(), Mockito.anyString());
+        assertThat(threadNames).allMatch(name -> name.startsWith("ldap-query-"));
+    }
+
+    @Test
+    public void testEvictIdleContexts() {
+        ldapClientBean.evictIdleContexts();
+
+        Mockito.verify(ldapClientMock).evictIdleContexts();
+    }
+
     private SearchResult createSearchResult(String uid, String... priorUids) {
         Attributes attrs = new BasicAttributes();
         attrs.put("uid", uid);
@@ -0,0 +1,107 @@
+package org.jboss.set.mjolnir.archive.ldap;
+
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import javax.naming.NamingEnumeration;
+import javax.naming.directory.BasicAttributes;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+import javax.naming.ldap.Control;
+import javax.naming.ldap.LdapContext;
+import javax.naming.ldap.PagedResultsResponseControl;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+
+public class LdapClientTestCase {
+
+    private final LdapContext context = Mockito.mock(LdapContext.class);
+    private final LdapContextPool pool = new LdapContextPool(() -> context, 1, TimeUnit.MINUTES.toMillis(5));
+    private final LdapClient client = new LdapClient(pool);
+
+    @Test
+    public void testSearchPaged() throws Exception {
+        Mockito.when(context.search(anyString(), anyString(), any(SearchControls.class)))
+                .thenReturn(page("alice", "bob"), page("jim"));
+        Mockito.when(context.getResponseControls())
+                .thenReturn(responseControls(new byte[]{1}), responseControls(new byte[0]));
+
+        NamingEnumeration<SearchResult> results = client.searchPaged("context", "(uid=*)", 2);
+
+        // only the first page is requested until it's consumed
+        Mockito.verify(context, Mockito.times(1)).search(anyString(), anyString(), any(SearchControls.class));
+
+        List<String> names = new ArrayList<>();
+        while (results.hasMore()) {
+            names.add(results.next().getName());
+        }
+        assertThat(names).containsExactly("alice", "bob", "jim");
+        Mockito.verify(context, Mockito.times(2)).search(anyString(), anyString(), any(SearchControls.class));
+
+        // paged results control is set for each page and removed before the context is returned to the pool
+        ArgumentCaptor<Control[]> controlsCaptor = ArgumentCaptor.forClass(Control[].class);
+        Mockito.verify(context, Mockito.times(3)).setRequestControls(controlsCaptor.capture());
+        assertThat(controlsCaptor.getAllValues().get(0)[0].getID()).isEqualTo(Control.PAGED_RESULTS_CONTROL_ID);
+        assertThat(controlsCaptor.getAllValues().get(2)).isNull();
+        assertThat(pool.getIdleCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testClosePagedResultsReleasesContext() throws Exception {
+        Mockito.when(context.search(anyString(), anyString(), any(SearchControls.class)))
+                .thenReturn(page("alice", "bob"));
+
+        NamingEnumeration<SearchResult> results = client.searchPaged("context", "(uid=*)", 2);
+        results.next();
+        results.close();
+
+        assertThat(pool.getIdleCount()).isEqualTo(1);
+        Mockito.verify(context).setRequestControls(null);
+    }
+
+    private static Control[] responseControls(byte[] cookie) {
+        PagedResultsResponseControl control = Mockito.mock(PagedResultsResponseControl.class);
+        Mockito.when(control.getCookie()).thenReturn(cookie);
+        return new Control[]{control};
+    }
+
+    private static NamingEnumeration<SearchResult> page(String... uids) {
+        List<SearchResult> results = new ArrayList<>();
+        for (String uid : uids) {
+            results.add(new SearchResult(uid, null, new BasicAttributes("uid", uid)));
+        }
+        Iterator<SearchResult> iterator = results.iterator();
+        return new NamingEnumeration<SearchResult>() {
+            @Override
+            public SearchResult next() {
+                return iterator.next();
+            }
+
+            @Override
+            public boolean hasMore() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public void close() {
+            }
+
+            @Override
+            public boolean hasMoreElements() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public SearchResult nextElement() {
+                return iterator.next();
+            }
+        };
+    }
+}
@@ -0,0 +1,156 @@
+package org.jboss.set.mjolnir.archive.ldap;
+
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import javax.naming.CommunicationException;
+import javax.naming.NamingEnumeration;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.SearchControls;
+import javax.naming.directory.SearchResult;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+
+public class LdapContextPoolTestCase {
+
+    private static final long IDLE_TIMEOUT = TimeUnit.MINUTES.toMillis(5);
+
+    private final List<DirContext> createdContexts = new ArrayList<>();
+    private final TestContextPool pool = new TestContextPool(2);
+
+    @Test
+    public void testContextIsReused() throws Exception {
+        DirContext first = pool.borrow();
+        pool.release(first);
+        DirContext second = pool.borrow();
+
+        assertThat(second).isSameAs(first);
+        assertThat(createdContexts).hasSize(1);
+    }
+
+    @Test
+    public void testIdleContextIsEvicted() throws Exception {
+        DirContext context = pool.borrow();
+        pool.release(context);
+
+        pool.now += IDLE_TIMEOUT + 1;
+        pool.evictIdleContexts();
+
+        assertThat(pool.getIdleCount()).isZero();
+        Mockito.verify(context).close();
+        assertThat(pool.borrow()).isNotSameAs(context);
+    }
+
+    @Test
+    public void testBrokenContextIsReplaced() throws Exception {
+        DirContext context = pool.borrow();
+        pool.release(context);
+        Mockito.when(context.getAttributes(eq(""), any(String[].class)))
+                .thenThrow(new CommunicationException("Connection closed"));
+
+        // recently used context is handed out without a health check
+        pool.now += 1000;
+        assertThat(pool.borrow()).isSameAs(context);
+        pool.release(context);
+
+        // context idle for a while is checked first
+        pool.now += LdapContextPool.HEALTH_CHECK_INTERVAL + 1;
+        DirContext replacement = pool.borrow();
+
+        assertThat(replacement).isNotSameAs(context);
+        Mockito.verify(context).close();
+        assertThat(createdContexts).hasSize(2);
+    }
+
+    @Test
+    public void testPoolSizeIsLimited() throws Exception {
+        DirContext first = pool.borrow();
+        pool.borrow();
+
+        Thread releasingThread = new Thread(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            pool.release(first);
+        });
+        releasingThread.start();
+
+        // blocks until the first context is released
+        assertThat(pool.borrow()).isSameAs(first);
+        releasingThread.join();
+        assertThat(createdContexts).hasSize(2);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testSearchResultsReleaseContext() throws Exception {
+        LdapClient client = new LdapClient(pool);
+
+        DirContext context = pool.borrow();
+        pool.release(context);
+        NamingEnumeration<SearchResult> results = Mockito.mock(NamingEnumeration.class);
+        Mockito.when(results.hasMore()).thenReturn(true, false);
+        Mockito.when(results.next()).thenReturn(Mockito.mock(SearchResult.class));
+        Mockito.when(context.search(anyString(), anyString(), any(SearchControls.class))).thenReturn(results);
+
+        NamingEnumeration<SearchResult> enumeration = client.search("context", "(uid=tom)");
+        assertThat(pool.getIdleCount()).isZero();
+
+        // the context stays borrowed while results are being read
+        assertThat(enumeration.hasMore()).isTrue();
+        enumeration.next();
+        assertThat(pool.getIdleCount()).isZero();
+
+        assertThat(enumeration.hasMore()).isFalse();
+        assertThat(pool.getIdleCount()).isEqualTo(1);
+
+        enumeration.close();
+        assertThat(pool.getIdleCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testFailedSearchInvalidatesContext() throws Exception {
+        LdapClient client = new LdapClient(pool);
+
+        DirContext context = pool.borrow();
+        pool.release(context);
+        Mockito.when(context.search(anyString(), anyString(), any(SearchControls.class)))
+                .thenThrow(new CommunicationException("Connection reset"));
+
+        assertThatThrownBy(() -> client.search("context", "(uid=tom)"))
+                .isInstanceOf(CommunicationException.class);
+
+        assertThat(pool.getIdleCount()).isZero();
+        Mockito.verify(context).close();
+    }
+
+    /**
+     * Pool creating mock contexts, with a fake clock.
+     */
+    private class TestContextPool extends LdapContextPool {
+
+        private long now = 1_600_000_000_000L;
+
+        TestContextPool(int maxSize) {
+            super(() -> {
+                DirContext context = Mockito.mock(DirContext.class);
+                createdContexts.add(context);
+                return context;
+            }, maxSize, IDLE_TIMEOUT);
+        }
+
+        @Override
+        long currentTimeMillis() {
+            return now;
+        }
+    }
+}
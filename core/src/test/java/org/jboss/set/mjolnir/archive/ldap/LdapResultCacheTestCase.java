@@ -0,0 +1,83 @@
+package org.jboss.set.mjolnir.archive.ldap;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LdapResultCacheTestCase {
+
+    private static final long POSITIVE_TTL = 60_000;
+    private static final long NEGATIVE_TTL = 10_000;
+
+    @Test
+    public void testExistingUserCachedUnderAllUids() {
+        TestResultCache cache = new TestResultCache(10);
+        cache.putExisting(Arrays.asList("jim", "james", "jimmy"));
+
+        assertThat(cache.get("james").isExists()).isTrue();
+        assertThat(cache.get("jimmy").getUids()).containsExactly("jim", "james", "jimmy");
+        assertThat(cache.get("tom")).isNull();
+
+        assertThat(cache.getHitCount()).isEqualTo(2);
+        assertThat(cache.getMissCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testPositiveAndNegativeTtl() {
+        TestResultCache cache = new TestResultCache(10);
+        cache.putExisting(Collections.singletonList("alice"));
+        cache.putMissing("tom");
+
+        cache.now += NEGATIVE_TTL;
+        assertThat(cache.get("alice")).isNotNull();
+        assertThat(cache.get("tom")).isNull();
+
+        cache.now += POSITIVE_TTL;
+        assertThat(cache.get("alice")).isNull();
+        assertThat(cache.size()).isZero();
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEntryEvicted() {
+        TestResultCache cache = new TestResultCache(2);
+        cache.putMissing("alice");
+        cache.putMissing("bob");
+        cache.get("alice");
+        cache.putMissing("tom");
+
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.get("alice")).isNotNull();
+        assertThat(cache.get("bob")).isNull();
+        assertThat(cache.get("tom")).isNotNull();
+    }
+
+    @Test
+    public void testDisabledCache() {
+        TestResultCache cache = new TestResultCache(0);
+        cache.putExisting(Collections.singletonList("alice"));
+        cache.putMissing("tom");
+
+        assertThat(cache.size()).isZero();
+        assertThat(cache.get("alice")).isNull();
+    }
+
+    /**
+     * Cache with a fake clock.
+     */
+    private static class TestResultCache extends LdapResultCache {
+
+        private long now = 1_600_000_000_000L;
+
+        TestResultCache(int maxSize) {
+            super(maxSize, POSITIVE_TTL, NEGATIVE_TTL);
+        }
+
+        @Override
+        long currentTimeMillis() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package org.jboss.set.mjolnir.archive.mail.report;
+
+import org.apache.deltaspike.testcontrol.api.junit.CdiTestRunner;
+import org.jboss.set.mjolnir.archive.domain.ArchiveMaintenanceRun;
+import org.jboss.set.mjolnir.archive.domain.RepositoryFork;
+import org.jboss.set.mjolnir.archive.domain.RepositoryForkStatus;
+import org.jboss.set.mjolnir.archive.domain.UserRemoval;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.select.Elements;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import javax.inject.Inject;
+import javax.persistence.EntityManager;
+import java.sql.Timestamp;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(CdiTestRunner.class)
+public class ArchiveStorageReportTableTestCase {
+
+    @Inject
+    private EntityManager em;
+
+    @Inject
+    private ArchiveStorageReportTable archiveStorageReportTable;
+
+    @Before
+    public void setup() {
+        em.getTransaction().begin();
+
+        // clear tables to avoid object accumulation
+        em.createNativeQuery("delete from repository_forks;").executeUpdate();
+        em.createNativeQuery("delete from user_removals;").executeUpdate();
+        em.createNativeQuery("delete from archive_maintenance_runs;").executeUpdate();
+
+        UserRemoval userRemoval = new UserRemoval();
+        userRemoval.setLdapUsername("thofman");
+        em.persist(userRemoval);
+
+        // more users than the table shows
+        for (int i = 0; i < ArchiveStorageReportTable.ROW_LIMIT + 2; i++) {
+            RepositoryFork fork = new RepositoryFork();
+            fork.setUserRemoval(userRemoval);
+            fork.setRepositoryName("user" + i + "/repo");
+            fork.setSourceRepositoryName("upstream/repo");
+            fork.setStatus(RepositoryForkStatus.ARCHIVED);
+            fork.setObjectCount(10L * i);
+            fork.setUniqueBytes(1024L * i);
+            em.persist(fork);
+        }
+
+        // older run is not shown
+        em.persist(maintenanceRun("2020-01-05 06:00:00", 3, 0, 1024L * 1024, true));
+        em.persist(maintenanceRun("2020-01-12 06:00:00", 5, 2, 3L * 1024 * 1024, false));
+
+        em.getTransaction().commit();
+    }
+
+    @Test
+    public void testComposeTable() {
+        Document doc = Jsoup.parse(archiveStorageReportTable.composeTable());
+
+        Elements tables = doc.select("table");
+        assertThat(tables).hasSize(3);
+
+        Elements userTable = tables.get(0).select("tr");
+        assertThat(userTable.select("th").text()).isEqualTo("GH Name Forks Objects Unique Size (uncompressed)");
+        assertThat(userTable).hasSize(ArchiveStorageReportTable.ROW_LIMIT + 1);
+        // largest first
+        assertThat(userTable.get(1).select("td").text()).isEqualTo("user11 1 110 11.0 KiB");
+
+        Elements repositoryTable = tables.get(1).select("tr");
+        assertThat(repositoryTable.select("th").text()).isEqualTo("Repository Forks Objects Unique Size (uncompressed)");
+        assertThat(repositoryTable).hasSize(2);
+        assertThat(repositoryTable.get(1).select("td").text()).isEqualTo("upstream/repo 12 660 66.0 KiB");
+
+        Elements maintenanceTable = tables.get(2).select("tr");
+        assertThat(maintenanceTable.select("th").text()).isEqualTo("Started Processed Skipped Reclaimed Status");
+        assertThat(maintenanceTable).hasSize(2);
+        assertThat(maintenanceTable.get(1).select("td").text())
+                .isEqualTo("2020-01-12 06:00:00 5 2 3.0 MiB Failures, see the log");
+    }
+
+    private static ArchiveMaintenanceRun maintenanceRun(String started, int processed, int skipped,
+                                                        long reclaimedBytes, boolean successful) {
+        ArchiveMaintenanceRun run = new ArchiveMaintenanceRun();
+        run.setStarted(Timestamp.valueOf(started));
+        run.setFinished(Timestamp.valueOf(started));
+        run.setProcessed(processed);
+        run.setSkipped(skipped);
+        run.setReclaimedBytes(reclaimedBytes);
+        run.setSuccessful(successful);
+        return run;
+    }
+}
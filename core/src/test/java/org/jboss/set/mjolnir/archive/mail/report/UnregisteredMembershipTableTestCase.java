@@ -3,6 +3,7 @@ package org.jboss.set.mjolnir.archive.mail.report;
 import com.github.tomakehurst.wiremock.junit.WireMockRule;
 import org.apache.deltaspike.testcontrol.api.junit.CdiTestRunner;
 import org.jboss.set.mjolnir.archive.domain.RegisteredUser;
+import org.jboss.set.mjolnir.archive.github.MembershipSnapshotCache;
 import org.jboss.set.mjolnir.archive.util.TestUtils;
 import org.junit.Before;
 import org.junit.Rule;
@@ -28,8 +29,12 @@ public class UnregisteredMembershipTableTestCase {
     @Inject
     private UnregisteredMembersReportTable unregisteredMembersReportTable;
 
+    @Inject
+    private MembershipSnapshotCache membershipSnapshotCache;
+
     @Before
     public void setup() throws IOException, URISyntaxException {
+        membershipSnapshotCache.invalidate();
         TestUtils.setupGitHubApiStubs();
 
         em.getTransaction().begin();
@@ -3,6 +3,7 @@ package org.jboss.set.mjolnir.archive.mail.report;
 import com.github.tomakehurst.wiremock.junit.WireMockRule;
 import org.apache.deltaspike.testcontrol.api.junit.CdiTestRunner;
 import org.jboss.set.mjolnir.archive.domain.RegisteredUser;
+import org.jboss.set.mjolnir.archive.github.MembershipSnapshotCache;
 import org.jboss.set.mjolnir.archive.ldap.LdapClientBean;
 import org.jboss.set.mjolnir.archive.UserDiscoveryBean;
 import org.jboss.set.mjolnir.archive.util.MockitoAnswers;
@@ -45,9 +46,13 @@ public class UsersWithoutLdapReportTableTestCase {
     @Inject
     private UsersWithoutLdapReportTable usersWithoutLdapReportTable;
 
+    @Inject
+    private MembershipSnapshotCache membershipSnapshotCache;
+
     @Before
     public void setup() throws IOException, URISyntaxException, NamingException {
         TestUtils.setupGitHubApiStubs();
+        membershipSnapshotCache.invalidate();
 
         Mockito.reset(ldapClientBeanMock);
         Mockito.when(ldapClientBeanMock.checkUsersExists(anyCollection()))
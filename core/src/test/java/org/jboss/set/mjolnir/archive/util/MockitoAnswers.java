@@ -21,4 +21,17 @@ public class MockitoAnswers {
         }
     }
 
+    /**
+     * Mock answer to `LdapDiscoveryBean#checkUsersExists()` calls, reporting all users as existing.
+     */
+    public static class UsersInLdapAnswer implements Answer<Object> {
+        @Override
+        public Object answer(InvocationOnMock invocationOnMock) {
+            Collection<String> ldapUsernames = invocationOnMock.getArgument(0);
+            HashMap<String, Boolean> result = new HashMap<>();
+            ldapUsernames.forEach(username -> result.put(username, true));
+            return result;
+        }
+    }
+
 }
@@ -0,0 +1,100 @@
+package org.jboss.set.mjolnir.archive.util;
+
+import org.jboss.set.mjolnir.archive.configuration.Configuration;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ParallelTasksTestCase {
+
+    private final ParallelTasks parallelTasks = new ParallelTasks(new Configuration.ConfigurationBuilder()
+            .setArchivingThreads(4)
+            .setGitHubFetchThreads(2)
+            .setLdapParallelQueries(1)
+            .build());
+
+    @After
+    public void tearDown() {
+        parallelTasks.shutdown();
+    }
+
+    @Test
+    public void testResultsAreOrdered() throws Exception {
+        List<Integer> inputs = IntStream.range(0, 20).boxed().collect(Collectors.toList());
+
+        List<Integer> results = parallelTasks.map(ParallelTasks.Pool.ARCHIVING, inputs, RuntimeException.class,
+                input -> {
+                    Thread.sleep(20 - input);
+                    return input * 2;
+                });
+
+        assertThat(results).isEqualTo(inputs.stream().map(input -> input * 2).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testCheckedExceptionIsUnwrapped() {
+        assertThatThrownBy(() -> parallelTasks.map(ParallelTasks.Pool.GITHUB_FORKS, Arrays.asList(1, 2, 3),
+                IOException.class, input -> {
+                    if (input == 2) {
+                        throw new IOException("Failed " + input);
+                    }
+                    return input;
+                }))
+                .isInstanceOf(IOException.class)
+                .hasMessage("Failed 2");
+    }
+
+    @Test
+    public void testThreadsAreSharedByConcurrentCallers() throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<Integer> inputs = IntStream.range(0, 10).boxed().collect(Collectors.toList());
+        ParallelTasks.Task<Integer, Integer, InterruptedException> task = input -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            Thread.sleep(20);
+            running.decrementAndGet();
+            return input;
+        };
+
+        Thread otherCaller = new Thread(() -> {
+            try {
+                parallelTasks.map(ParallelTasks.Pool.ARCHIVING, inputs, InterruptedException.class, task);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        otherCaller.start();
+        parallelTasks.map(ParallelTasks.Pool.ARCHIVING, inputs, InterruptedException.class, task);
+        otherCaller.join();
+
+        assertThat(maxRunning.get()).isBetween(2, 4);
+    }
+
+    @Test
+    public void testSingleThreadRunsInCallingThread() throws Exception {
+        Thread caller = Thread.currentThread();
+
+        List<Boolean> results = parallelTasks.map(ParallelTasks.Pool.LDAP_QUERY, Arrays.asList(1, 2),
+                RuntimeException.class, input -> Thread.currentThread() == caller);
+
+        assertThat(results).containsOnly(true);
+    }
+
+    @Test
+    public void testPoolsAreShutDown() {
+        parallelTasks.shutdown();
+
+        assertThatThrownBy(() -> parallelTasks.map(ParallelTasks.Pool.ARCHIVING, Arrays.asList(1, 2),
+                RuntimeException.class, input -> input))
+                .isInstanceOf(IllegalStateException.class);
+    }
+}
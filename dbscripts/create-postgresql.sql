@@ -0,0 +1,5 @@
+-- PostgreSQL specific part of the schema, applied after create.sql. Kept separately, because create.sql is also
+-- used by the H2 test database.
+
+-- Supports case-insensitive lookups by GitHub username (RegisteredUser.FIND_BY_GITHUB_NAME(S) named queries).
+create index idx_users_lower_github_name on users (lower(github_name));
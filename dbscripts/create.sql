@@ -22,7 +22,10 @@ create table repository_forks (
     repository_url varchar(255),
     source_repository_name varchar(255),
     source_repository_url varchar(255),
-    status varchar(255)
+    status varchar(255),
+    export_location varchar(1024),
+    object_count bigint,
+    unique_bytes bigint
 );
 
 alter table repository_forks add constraint fk_repository_forks_user_removal_id foreign key (user_removal_id) references user_removals;
@@ -101,4 +104,27 @@ create table unsubscribed_users_from_orgs (
     status varchar(255),
     created timestamp default CURRENT_TIMESTAMP,
     constraint fk_unsubscribed_users_from_orgs foreign key (user_removal_id) references user_removals (id)
-);
\ No newline at end of file
+);
+
+create sequence sq_user_ldap_statuses;
+
+create table user_ldap_statuses (
+    id bigint default nextval('sq_user_ldap_statuses') primary key,
+    github_name varchar(255) unique, -- lowercased
+    ldap_username varchar(255),
+    ldap_account_active boolean not null default false,
+    last_checked timestamp,
+    last_seen timestamp
+);
+
+create sequence sq_archive_maintenance_runs;
+
+create table archive_maintenance_runs (
+    id bigint default nextval('sq_archive_maintenance_runs') primary key,
+    started timestamp,
+    finished timestamp,
+    processed integer not null default 0,
+    skipped integer not null default 0,
+    reclaimed_bytes bigint not null default 0,
+    successful boolean not null default false
+);
@@ -6,6 +6,8 @@ drop sequence if exists sq_users;
 drop sequence if exists sq_removal_logs;
 drop sequence if exists sq_unsubscribed_users_from_teams;
 drop sequence if exists sq_unsubscribed_users_from_orgs;
+drop sequence if exists sq_user_ldap_statuses;
+drop sequence if exists sq_archive_maintenance_runs;
 
 alter table if exists github_teams drop constraint if exists FK_GITHUB_TEAMS_ORG_ID;
 alter table if exists unsubscribed_users_from_orgs drop constraint if exists fk_unsubscribed_users_from_orgs;
@@ -20,3 +22,5 @@ drop table if exists application_parameters;
 drop table if exists removal_logs;
 drop table if exists unsubscribed_users_from_teams;
 drop table if exists unsubscribed_users_from_orgs;
+drop table if exists user_ldap_statuses;
+drop table if exists archive_maintenance_runs;
@@ -0,0 +1,2 @@
+-- Supports case-insensitive lookups by GitHub username (RegisteredUser.FIND_BY_GITHUB_NAME(S) named queries).
+create index idx_users_lower_github_name on users (lower(github_name));
@@ -0,0 +1,10 @@
+create sequence sq_user_ldap_statuses;
+
+create table user_ldap_statuses (
+    id bigint default nextval('sq_user_ldap_statuses') primary key,
+    github_name varchar(255) unique,
+    ldap_username varchar(255),
+    ldap_account_active boolean not null default false,
+    last_checked timestamp,
+    last_seen timestamp
+);
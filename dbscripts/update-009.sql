@@ -0,0 +1 @@
+alter table repository_forks add column export_location varchar(1024);
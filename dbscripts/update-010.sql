@@ -0,0 +1,2 @@
+alter table repository_forks add column object_count bigint;
+alter table repository_forks add column unique_bytes bigint;
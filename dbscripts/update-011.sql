@@ -0,0 +1,11 @@
+create sequence sq_archive_maintenance_runs;
+
+create table archive_maintenance_runs (
+    id bigint default nextval('sq_archive_maintenance_runs') primary key,
+    started timestamp,
+    finished timestamp,
+    processed integer not null default 0,
+    skipped integer not null default 0,
+    reclaimed_bytes bigint not null default 0,
+    successful boolean not null default false
+);
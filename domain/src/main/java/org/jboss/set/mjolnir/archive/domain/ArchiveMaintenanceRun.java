@@ -0,0 +1,103 @@
+package org.jboss.set.mjolnir.archive.domain;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+import java.sql.Timestamp;
+
+/**
+ * Summary of a run of the archive maintenance job, which compacts archive repositories.
+ */
+@NamedQueries({
+        @NamedQuery(name = ArchiveMaintenanceRun.FIND_LATEST,
+                query = "SELECT r FROM ArchiveMaintenanceRun r ORDER BY r.started DESC, r.id DESC")
+})
+@Entity
+@Table(name = "archive_maintenance_runs")
+public class ArchiveMaintenanceRun {
+
+    public static final String FIND_LATEST = "ArchiveMaintenanceRun.findLatest";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "sq_archive_maintenance_runs")
+    @SequenceGenerator(name = "sq_archive_maintenance_runs", sequenceName = "sq_archive_maintenance_runs",
+            allocationSize = 1)
+    private Long id;
+
+    private Timestamp started;
+
+    private Timestamp finished;
+
+    /**
+     * Number of repositories and shared object stores that were compacted.
+     */
+    private int processed;
+
+    /**
+     * Number of repositories and shared object stores left for the next run.
+     */
+    private int skipped;
+
+    @Column(name = "reclaimed_bytes")
+    private long reclaimedBytes;
+
+    private boolean successful;
+
+    public Long getId() {
+        return id;
+    }
+
+    public Timestamp getStarted() {
+        return started;
+    }
+
+    public void setStarted(Timestamp started) {
+        this.started = started;
+    }
+
+    public Timestamp getFinished() {
+        return finished;
+    }
+
+    public void setFinished(Timestamp finished) {
+        this.finished = finished;
+    }
+
+    public int getProcessed() {
+        return processed;
+    }
+
+    public void setProcessed(int processed) {
+        this.processed = processed;
+    }
+
+    public int getSkipped() {
+        return skipped;
+    }
+
+    public void setSkipped(int skipped) {
+        this.skipped = skipped;
+    }
+
+    public long getReclaimedBytes() {
+        return reclaimedBytes;
+    }
+
+    public void setReclaimedBytes(long reclaimedBytes) {
+        this.reclaimedBytes = reclaimedBytes;
+    }
+
+    public boolean isSuccessful() {
+        return successful;
+    }
+
+    public void setSuccessful(boolean successful) {
+        this.successful = successful;
+    }
+}
@@ -19,7 +19,9 @@ import java.sql.Timestamp;
         @NamedQuery(name = RegisteredUser.FIND_WHITELISTED, query = "SELECT u FROM RegisteredUser u WHERE u.whitelisted IS TRUE"),
         @NamedQuery(name = RegisteredUser.FIND_BY_KRB_NAME, query = "SELECT u FROM RegisteredUser u WHERE u.kerberosName = :krbName"),
         @NamedQuery(name = RegisteredUser.FIND_BY_KRB_NAMES, query = "SELECT u FROM RegisteredUser u WHERE u.kerberosName in (:krbNames)"),
-        @NamedQuery(name = RegisteredUser.FIND_BY_GITHUB_NAME, query = "SELECT u FROM RegisteredUser u WHERE LOWER(u.githubName) = LOWER(:githubName)")
+        @NamedQuery(name = RegisteredUser.FIND_BY_GITHUB_NAME, query = "SELECT u FROM RegisteredUser u WHERE LOWER(u.githubName) = LOWER(:githubName)"),
+        @NamedQuery(name = RegisteredUser.FIND_BY_GITHUB_NAMES, query = "SELECT u FROM RegisteredUser u WHERE LOWER(u.githubName) IN (:githubNames) ORDER BY u.id"),
+        @NamedQuery(name = RegisteredUser.FIND_WITH_GITHUB_NAME, query = "SELECT u FROM RegisteredUser u WHERE u.githubName IS NOT NULL ORDER BY u.id")
 })
 @Entity
 @Table(name = "users")
@@ -30,6 +32,8 @@ public class RegisteredUser {
     public static final String FIND_BY_KRB_NAME = "RegisteredUser.findByKrbName";
     public static final String FIND_BY_KRB_NAMES = "RegisteredUser.findByKrbNames";
     public static final String FIND_BY_GITHUB_NAME = "RegisteredUser.findByGitHubName";
+    public static final String FIND_BY_GITHUB_NAMES = "RegisteredUser.findByGitHubNames";
+    public static final String FIND_WITH_GITHUB_NAME = "RegisteredUser.findWithGitHubName";
 
     @SuppressWarnings("unused")
     @Id
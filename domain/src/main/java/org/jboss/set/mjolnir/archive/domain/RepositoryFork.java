@@ -11,13 +11,34 @@ import java.sql.Timestamp;
  */
 @NamedQueries({
         @NamedQuery(name = RepositoryFork.FIND_REPOSITORIES_TO_DELETE,
-                query = "SELECT r FROM RepositoryFork r where r.deleted is NULL")
+                query = "SELECT r FROM RepositoryFork r where r.deleted is NULL"),
+        @NamedQuery(name = RepositoryFork.SUMMARIZE_STORAGE_BY_OWNER,
+                query = "SELECT SUBSTRING(r.repositoryName, 1, LOCATE('/', r.repositoryName) - 1), COUNT(r), "
+                        + RepositoryFork.STORAGE_AGGREGATES
+                        + " GROUP BY SUBSTRING(r.repositoryName, 1, LOCATE('/', r.repositoryName) - 1)"),
+        @NamedQuery(name = RepositoryFork.SUMMARIZE_STORAGE_BY_SOURCE_REPOSITORY,
+                query = "SELECT r.sourceRepositoryName, COUNT(r), "
+                        + RepositoryFork.STORAGE_AGGREGATES
+                        + " GROUP BY r.sourceRepositoryName")
 })
 @Entity
 @Table(name = "repository_forks")
 public class RepositoryFork {
 
     public static final String FIND_REPOSITORIES_TO_DELETE = "RepositoryFork.findRepositoriesToDelete";
+    public static final String SUMMARIZE_STORAGE_BY_OWNER = "RepositoryFork.summarizeStorageByOwner";
+    public static final String SUMMARIZE_STORAGE_BY_SOURCE_REPOSITORY =
+            "RepositoryFork.summarizeStorageBySourceRepository";
+
+    /**
+     * Sums of storage columns over the latest record of each repository with given status. Older records of the same
+     * repository were replaced by the latest one, and are not counted.
+     */
+    private static final String STORAGE_AGGREGATES = "SUM(CASE WHEN r.objectCount IS NULL OR r.uniqueBytes IS NULL "
+            + "THEN 1 ELSE 0 END), SUM(r.objectCount), SUM(r.uniqueBytes) "
+            + "FROM RepositoryFork r WHERE r.status = :status AND r.created = ("
+            + "SELECT MAX(l.created) FROM RepositoryFork l "
+            + "WHERE l.repositoryName = r.repositoryName AND l.status = :status)";
 
     @Id
     @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "repository_forks_generator")
@@ -48,6 +69,24 @@ public class RepositoryFork {
     @Enumerated(EnumType.STRING)
     private RepositoryForkStatus status = RepositoryForkStatus.NEW;
 
+    /**
+     * Location of the exported archive, if the archive was exported before it was deleted.
+     */
+    @Column(name = "export_location")
+    private String exportLocation;
+
+    /**
+     * Number of objects the archived fork adds over its upstream repository.
+     */
+    @Column(name = "object_count")
+    private Long objectCount;
+
+    /**
+     * Uncompressed size of objects the archived fork adds over its upstream repository.
+     */
+    @Column(name = "unique_bytes")
+    private Long uniqueBytes;
+
 
     public String getOwnerLogin() {
         String[] segments = repositoryName.split("/");
@@ -126,6 +165,30 @@ public class RepositoryFork {
         this.status = status;
     }
 
+    public String getExportLocation() {
+        return exportLocation;
+    }
+
+    public void setExportLocation(String exportLocation) {
+        this.exportLocation = exportLocation;
+    }
+
+    public Long getObjectCount() {
+        return objectCount;
+    }
+
+    public void setObjectCount(Long objectCount) {
+        this.objectCount = objectCount;
+    }
+
+    public Long getUniqueBytes() {
+        return uniqueBytes;
+    }
+
+    public void setUniqueBytes(Long uniqueBytes) {
+        this.uniqueBytes = uniqueBytes;
+    }
+
     @Override
     public String toString() {
         return "RepositoryFork{" +
@@ -138,6 +201,9 @@ public class RepositoryFork {
                 ", created=" + created +
                 ", deleted=" + deleted +
                 ", status='" + status + '\'' +
+                ", exportLocation='" + exportLocation + '\'' +
+                ", objectCount=" + objectCount +
+                ", uniqueBytes=" + uniqueBytes +
                 '}';
     }
 }
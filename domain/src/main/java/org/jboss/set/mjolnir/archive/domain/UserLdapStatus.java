@@ -0,0 +1,102 @@
+package org.jboss.set.mjolnir.archive.domain;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+import java.sql.Timestamp;
+
+/**
+ * Last known LDAP status of a member of monitored GitHub organizations or teams. Used by incremental LDAP scans to
+ * decide which users need to be checked again.
+ */
+@NamedQueries({
+        @NamedQuery(name = UserLdapStatus.FIND_ALL, query = "SELECT s FROM UserLdapStatus s"),
+        @NamedQuery(name = UserLdapStatus.DELETE_NOT_SEEN_SINCE,
+                query = "DELETE FROM UserLdapStatus s WHERE s.lastSeen IS NULL OR s.lastSeen < :lastSeen")
+})
+@Entity
+@Table(name = "user_ldap_statuses")
+public class UserLdapStatus {
+
+    public static final String FIND_ALL = "UserLdapStatus.findAll";
+    public static final String DELETE_NOT_SEEN_SINCE = "UserLdapStatus.deleteNotSeenSince";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "sq_user_ldap_statuses")
+    @SequenceGenerator(name = "sq_user_ldap_statuses", sequenceName = "sq_user_ldap_statuses", allocationSize = 1)
+    private Long id;
+
+    /**
+     * Lowercased GitHub username.
+     */
+    @Column(name = "github_name", unique = true)
+    private String githubName;
+
+    @Column(name = "ldap_username")
+    private String ldapUsername;
+
+    @Column(name = "ldap_account_active")
+    private boolean ldapAccountActive;
+
+    /**
+     * When was the LDAP account last checked.
+     */
+    @Column(name = "last_checked")
+    private Timestamp lastChecked;
+
+    /**
+     * When was the user last seen as a member of monitored GitHub organizations or teams.
+     */
+    @Column(name = "last_seen")
+    private Timestamp lastSeen;
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getGithubName() {
+        return githubName;
+    }
+
+    public void setGithubName(String githubName) {
+        this.githubName = githubName;
+    }
+
+    public String getLdapUsername() {
+        return ldapUsername;
+    }
+
+    public void setLdapUsername(String ldapUsername) {
+        this.ldapUsername = ldapUsername;
+    }
+
+    public boolean isLdapAccountActive() {
+        return ldapAccountActive;
+    }
+
+    public void setLdapAccountActive(boolean ldapAccountActive) {
+        this.ldapAccountActive = ldapAccountActive;
+    }
+
+    public Timestamp getLastChecked() {
+        return lastChecked;
+    }
+
+    public void setLastChecked(Timestamp lastChecked) {
+        this.lastChecked = lastChecked;
+    }
+
+    public Timestamp getLastSeen() {
+        return lastSeen;
+    }
+
+    public void setLastSeen(Timestamp lastSeen) {
+        this.lastSeen = lastSeen;
+    }
+}
@@ -27,7 +27,10 @@ import java.util.List;
                 query = "SELECT r FROM UserRemoval r WHERE r.started IS NULL" +
                         " AND (remove_on <= CURRENT_DATE or remove_on IS NULL)"),
         @NamedQuery(name = UserRemoval.FIND_FINISHED_REMOVALS,
-                query = "SELECT r FROM UserRemoval r WHERE r.completed > :jobStart AND r.status != 'STARTED' ORDER BY r.status DESC, r.created")
+                query = "SELECT r FROM UserRemoval r WHERE r.completed > :jobStart AND r.status != 'STARTED' ORDER BY r.status DESC, r.created"),
+        @NamedQuery(name = UserRemoval.FIND_PARTITION_REMOVAL_IDS,
+                query = "SELECT r.id FROM UserRemoval r WHERE r.status = :status" +
+                        " AND MOD(r.id, :partitionCount) = :partitionIndex AND r.id > :lastId ORDER BY r.id")
 })
 @Entity
 @Table(name = "user_removals")
@@ -35,6 +38,7 @@ public class UserRemoval {
 
     public static final String FIND_REMOVALS_TO_PROCESS = "UserRemoval.findRemovalsToProcess";
     public static final String FIND_FINISHED_REMOVALS = "UserRemoval.findFinishedRemovals";
+    public static final String FIND_PARTITION_REMOVAL_IDS = "UserRemoval.findPartitionRemovalIds";
 
     @Id
     @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "user_removals_generator")
@@ -1,5 +1,6 @@
 package org.jboss.set.mjolnir.archive.domain.repositories;
 
+import org.jboss.logging.Logger;
 import org.jboss.set.mjolnir.archive.domain.RegisteredUser;
 
 import javax.inject.Inject;
@@ -7,8 +8,12 @@ import javax.persistence.EntityManager;
 import javax.persistence.TypedQuery;
 
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 import static org.jboss.set.mjolnir.archive.domain.repositories.JpaUtils.findSingleResult;
 
@@ -17,6 +22,13 @@ import static org.jboss.set.mjolnir.archive.domain.repositories.JpaUtils.findSin
  */
 public class RegisteredUserRepositoryBean {
 
+    /**
+     * Maximum number of parameters in a single IN clause.
+     */
+    static final int IN_CLAUSE_CHUNK_SIZE = 500;
+
+    private final Logger logger = Logger.getLogger(getClass());
+
     @Inject
     private EntityManager em;
 
@@ -38,6 +50,56 @@ public class RegisteredUserRepositoryBean {
         return findSingleResult(query);
     }
 
+    /**
+     * Finds users by their GitHub usernames (case-insensitive). Usernames are queried in chunks of
+     * {@link #IN_CLAUSE_CHUNK_SIZE}.
+     *
+     * @param usernames GitHub usernames
+     * @return map lowercased GitHub username => registered user, only contains found users (see
+     * {@link #getUsersByGitHubUsername()} regarding duplicate usernames)
+     */
+    public Map<String, RegisteredUser> findByGitHubUsernames(Collection<String> usernames) {
+        List<String> lowercaseUsernames = usernames.stream()
+                .map(username -> username.toLowerCase(Locale.ROOT))
+                .distinct()
+                .collect(Collectors.toList());
+
+        Map<String, RegisteredUser> result = new HashMap<>();
+        for (int i = 0; i < lowercaseUsernames.size(); i += IN_CLAUSE_CHUNK_SIZE) {
+            List<String> chunk = lowercaseUsernames.subList(i, Math.min(i + IN_CLAUSE_CHUNK_SIZE, lowercaseUsernames.size()));
+            List<RegisteredUser> users = em.createNamedQuery(RegisteredUser.FIND_BY_GITHUB_NAMES, RegisteredUser.class)
+                    .setParameter("githubNames", chunk)
+                    .getResultList();
+            users.forEach(user -> addToIndex(result, user));
+        }
+        return result;
+    }
+
+    /**
+     * Loads all users with known GitHub username by a single query, and indexes them by their GitHub usernames.
+     * <p>
+     * If several users are registered with GitHub usernames differing only in case, the duplicate is logged and
+     * the user registered first is kept.
+     *
+     * @return map lowercased GitHub username => registered user
+     */
+    public Map<String, RegisteredUser> getUsersByGitHubUsername() {
+        List<RegisteredUser> users = em.createNamedQuery(RegisteredUser.FIND_WITH_GITHUB_NAME, RegisteredUser.class)
+                .getResultList();
+
+        Map<String, RegisteredUser> index = new HashMap<>(users.size() * 2);
+        users.forEach(user -> addToIndex(index, user));
+        return index;
+    }
+
+    private void addToIndex(Map<String, RegisteredUser> index, RegisteredUser user) {
+        RegisteredUser previous = index.putIfAbsent(user.getGithubName().toLowerCase(Locale.ROOT), user);
+        if (previous != null) {
+            logger.warnf("Several users registered with GitHub username %s (users %d and %d), ignoring user %d",
+                    user.getGithubName(), previous.getId(), user.getId(), user.getId());
+        }
+    }
+
     public List<RegisteredUser> getAllUsers() {
         List<RegisteredUser> listOfUsersTable = em.createNamedQuery(RegisteredUser.FIND_ALL).getResultList();
         return listOfUsersTable;
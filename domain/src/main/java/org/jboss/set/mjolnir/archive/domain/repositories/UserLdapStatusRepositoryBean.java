@@ -0,0 +1,29 @@
+package org.jboss.set.mjolnir.archive.domain.repositories;
+
+import org.jboss.set.mjolnir.archive.domain.UserLdapStatus;
+
+import javax.inject.Inject;
+import javax.persistence.EntityManager;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Repository of last known LDAP statuses of GitHub members.
+ */
+public class UserLdapStatusRepositoryBean {
+
+    @Inject
+    private EntityManager em;
+
+    /**
+     * @return map lowercased GitHub username => LDAP status
+     */
+    public Map<String, UserLdapStatus> getStatusesByGitHubUsername() {
+        List<UserLdapStatus> statuses = em.createNamedQuery(UserLdapStatus.FIND_ALL, UserLdapStatus.class)
+                .getResultList();
+        Map<String, UserLdapStatus> result = new HashMap<>(statuses.size() * 2);
+        statuses.forEach(status -> result.put(status.getGithubName(), status));
+        return result;
+    }
+}
@@ -0,0 +1,113 @@
+package org.jboss.set.mjolnir.archive.domain;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Verifies that the case-insensitive GitHub username lookups are served by the index created in
+ * dbscripts/create-postgresql.sql.
+ * <p>
+ * Expression indexes are not supported by H2, so this test needs a PostgreSQL database. It's skipped unless the
+ * database is specified by the "mjolnir.test.postgresql.url" system property (plus optional
+ * "mjolnir.test.postgresql.user" and "mjolnir.test.postgresql.password"), and the "postgresql" profile is enabled
+ * to provide the JDBC driver. The test creates the schema from the dbscripts in a temporary database schema, which
+ * is dropped afterwards.
+ */
+public class GitHubNameIndexTestCase {
+
+    private static final String URL_PROPERTY = "mjolnir.test.postgresql.url";
+    private static final String SCHEMA = "mjolnir_index_test";
+    private static final int USERS = 10000;
+
+    private Connection connection;
+
+    @Before
+    public void setup() throws Exception {
+        String url = System.getProperty(URL_PROPERTY);
+        Assume.assumeTrue("PostgreSQL database not configured, set the " + URL_PROPERTY + " property",
+                url != null && !url.isEmpty());
+
+        connection = DriverManager.getConnection(url,
+                System.getProperty("mjolnir.test.postgresql.user"),
+                System.getProperty("mjolnir.test.postgresql.password"));
+
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("drop schema if exists " + SCHEMA + " cascade");
+            stmt.execute("create schema " + SCHEMA);
+            stmt.execute("set search_path to " + SCHEMA);
+        }
+        executeScript("../dbscripts/create.sql");
+        executeScript("../dbscripts/create-postgresql.sql");
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("insert into users (krb_name, github_name) "
+                    + "select 'user' || i, 'GitHubUser' || i from generate_series(1, " + USERS + ") i");
+            stmt.execute("analyze users");
+        }
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        if (connection != null) {
+            try (Statement stmt = connection.createStatement()) {
+                stmt.execute("drop schema if exists " + SCHEMA + " cascade");
+            }
+            connection.close();
+        }
+    }
+
+    @Test
+    public void testSingleLookupUsesIndex() throws SQLException {
+        assertThat(explain("select * from users u where lower(u.github_name) = lower('GitHubUser42')"))
+                .contains("idx_users_lower_github_name");
+    }
+
+    @Test
+    public void testBulkLookupUsesIndex() throws SQLException {
+        assertThat(explain("select * from users u where lower(u.github_name) in ('githubuser1', 'githubuser2')"))
+                .contains("idx_users_lower_github_name");
+    }
+
+    private String explain(String query) throws SQLException {
+        StringBuilder plan = new StringBuilder();
+        try (Statement stmt = connection.createStatement();
+             ResultSet resultSet = stmt.executeQuery("explain " + query)) {
+            while (resultSet.next()) {
+                plan.append(resultSet.getString(1)).append('\n');
+            }
+        }
+        return plan.toString();
+    }
+
+    /**
+     * Executes statements of given SQL script, one by one. Statements are separated by semicolons, comments are
+     * skipped.
+     */
+    private void executeScript(String path) throws IOException, SQLException {
+        StringBuilder script = new StringBuilder();
+        for (String line : Files.readAllLines(Paths.get(path), StandardCharsets.UTF_8)) {
+            int commentStart = line.indexOf("--");
+            script.append(commentStart >= 0 ? line.substring(0, commentStart) : line).append('\n');
+        }
+        try (Statement stmt = connection.createStatement()) {
+            for (String sql : script.toString().split(";")) {
+                if (!sql.trim().isEmpty()) {
+                    stmt.execute(sql);
+                }
+            }
+        }
+    }
+}
@@ -5,9 +5,13 @@ import org.jboss.logging.Logger;
 import javax.batch.operations.JobOperator;
 import javax.batch.operations.NoSuchJobException;
 import javax.batch.runtime.BatchRuntime;
+import javax.batch.runtime.BatchStatus;
+import javax.batch.runtime.JobExecution;
+import javax.batch.runtime.JobInstance;
 import java.lang.management.ManagementFactory;
 import java.lang.management.ThreadInfo;
 import java.lang.management.ThreadMXBean;
+import java.util.Collections;
 import java.util.List;
 import java.util.Properties;
 
@@ -15,10 +19,27 @@ public final class BatchUtils {
 
     private static final Logger logger = Logger.getLogger(BatchUtils.class);
 
+    /**
+     * Maximum number of times a failed job instance is restarted, before a new instance is started instead.
+     */
+    static final int MAX_RESTARTS = 3;
+
     private BatchUtils() {
     }
 
     public static Long startBatchJob(String jobName) {
+        return startBatchJob(jobName, new Properties(), false);
+    }
+
+    /**
+     * Starts a batch job with given parameters.
+     *
+     * @param restartFailed if the last execution of the job failed or was stopped, restart it instead of starting
+     *                      a new one, so that it resumes from its last checkpoint. An instance is restarted at most
+     *                      {@link #MAX_RESTARTS} times, after that a new instance is started, so that a job which
+     *                      keeps failing on restart doesn't block the following runs.
+     */
+    public static Long startBatchJob(String jobName, Properties parameters, boolean restartFailed) {
         logger.infof("Starting task %s", jobName);
 
         // check if batch jobs are already running
@@ -36,12 +57,46 @@ public final class BatchUtils {
             logger.infof("No jobs with name %s found.", jobName);
         }
 
+        if (restartFailed) {
+            List<JobExecution> executions = findLastInstanceExecutions(jobOperator, jobName);
+            JobExecution lastExecution = null;
+            for (JobExecution execution : executions) {
+                if (lastExecution == null || execution.getExecutionId() > lastExecution.getExecutionId()) {
+                    lastExecution = execution;
+                }
+            }
+            if (lastExecution != null && (lastExecution.getBatchStatus() == BatchStatus.FAILED
+                    || lastExecution.getBatchStatus() == BatchStatus.STOPPED)) {
+                // the first execution is the original start, the others are restarts
+                if (executions.size() > MAX_RESTARTS) {
+                    logger.warnf("Batch job # %d has already been restarted %d times, starting a new instance",
+                            lastExecution.getExecutionId(), executions.size() - 1);
+                } else {
+                    long executionId = jobOperator.restart(lastExecution.getExecutionId(), parameters);
+                    logger.infof("Restarted batch job # %d as # %d", lastExecution.getExecutionId(), executionId);
+                    return executionId;
+                }
+            }
+        }
+
         // if no job is currently running, start new one
-        long executionId = jobOperator.start(jobName, new Properties());
+        long executionId = jobOperator.start(jobName, parameters);
         logger.infof("Started batch job # %d", executionId);
         return executionId;
     }
 
+    private static List<JobExecution> findLastInstanceExecutions(JobOperator jobOperator, String jobName) {
+        try {
+            List<JobInstance> instances = jobOperator.getJobInstances(jobName, 0, 1);
+            if (instances.isEmpty()) {
+                return Collections.emptyList();
+            }
+            return jobOperator.getJobExecutions(instances.get(0));
+        } catch (NoSuchJobException e) {
+            return Collections.emptyList();
+        }
+    }
+
     private static void logThreadDump() {
         StringBuilder threadDump = new StringBuilder("Thread dump: ");
         ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
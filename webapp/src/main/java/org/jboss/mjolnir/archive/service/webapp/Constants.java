@@ -8,6 +8,8 @@ public final class Constants {
 
     public static final String DELETE_ARCHIVES_JOB_NAME = "archiveRemovalJob";
 
+    public static final String ARCHIVE_MAINTENANCE_JOB_NAME = "archiveMaintenanceJob";
+
     public static final String DATASOURCE_JNDI_NAME = "java:jboss/datasources/mjolnir/MjolnirDS";
 
     private Constants() {
@@ -4,6 +4,7 @@ package org.jboss.mjolnir.archive.service.webapp;
 import org.jboss.logging.Logger;
 import org.jboss.set.mjolnir.archive.UserDiscoveryBean;
 import org.jboss.set.mjolnir.archive.configuration.Configuration;
+import org.jboss.set.mjolnir.archive.ldap.LdapClientBean;
 
 import javax.ejb.Schedule;
 import javax.ejb.Singleton;
@@ -11,6 +12,7 @@ import javax.ejb.Startup;
 import javax.ejb.TransactionManagement;
 import javax.ejb.TransactionManagementType;
 import javax.inject.Inject;
+import java.util.Properties;
 
 @Singleton
 @Startup
@@ -25,22 +27,51 @@ public class JobScheduler {
     @Inject
     private UserDiscoveryBean userDiscoveryBean;
 
+    @Inject
+    private LdapClientBean ldapClientBean;
+
     @Schedule(dayOfWeek = "6", hour = "2", persistent = false)
     public void updateGithubUsernames() {
         BatchUtils.startBatchJob(Constants.UPDATE_GITHUB_USERNAMES_JOB_NAME);
     }
 
-    @Schedule(hour = "3", persistent = false)
+    /**
+     * Nightly LDAP scan. Checks only new, inactive and a slice of other members if incremental scanning is enabled.
+     */
+    @Schedule(dayOfWeek = "1-6", hour = "3", persistent = false)
     public void ldapScan() {
         if (configuration.isRemoveUsersWithoutLdapAccount()) {
             logger.infof("Starting task ldapScan");
+            userDiscoveryBean.createRemovalsForUsersWithoutLdapAccount(configuration.isLdapIncrementalScan());
+        }
+    }
+
+    /**
+     * Weekly full LDAP scan, which checks all members regardless of incremental scanning.
+     */
+    @Schedule(dayOfWeek = "0", hour = "3", persistent = false)
+    public void fullLdapScan() {
+        if (configuration.isRemoveUsersWithoutLdapAccount()) {
+            logger.infof("Starting task fullLdapScan");
             userDiscoveryBean.createRemovalsForUsersWithoutLdapAccount();
         }
     }
 
+    /**
+     * Closes LDAP connections that stayed unused for longer than the configured idle timeout.
+     */
+    @Schedule(hour = "*", minute = "*/5", persistent = false)
+    public void evictIdleLdapConnections() {
+        ldapClientBean.evictIdleContexts();
+    }
+
+    /**
+     * Processes pending user removals. Interrupted job is restarted, continuing with removals that haven't been
+     * processed yet.
+     */
     @Schedule(hour = "4", persistent = false)
     public void archiveUsers() {
-        BatchUtils.startBatchJob(Constants.REMOVE_MEMBERSHIP_JOB_NAME);
+        BatchUtils.startBatchJob(Constants.REMOVE_MEMBERSHIP_JOB_NAME, new Properties(), true);
     }
 
     @Schedule(dayOfWeek = "6", hour = "6", persistent = false)
@@ -48,4 +79,12 @@ public class JobScheduler {
         BatchUtils.startBatchJob(Constants.DELETE_ARCHIVES_JOB_NAME);
     }
 
+    /**
+     * Weekly compaction of archive repositories, after old archives were removed.
+     */
+    @Schedule(dayOfWeek = "0", hour = "6", persistent = false)
+    public void archiveMaintenance() {
+        BatchUtils.startBatchJob(Constants.ARCHIVE_MAINTENANCE_JOB_NAME);
+    }
+
 }
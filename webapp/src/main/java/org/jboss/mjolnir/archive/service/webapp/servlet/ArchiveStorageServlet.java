@@ -0,0 +1,43 @@
+package org.jboss.mjolnir.archive.service.webapp.servlet;
+
+import org.jboss.set.mjolnir.archive.ArchiveStorageBean;
+import org.jboss.set.mjolnir.archive.ArchiveStorageBean.StorageUsage;
+
+import javax.inject.Inject;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.List;
+
+/**
+ * Prints storage used by archived forks, per removed user and per source repository, largest first.
+ */
+@WebServlet("/archive-storage")
+public class ArchiveStorageServlet extends HttpServlet {
+
+    @Inject
+    private ArchiveStorageBean archiveStorageBean;
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        resp.setContentType("text/plain");
+        try (PrintWriter writer = resp.getWriter()) {
+            writer.println("Storage per user:");
+            printUsages(writer, archiveStorageBean.getUsageByUser());
+            writer.println();
+            writer.println("Storage per source repository:");
+            printUsages(writer, archiveStorageBean.getUsageByRepository());
+        }
+    }
+
+    private static void printUsages(PrintWriter writer, List<StorageUsage> usages) {
+        writer.println("name\tforks\tunaccounted forks\tobjects\tunique bytes (uncompressed)");
+        for (StorageUsage usage : usages) {
+            writer.println(usage.getName() + "\t" + usage.getForkCount() + "\t" + usage.getUnaccountedForkCount()
+                    + "\t" + usage.getObjectCount() + "\t" + usage.getUniqueBytes());
+        }
+    }
+}
@@ -8,6 +8,7 @@ import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.util.Properties;
 
 /**
  * Triggers a batch job that archives repositories of offboarder users and removes their GH team memberships.
@@ -16,7 +17,7 @@ import java.io.IOException;
 public class ArchiveUsersServlet extends HttpServlet {
     @Override
     protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
-        Long executionId = BatchUtils.startBatchJob(Constants.REMOVE_MEMBERSHIP_JOB_NAME);
+        Long executionId = BatchUtils.startBatchJob(Constants.REMOVE_MEMBERSHIP_JOB_NAME, new Properties(), true);
         resp.setContentType("text/plain");
         resp.getOutputStream().println("Started job execution ID: " + executionId);
     }
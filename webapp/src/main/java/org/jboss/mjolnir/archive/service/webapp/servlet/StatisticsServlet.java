@@ -0,0 +1,44 @@
+package org.jboss.mjolnir.archive.service.webapp.servlet;
+
+import org.jboss.set.mjolnir.archive.github.GitHubRateLimiter;
+import org.jboss.set.mjolnir.archive.ldap.LdapClientBean;
+import org.jboss.set.mjolnir.archive.ldap.LdapResultCache;
+
+import javax.inject.Inject;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * Prints runtime statistics of the application, like the current GitHub API request budget or LDAP cache usage.
+ */
+@WebServlet("/statistics")
+public class StatisticsServlet extends HttpServlet {
+
+    @Inject
+    private GitHubRateLimiter gitHubRateLimiter;
+
+    @Inject
+    private LdapClientBean ldapClientBean;
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        resp.setContentType("text/plain");
+        try (PrintWriter writer = resp.getWriter()) {
+            writer.println("GitHub API rate limit: " + gitHubRateLimiter.getLimit());
+            writer.println("GitHub API remaining requests: " + gitHubRateLimiter.getRemaining());
+            writer.println("GitHub API rate limit reset: " + gitHubRateLimiter.getResetTime());
+            writer.println("GitHub API requests sent: " + gitHubRateLimiter.getRequestCount());
+            writer.println("GitHub API requests delayed: " + gitHubRateLimiter.getDelayedRequestCount());
+            writer.println("GitHub API total delay (ms): " + gitHubRateLimiter.getTotalWaitMillis());
+
+            LdapResultCache ldapResultCache = ldapClientBean.getResultCache();
+            writer.println("LDAP cache size: " + ldapResultCache.size());
+            writer.println("LDAP cache hits: " + ldapResultCache.getHitCount());
+            writer.println("LDAP cache misses: " + ldapResultCache.getMissCount());
+        }
+    }
+}